@@ -0,0 +1,152 @@
+package contest.winter2017;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.jacoco.core.analysis.IMethodCoverage;
+import org.jacoco.core.internal.analysis.ClassCoverageImpl;
+
+/**
+ * Class to hold the probes of one class of the jar under test.
+ *
+ * @author ICT-2
+ */
+class ClassProbes {
+	/**
+	 * Jacoco id of the class.
+	 */
+	final long id;
+
+	/**
+	 * VM name of the class.
+	 */
+	final String name;
+
+	/**
+	 * Generic signature of the class.
+	 */
+	String signature;
+
+	/**
+	 * VM name of the super class.
+	 */
+	String superName;
+
+	/**
+	 * VM names of the interfaces of the class.
+	 */
+	String[] interfaces;
+
+	/**
+	 * Name of the source file of the class.
+	 */
+	String sourceFileName;
+
+	/**
+	 * Number of probes in the class.
+	 */
+	int probeCount;
+
+	/**
+	 * First and last lines of the class, or -1 without debug information.
+	 */
+	int firstLine = -1, lastLine = -1;
+
+	/**
+	 * Probes of the methods of the class.
+	 */
+	List<MethodProbes> methods = new ArrayList<MethodProbes>();
+
+	/**
+	 * Constructs the probes of a class with the given id and name.
+	 *
+	 * @param id
+	 *            - jacoco id of the class
+	 * @param name
+	 *            - VM name of the class
+	 */
+	public ClassProbes(long id, String name) {
+		this.id = id;
+		this.name = name;
+	}
+
+	/**
+	 * Computes the first and last lines of this class from its methods.
+	 */
+	public void computeLines() {
+		for (MethodProbes method : this.methods) {
+			if (method.lines.length == 0 || method.firstLine == -1) {
+				continue;
+			}
+			if (this.firstLine == -1 || method.firstLine < this.firstLine) {
+				this.firstLine = method.firstLine;
+			}
+			if (method.lastLine > this.lastLine) {
+				this.lastLine = method.lastLine;
+			}
+		}
+	}
+
+	/**
+	 * Adds the coverage of this class for the given probe array to the
+	 * coverage of a test.
+	 *
+	 * @param coverage
+	 *            - coverage of the test
+	 * @param index
+	 *            - index of this class in the coverage
+	 * @param hits
+	 *            - probes hit
+	 */
+	public void addTestCoverage(TestCoverage coverage, int index, boolean[] hits) {
+		BitSet probes = new BitSet(hits.length);
+		for (int p = 0; p < hits.length; p++) {
+			if (hits[p]) {
+				probes.set(p);
+			}
+		}
+
+		BitSet coveredLines = new BitSet();
+		BitSet missedLines = new BitSet();
+		for (MethodProbes method : this.methods) {
+			int[] coveredBranches = method.getCoveredBranches(hits);
+			for (int i = 0; i < method.lines.length; i++) {
+				int line = method.lines[i];
+				if (line == -1) {
+					continue;
+				}
+				if (coveredBranches[i] > 0) {
+					coveredLines.set(line - this.firstLine);
+				}
+				if (coveredBranches[i] == 0 || (method.branches[i] > 1 && coveredBranches[i] < method.branches[i])) {
+					missedLines.set(line - this.firstLine);
+				}
+			}
+		}
+
+		coverage.setClass(index, this.name, this.firstLine, this.lastLine, probes, coveredLines, missedLines);
+	}
+
+	/**
+	 * Returns the coverage of this class for the given probe array.
+	 *
+	 * @param hits
+	 *            - probes hit, or null if the class was not executed
+	 * @return coverage of this class
+	 */
+	public ClassCoverageImpl getCoverage(boolean[] hits) {
+		ClassCoverageImpl coverage = new ClassCoverageImpl(this.name, this.id, false);
+		coverage.setSignature(this.signature);
+		coverage.setSuperName(this.superName);
+		coverage.setInterfaces(this.interfaces);
+		coverage.setSourceFileName(this.sourceFileName);
+		for (MethodProbes method : this.methods) {
+			IMethodCoverage methodCoverage = method.getCoverage(hits);
+			if (methodCoverage.getInstructionCounter().getTotalCount() > 0) {
+				coverage.addMethod(methodCoverage);
+			}
+		}
+		return coverage;
+	}
+}
@@ -0,0 +1,287 @@
+package contest.winter2017;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.IExecutionDataVisitor;
+import org.jacoco.core.data.ISessionInfoVisitor;
+import org.jacoco.core.data.SessionInfo;
+import org.jacoco.core.runtime.RemoteControlReader;
+import org.jacoco.core.runtime.RemoteControlWriter;
+
+/**
+ * Class to collect the coverage of tests in memory.
+ * <p>
+ * Each test's JVM runs the jacoco runtime with tcpclient output, which
+ * connects to this server on the loopback address when the JVM starts. The
+ * runtime sends its execution data whenever it is dumped, and when the JVM
+ * exits. Each dump carries the runtime's session id, which the tester sets to
+ * a session of the test's own, and is handed to the worker waiting on that
+ * session. Dumps for sessions no worker expects are dropped.
+ * <p>
+ * A slot runs one test at a time, so a worker expects the session of each
+ * test before it starts the test, which also drops the sessions of the
+ * slot's earlier tests. A dump of an earlier test which arrives late, such
+ * as one asked of a test which ran out of time, is dropped instead of being
+ * taken as the next test's coverage.
+ * <p>
+ * Each worker slot has a server of its own, so every runtime connected to a
+ * server belongs to the slot's test, or to a watchdog waiting for the slot's
+ * next test. A test which runs out of time is killed and never dumps on exit,
+ * so the server can ask the runtimes connected to it to dump first. A waiting
+ * watchdog has no session yet, so its dump is dropped.
+ *
+ * @author ICT-2
+ */
+class CoverageServer extends Thread {
+	/**
+	 * Socket the jacoco runtimes of tests connect to.
+	 */
+	private ServerSocket serverSocket;
+
+	/**
+	 * Dumps received and not yet taken, by session id.
+	 */
+	private ConcurrentHashMap<String, BlockingQueue<ExecutionDataStore>> dumps = new ConcurrentHashMap<String, BlockingQueue<ExecutionDataStore>>();
+
+	/**
+	 * Runtimes connected to the server.
+	 */
+	private CopyOnWriteArrayList<Connection> connections = new CopyOnWriteArrayList<Connection>();
+
+	/**
+	 * Whether the server has been closed.
+	 */
+	private volatile boolean closed = false;
+
+	/**
+	 * Constructs a server listening on a free port of the loopback address.
+	 * Start the server before starting tests.
+	 *
+	 * @throws IOException
+	 *             - an exception encountered while opening the socket
+	 */
+	public CoverageServer() throws IOException {
+		super("coverage server");
+		this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		setDaemon(true);
+	}
+
+	/**
+	 * Returns the jacoco agent options which send a runtime's execution data
+	 * to this server.
+	 *
+	 * @return the agent options, as name=value
+	 */
+	public String[] getAgentOptions() {
+		return new String[] { "output=tcpclient",
+				"address=" + this.serverSocket.getInetAddress().getHostAddress(),
+				"port=" + this.serverSocket.getLocalPort() };
+	}
+
+	/**
+	 * Accepts connections from jacoco runtimes until the server is closed.
+	 */
+	@Override
+	public void run() {
+		while (!this.closed) {
+			try {
+				new Connection(this.serverSocket.accept()).start();
+			} catch (IOException e) {
+				if (!this.closed) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Prepares to receive the coverage of the next test, under the test's
+	 * session, dropping every other session and its dumps not yet taken.
+	 *
+	 * @param sessionId
+	 *            - session of the test
+	 */
+	public void expect(String sessionId) {
+		this.dumps.clear();
+		this.dumps.put(sessionId, new LinkedBlockingQueue<ExecutionDataStore>());
+	}
+
+	/**
+	 * Takes the next dump of a session, waiting for it if it has not arrived.
+	 *
+	 * @param sessionId
+	 *            - session to take the dump of, which must be expected
+	 * @param maxMillis
+	 *            - time to wait for the dump
+	 * @return the execution data of the dump, or null if none arrived in time
+	 * @throws InterruptedException
+	 *             - the thread was interrupted while waiting
+	 */
+	public ExecutionDataStore take(String sessionId, long maxMillis) throws InterruptedException {
+		BlockingQueue<ExecutionDataStore> queue = this.dumps.get(sessionId);
+		if (queue == null) {
+			return null;
+		}
+		return queue.poll(maxMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Asks every runtime connected to the server to dump its execution data,
+	 * and takes the dump of a session, waiting for it if it has not arrived.
+	 * A dump which arrived before the request is taken instead.
+	 *
+	 * @param sessionId
+	 *            - session to take the dump of, which must be expected
+	 * @param maxMillis
+	 *            - time to wait for the dump
+	 * @return the execution data of the dump, or null if none arrived in time
+	 * @throws InterruptedException
+	 *             - the thread was interrupted while waiting
+	 */
+	public ExecutionDataStore requestDump(String sessionId, long maxMillis) throws InterruptedException {
+		for (Connection connection : this.connections) {
+			connection.requestDump();
+		}
+		return take(sessionId, maxMillis);
+	}
+
+	/**
+	 * Stops accepting connections, and drops the connections of runtimes
+	 * still connected.
+	 */
+	public void close() {
+		this.closed = true;
+		try {
+			this.serverSocket.close();
+		} catch (IOException e) {
+			// nothing more to accept
+		}
+		for (Connection connection : this.connections) {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Class to read the dumps of one jacoco runtime.
+	 *
+	 * @author ICT-2
+	 */
+	private class Connection extends Thread implements ISessionInfoVisitor, IExecutionDataVisitor {
+		/**
+		 * Socket connected to the runtime.
+		 */
+		private Socket socket;
+
+		/**
+		 * Writer of commands to the runtime, or null until its header is
+		 * written.
+		 */
+		private RemoteControlWriter writer = null;
+
+		/**
+		 * Session of the dump being read, or null before its session info.
+		 */
+		private String sessionId = null;
+
+		/**
+		 * Execution data of the dump being read.
+		 */
+		private ExecutionDataStore store = new ExecutionDataStore();
+
+		/**
+		 * Constructs a reader for a runtime's connection.
+		 *
+		 * @param socket
+		 *            - socket connected to the runtime
+		 */
+		public Connection(Socket socket) {
+			super("coverage connection");
+			this.socket = socket;
+			setDaemon(true);
+		}
+
+		/**
+		 * Asks the runtime to dump its execution data, without resetting it.
+		 * A runtime which has disconnected is not asked.
+		 */
+		public synchronized void requestDump() {
+			if (this.writer == null) {
+				return;
+			}
+			try {
+				this.writer.visitDumpCommand(true, false);
+			} catch (IOException e) {
+				// the runtime's JVM has exited
+			}
+		}
+
+		/**
+		 * Drops the connection, ending the reading of its dumps.
+		 */
+		public void close() {
+			try {
+				this.socket.close();
+			} catch (IOException e) {
+				// already disconnected
+			}
+		}
+
+		/**
+		 * Reads dumps until the runtime disconnects. Each dump ends with a
+		 * command confirmation.
+		 */
+		@Override
+		public void run() {
+			connections.add(this);
+			if (closed) {
+				// the server closed while the connection was being accepted
+				close();
+			}
+			try {
+				// the runtime waits for the header of a writer
+				RemoteControlWriter writer = new RemoteControlWriter(this.socket.getOutputStream());
+				synchronized (this) {
+					this.writer = writer;
+				}
+				RemoteControlReader reader = new RemoteControlReader(this.socket.getInputStream());
+				reader.setSessionInfoVisitor(this);
+				reader.setExecutionDataVisitor(this);
+				while (reader.read()) {
+					if (this.sessionId != null) {
+						BlockingQueue<ExecutionDataStore> queue = dumps.get(this.sessionId);
+						if (queue != null) {
+							queue.add(this.store);
+						}
+					}
+					this.sessionId = null;
+					this.store = new ExecutionDataStore();
+				}
+			} catch (IOException e) {
+				// the runtime's JVM was killed
+			} finally {
+				connections.remove(this);
+				close();
+			}
+		}
+
+		@Override
+		public void visitSessionInfo(SessionInfo info) {
+			this.sessionId = info.getId();
+		}
+
+		@Override
+		public void visitClassExecution(ExecutionData data) {
+			this.store.visitClassExecution(data);
+		}
+	}
+}
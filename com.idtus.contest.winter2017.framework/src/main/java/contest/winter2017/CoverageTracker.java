@@ -0,0 +1,181 @@
+package contest.winter2017;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jacoco.core.analysis.IClassCoverage;
+import org.jacoco.core.analysis.ICoverageNode.CounterEntity;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.data.SessionInfo;
+
+/**
+ * Class to keep track of the code covered by all tests run so far.
+ * <p>
+ * The probes hit by each test are merged into one execution data store in
+ * memory. Running totals of the instructions, branches, lines, methods and
+ * complexity covered are kept, so the percent covered can be read at any
+ * time without analyzing anything. Only a class which a test covers more of
+ * is analyzed again, and only that class's share of the totals changes. The
+ * merged data is written out as one compact session, however many tests ran.
+ *
+ * TestBounds classes are not counted.
+ *
+ * @author ICT-2
+ */
+class CoverageTracker {
+	/**
+	 * Probe map of the jar under test.
+	 */
+	private ProbeMap probeMap;
+
+	/**
+	 * Execution data of all tests run so far.
+	 */
+	private ExecutionDataStore merged = new ExecutionDataStore();
+
+	/**
+	 * Total and covered counts of each counted class, by jacoco class id.
+	 */
+	private Map<Long, int[]> classCounts = new HashMap<Long, int[]>();
+
+	/**
+	 * Total count of all counted classes.
+	 */
+	private long total = 0;
+
+	/**
+	 * Covered count of all counted classes.
+	 */
+	private long covered = 0;
+
+	/**
+	 * Time this tracker started, used as the start of its jacoco session.
+	 */
+	private long start = System.currentTimeMillis();
+
+	/**
+	 * Constructs a coverage tracker for which nothing has been covered yet.
+	 *
+	 * @param probeMap
+	 *            - probe map of the jar under test
+	 */
+	public CoverageTracker(ProbeMap probeMap) {
+		this.probeMap = probeMap;
+		for (ClassProbes probes : probeMap.getClasses()) {
+			if (!probes.name.endsWith("TestBounds")) {
+				int[] counts = count(probes.getCoverage(null));
+				this.classCounts.put(probes.id, counts);
+				this.total += counts[0];
+			}
+		}
+	}
+
+	/**
+	 * Merges the execution data of a test into the coverage so far.
+	 *
+	 * @param data
+	 *            - execution data of a test
+	 */
+	public synchronized void add(ExecutionDataStore data) {
+		for (ExecutionData classData : data.getContents()) {
+			ExecutionData soFar = this.merged.get(classData.getId());
+			if (soFar == null) {
+				soFar = new ExecutionData(classData.getId(), classData.getName(), classData.getProbes().length);
+				this.merged.put(soFar);
+			}
+			if (!addsProbes(soFar.getProbes(), classData.getProbes())) {
+				continue;
+			}
+			soFar.merge(classData);
+
+			// only the totals of a class covered further change
+			int[] counts = this.classCounts.get(classData.getId());
+			ClassProbes probes = this.probeMap.getClass(classData.getId());
+			if (counts != null && probes != null) {
+				int[] newCounts = count(probes.getCoverage(soFar.getProbes()));
+				this.covered += newCounts[1] - counts[1];
+				this.classCounts.put(classData.getId(), newCounts);
+			}
+		}
+	}
+
+	/**
+	 * Returns the percent of instructions, branches, lines, methods and
+	 * complexity covered so far.
+	 *
+	 * @return percent of code covered so far
+	 */
+	public synchronized double getPercentCovered() {
+		return ((double) this.covered / (double) this.total) * 100.0;
+	}
+
+	/**
+	 * Writes the execution data of all tests run so far to a jacoco output
+	 * file as a single session, replacing its contents.
+	 * <p>
+	 * The data is written to a temporary file first, so the output file always
+	 * holds a complete session.
+	 *
+	 * @param file
+	 *            - file to write to
+	 * @throws IOException
+	 *             - an exception encountered while writing
+	 */
+	public synchronized void write(File file) throws IOException {
+		File part = new File(file.getPath() + ".part");
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(part));
+		try {
+			ExecutionDataWriter writer = new ExecutionDataWriter(out);
+			writer.visitSessionInfo(new SessionInfo(file.getName(), this.start, System.currentTimeMillis()));
+			this.merged.accept(writer);
+		} finally {
+			out.close();
+		}
+		Files.move(part.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Returns whether a probe array hits any probe another does not.
+	 *
+	 * @param soFar
+	 *            - probes hit so far
+	 * @param hits
+	 *            - probes hit by a test
+	 * @return true if hits has a probe which soFar does not
+	 */
+	private static boolean addsProbes(boolean[] soFar, boolean[] hits) {
+		for (int p = 0; p < hits.length; p++) {
+			if (hits[p] && !soFar[p]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the total and covered counts of a class, summed over
+	 * instructions, branches, lines, methods and complexity.
+	 *
+	 * @param coverage
+	 *            - coverage of the class
+	 * @return total count followed by covered count
+	 */
+	private static int[] count(IClassCoverage coverage) {
+		int[] counts = new int[2];
+		for (CounterEntity entity : new CounterEntity[] { CounterEntity.INSTRUCTION, CounterEntity.BRANCH,
+				CounterEntity.LINE, CounterEntity.METHOD, CounterEntity.COMPLEXITY }) {
+			counts[0] += coverage.getCounter(entity).getTotalCount();
+			counts[1] += coverage.getCounter(entity).getCoveredCount();
+		}
+		return counts;
+	}
+}
@@ -0,0 +1,180 @@
+package contest.winter2017;
+
+/**
+ * Class to represent every error of the jar under test with the same
+ * fingerprint, and how it was found.
+ * <p>
+ * A bucket keeps the test which first hit it, and the smallest test which hit
+ * it, as the smallest is the easiest to reproduce.
+ *
+ * @author ICT-2
+ */
+public class CrashBucket {
+	/**
+	 * Fingerprint of the bucket's errors.
+	 */
+	private String fingerprint;
+
+	/**
+	 * Short description of the bucket's errors for reports.
+	 */
+	private String label;
+
+	/**
+	 * Full text of the first error of the bucket.
+	 */
+	private String example;
+
+	/**
+	 * Number of tests which hit the bucket.
+	 */
+	private int hitCount = 0;
+
+	/**
+	 * Number of the first test which hit the bucket, counted from 0.
+	 */
+	private int firstTest;
+
+	/**
+	 * Parameters of the first test which hit the bucket.
+	 */
+	private String firstInput;
+
+	/**
+	 * Parameters of the smallest test which hit the bucket.
+	 */
+	private String smallestInput;
+
+	/**
+	 * Milliseconds from the creation of the tester until the bucket was
+	 * found.
+	 */
+	private long foundMillis;
+
+	/**
+	 * Constructs a bucket for the first error with a fingerprint.
+	 *
+	 * @param fingerprint
+	 *            - fingerprint of the error
+	 * @param label
+	 *            - short description of the error for reports
+	 * @param example
+	 *            - full text of the error
+	 * @param test
+	 *            - number of the test which hit the error
+	 * @param input
+	 *            - parameters of the test
+	 * @param foundMillis
+	 *            - milliseconds from the creation of the tester until the
+	 *            error
+	 */
+	CrashBucket(String fingerprint, String label, String example, int test, String input, long foundMillis) {
+		this.fingerprint = fingerprint;
+		this.label = label;
+		this.example = example;
+		this.firstTest = test;
+		this.firstInput = input;
+		this.smallestInput = input;
+		this.foundMillis = foundMillis;
+	}
+
+	/**
+	 * Counts another test which hit the bucket.
+	 *
+	 * @param input
+	 *            - parameters of the test
+	 */
+	synchronized void hit(String input) {
+		this.hitCount++;
+		if (input.length() < this.smallestInput.length()) {
+			this.smallestInput = input;
+		}
+	}
+
+	/**
+	 * Returns the fingerprint of the bucket's errors.
+	 *
+	 * @return the fingerprint
+	 */
+	public String getFingerprint() {
+		return this.fingerprint;
+	}
+
+	/**
+	 * Returns a short description of the bucket's errors.
+	 *
+	 * @return the error's type chain and where it was thrown, or the start of
+	 *         other error output
+	 */
+	public String getLabel() {
+		return this.label;
+	}
+
+	/**
+	 * Returns the full text of the first error of the bucket.
+	 *
+	 * @return the error as printed
+	 */
+	public String getExample() {
+		return this.example;
+	}
+
+	/**
+	 * Returns the number of tests which hit the bucket.
+	 *
+	 * @return the hit count
+	 */
+	public synchronized int getHitCount() {
+		return this.hitCount;
+	}
+
+	/**
+	 * Returns the number of the first test which hit the bucket.
+	 *
+	 * @return the test's number, counted from 0 in the order tests were
+	 *         recorded
+	 */
+	public int getFirstTest() {
+		return this.firstTest;
+	}
+
+	/**
+	 * Returns the parameters of the first test which hit the bucket.
+	 *
+	 * @return the test's parameters
+	 */
+	public String getFirstInput() {
+		return this.firstInput;
+	}
+
+	/**
+	 * Returns the parameters of the smallest test which hit the bucket.
+	 *
+	 * @return the test's parameters
+	 */
+	public synchronized String getSmallestInput() {
+		return this.smallestInput;
+	}
+
+	/**
+	 * Returns the time from the creation of the tester until the bucket was
+	 * found.
+	 *
+	 * @return milliseconds until the first hit
+	 */
+	public long getFoundMillis() {
+		return this.foundMillis;
+	}
+
+	/**
+	 * Returns the bucket as a line of the tester's report.
+	 *
+	 * @return the bucket's label, hits, first and smallest tests and time
+	 *         found
+	 */
+	@Override
+	public synchronized String toString() {
+		return this.label + " (hits: " + this.hitCount + ", first test: " + this.firstTest + ", smallest input: \""
+				+ this.smallestInput.trim() + "\", found after: " + this.foundMillis + " ms)";
+	}
+}
@@ -0,0 +1,238 @@
+package contest.winter2017;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Class to sort the errors of every test into buckets of errors which are
+ * likely the same bug.
+ * <p>
+ * An exception's fingerprint is the chain of its type and its causes' types,
+ * and the top frames of its innermost cause, where it was first thrown.
+ * Messages, which often hold the test's input, and line numbers, which change
+ * with every build of the jar under test, are left out, as are frames of the
+ * tester and of reflection. Other error output has a fingerprint of its text,
+ * with digits and the messages of any exceptions it names left out.
+ *
+ * @author ICT-2
+ */
+class CrashBuckets {
+	/**
+	 * Number of frames in an exception's fingerprint.
+	 */
+	public static final int FINGERPRINT_FRAMES = 5;
+
+	/**
+	 * Number of characters of other error output in a fingerprint or label.
+	 */
+	public static final int MAX_TEXT = 200;
+
+	/**
+	 * Prefixes of the frames left out of fingerprints.
+	 */
+	private static final String[] HARNESS_FRAMES = { SecurityWatchdog.class.getPackage().getName() + ".",
+			"sun.reflect.", "jdk.internal.reflect.", "java.lang.reflect." };
+
+	/**
+	 * Pattern of the generated part of a lambda class's name.
+	 */
+	private static final Pattern LAMBDA = Pattern.compile("\\$\\$Lambda\\$[^.(]*");
+
+	/**
+	 * Pattern of an exception and its message in other error output.
+	 */
+	private static final Pattern EXCEPTION_MESSAGE = Pattern.compile("(\\w(Exception|Error)): .*");
+
+	/**
+	 * Buckets by fingerprint.
+	 */
+	private ConcurrentHashMap<String, CrashBucket> buckets = new ConcurrentHashMap<String, CrashBucket>();
+
+	/**
+	 * Time the index was created, along with its tester.
+	 */
+	private long start = System.currentTimeMillis();
+
+	/**
+	 * Adds the errors of a test to their buckets. A test which prints an
+	 * error several times hits its bucket once.
+	 *
+	 * @param output
+	 *            - output of the test
+	 * @param test
+	 *            - number of the test, in the order tests were recorded
+	 */
+	public void record(Output output, int test) {
+		Set<String> hit = new HashSet<String>();
+		for (ExceptionRecord record : output.getExceptionRecords()) {
+			String fingerprint = fingerprint(record);
+			if (hit.add(fingerprint)) {
+				bucket(fingerprint, label(record), record.toString(), output, test);
+			}
+		}
+		for (String error : output.getOtherErrors()) {
+			String text = error.trim();
+			if (text.length() > MAX_TEXT) {
+				text = text.substring(0, MAX_TEXT);
+			}
+			String scrubbed = EXCEPTION_MESSAGE.matcher(text).replaceAll("$1").replaceAll("[0-9]+", "#");
+			String fingerprint = "stderr|" + scrubbed;
+			if (hit.add(fingerprint)) {
+				bucket(fingerprint, text, error, output, test);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of buckets.
+	 *
+	 * @return the number of distinct errors found
+	 */
+	public int size() {
+		return this.buckets.size();
+	}
+
+	/**
+	 * Returns every bucket, in the order they were found.
+	 *
+	 * @return the buckets
+	 */
+	public List<CrashBucket> getBuckets() {
+		List<CrashBucket> sorted = new ArrayList<CrashBucket>(this.buckets.values());
+		Collections.sort(sorted, new Comparator<CrashBucket>() {
+			@Override
+			public int compare(CrashBucket a, CrashBucket b) {
+				return Integer.compare(a.getFirstTest(), b.getFirstTest());
+			}
+		});
+		return sorted;
+	}
+
+	/**
+	 * Counts a test's hit of a bucket, creating the bucket if it is new.
+	 *
+	 * @param fingerprint
+	 *            - fingerprint of the error
+	 * @param label
+	 *            - short description of the error
+	 * @param example
+	 *            - full text of the error
+	 * @param output
+	 *            - output of the test
+	 * @param test
+	 *            - number of the test
+	 */
+	private void bucket(String fingerprint, String label, String example, Output output, int test) {
+		CrashBucket bucket = this.buckets.get(fingerprint);
+		if (bucket == null) {
+			CrashBucket found = new CrashBucket(fingerprint, label, example, test, output.getCommand(),
+					System.currentTimeMillis() - this.start);
+			bucket = this.buckets.putIfAbsent(fingerprint, found);
+			if (bucket == null) {
+				bucket = found;
+			}
+		}
+		bucket.hit(output.getCommand());
+	}
+
+	/**
+	 * Returns the fingerprint of an exception.
+	 *
+	 * @param record
+	 *            - the exception
+	 * @return the exception's type chain, and the top frames of its innermost
+	 *         cause
+	 */
+	static String fingerprint(ExceptionRecord record) {
+		StringBuffer fingerprint = new StringBuffer(record.getType());
+		ExceptionRecord innermost = record;
+		while (innermost.getCause() != null) {
+			innermost = innermost.getCause();
+			fingerprint.append(">" + innermost.getType());
+		}
+		for (String frame : topFrames(innermost)) {
+			fingerprint.append("|" + frame);
+		}
+		return fingerprint.toString();
+	}
+
+	/**
+	 * Returns a short description of an exception.
+	 *
+	 * @param record
+	 *            - the exception
+	 * @return the exception's type chain, and its innermost cause's top two
+	 *         frames
+	 */
+	private static String label(ExceptionRecord record) {
+		StringBuffer label = new StringBuffer(record.getType());
+		ExceptionRecord innermost = record;
+		while (innermost.getCause() != null) {
+			innermost = innermost.getCause();
+			label.append(" caused by " + innermost.getType());
+		}
+		List<String> frames = topFrames(innermost);
+		if (!frames.isEmpty()) {
+			label.append(" at " + frames.get(0));
+		}
+		if (frames.size() > 1) {
+			label.append(" from " + frames.get(1));
+		}
+		return label.toString();
+	}
+
+	/**
+	 * Returns the top frames of an exception which are not in the tester or
+	 * reflection, without line numbers.
+	 *
+	 * @param record
+	 *            - the exception
+	 * @return up to FINGERPRINT_FRAMES frames, innermost first
+	 */
+	private static List<String> topFrames(ExceptionRecord record) {
+		List<String> frames = new ArrayList<String>();
+		for (String frame : record.getFrames()) {
+			if (frames.size() >= FINGERPRINT_FRAMES) {
+				break;
+			}
+			// lambda classes are numbered in the order they are spun
+			frame = LAMBDA.matcher(frame).replaceAll("\\$\\$Lambda");
+			// java.base/a.B.c(B.java:12) becomes a.B.c(B.java)
+			int slash = frame.lastIndexOf('/', Math.max(frame.indexOf('('), 0));
+			if (slash != -1) {
+				frame = frame.substring(slash + 1);
+			}
+			if (isHarnessFrame(frame)) {
+				continue;
+			}
+			int colon = frame.lastIndexOf(':');
+			if (colon != -1 && frame.endsWith(")") && frame.indexOf('(') < colon) {
+				frame = frame.substring(0, colon) + ")";
+			}
+			frames.add(frame);
+		}
+		return frames;
+	}
+
+	/**
+	 * Returns whether a frame is in the tester or in reflection.
+	 *
+	 * @param frame
+	 *            - the frame, without its "at"
+	 * @return true if the frame is left out of fingerprints, or false if not
+	 */
+	private static boolean isHarnessFrame(String frame) {
+		for (String prefix : HARNESS_FRAMES) {
+			if (frame.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
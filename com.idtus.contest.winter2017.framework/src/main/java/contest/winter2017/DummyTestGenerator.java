@@ -67,7 +67,7 @@ public class DummyTestGenerator extends TestGenerator {
 			if (potentialParameter.isEnumeration()) {
 				// dumb logic - given a list of options, always use the first
 				// one
-				parameterString = potentialParameter.getEnumerationValues().get(0) + " ";
+				parameterString = potentialParameter.getEnumerationValues().get(0);
 
 				// if the parameter has internal format (eg.
 				// "<number>:<number>PM EST")
@@ -96,11 +96,11 @@ public class DummyTestGenerator extends TestGenerator {
 			} else {
 				if (potentialParameter.getType() == Integer.class) {
 					// dumb logic - always use '1' for an Integer
-					parameterString = Integer.toString(1) + " ";
+					parameterString = Integer.toString(1);
 					previousParameterStrings.add(parameterString);
 				} else if (potentialParameter.getType() == Double.class) {
 					// dumb logic - always use '1.0' for a Double
-					parameterString = Double.toString(1.0) + " ";
+					parameterString = Double.toString(1.0);
 					previousParameterStrings.add(parameterString);
 				} else if (potentialParameter.getType() == String.class) {
 
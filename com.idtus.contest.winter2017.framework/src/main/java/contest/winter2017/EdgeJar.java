@@ -0,0 +1,340 @@
+package contest.winter2017;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.jacoco.core.internal.flow.LabelFlowAnalyzer;
+import org.jacoco.core.internal.flow.LabelInfo;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * Class to instrument the jar under test with edge hits, ahead of testing.
+ * <p>
+ * Every basic block of every method gets a fixed id, and a call to EdgeMap
+ * which counts the edge into the block. A block starts at the start of a
+ * method, at every jump or switch target and exception handler, and after
+ * every conditional jump. Labels which control only falls through to, such as
+ * those of line numbers and local variable scopes, start no block. Calls are
+ * placed after a label's stack map frame, so the frames of the class stay
+ * valid and only the maximum stack size changes.
+ * <p>
+ * The jar instrumented is the offline instrumented copy of the jar under test.
+ * Jacoco's classes keep the ids of the original classes, so jacoco coverage
+ * still matches the probe map of the original jar. Jacoco's own method is not
+ * instrumented. The copy is cached next to the jacoco output, and only made
+ * again if the jar it is made from changes.
+ *
+ * @author ICT-2
+ */
+class EdgeJar {
+	/**
+	 * Internal name of the edge coverage runtime.
+	 */
+	private static final String RUNTIME = EdgeMap.class.getName().replace('.', '/');
+
+	/**
+	 * Suffix of the instrumented copy of a jar.
+	 */
+	private static final String SUFFIX = "_edges.jar";
+
+	/**
+	 * Returns a copy of a jar instrumented with edge hits, instrumenting it if
+	 * no up to date copy is cached.
+	 *
+	 * @param jar
+	 *            - jar to instrument
+	 * @param cacheDir
+	 *            - directory to cache the copy in
+	 * @return the instrumented copy of the jar
+	 * @throws IOException
+	 *             - an exception encountered while reading the jar or writing
+	 *             the copy
+	 */
+	public static File instrument(File jar, File cacheDir) throws IOException {
+		File cached = new File(cacheDir, jar.getName().replaceAll("\\.", "_") + SUFFIX);
+		if (cached.exists() && cached.lastModified() >= jar.lastModified()) {
+			return cached;
+		}
+
+		// write to a temporary file first, so a cached copy is always complete
+		File part = new File(cached.getPath() + ".part");
+		ZipInputStream in = new ZipInputStream(new BufferedInputStream(new FileInputStream(jar)));
+		try {
+			ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(part)));
+			try {
+				ZipEntry entry;
+				while ((entry = in.getNextEntry()) != null) {
+					String name = entry.getName();
+					// signatures no longer match instrumented classes
+					if (name.startsWith("META-INF/") && (name.endsWith(".SF") || name.endsWith(".RSA")
+							|| name.endsWith(".DSA") || name.endsWith(".EC"))) {
+						continue;
+					}
+					byte[] content = read(in);
+					if (name.endsWith(".class")) {
+						content = instrument(content);
+					}
+					out.putNextEntry(new ZipEntry(name));
+					out.write(content);
+					out.closeEntry();
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+		Files.move(part.toPath(), cached.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		return cached;
+	}
+
+	/**
+	 * Instruments a class with edge hits.
+	 *
+	 * @param classBytes
+	 *            - class to instrument
+	 * @return the instrumented class
+	 */
+	static byte[] instrument(byte[] classBytes) {
+		ClassReader reader = new ClassReader(classBytes);
+		// frames are kept as they are, only maximum stack sizes change
+		ClassWriter writer = new ClassWriter(reader, ClassWriter.COMPUTE_MAXS);
+		reader.accept(new EdgeClassVisitor(writer), 0);
+		return writer.toByteArray();
+	}
+
+	/**
+	 * Reads the rest of a stream.
+	 *
+	 * @param in
+	 *            - stream to read
+	 * @return the bytes read
+	 * @throws IOException
+	 *             - an exception encountered while reading
+	 */
+	private static byte[] read(InputStream in) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			bytes.write(buffer, 0, read);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Class visitor which instruments each method of a class with edge hits.
+	 *
+	 * @author ICT-2
+	 */
+	private static class EdgeClassVisitor extends ClassVisitor {
+		/**
+		 * Internal name of the class.
+		 */
+		private String className;
+
+		/**
+		 * Constructs a visitor which passes the instrumented class on.
+		 *
+		 * @param next
+		 *            - visitor to pass the class on to
+		 */
+		public EdgeClassVisitor(ClassVisitor next) {
+			super(Opcodes.ASM5, next);
+		}
+
+		@Override
+		public void visit(int version, int access, String name, String signature, String superName,
+				String[] interfaces) {
+			this.className = name;
+			super.visit(version, access, name, signature, superName, interfaces);
+		}
+
+		@Override
+		public MethodVisitor visitMethod(int access, String name, String desc, String signature,
+				String[] exceptions) {
+			MethodVisitor next = super.visitMethod(access, name, desc, signature, exceptions);
+			if (next == null || name.equals("$jacocoInit")) {
+				return next;
+			}
+			final MethodVisitor edges = new EdgeMethodVisitor(next, this.className + "." + name + desc);
+			// which labels are jumped to is only known once the whole method
+			// has been read
+			return new MethodNode(Opcodes.ASM5, access, name, desc, signature, exceptions) {
+				@Override
+				public void visitEnd() {
+					LabelFlowAnalyzer.markLabels(this);
+					accept(edges);
+				}
+			};
+		}
+	}
+
+	/**
+	 * Method visitor which puts an edge hit at the start of each basic block.
+	 * <p>
+	 * A block's hit is put before the first instruction of the block, which
+	 * comes after any frame or line number of the block's label. The labels
+	 * of the method must have been marked by jacoco's LabelFlowAnalyzer.
+	 *
+	 * @author ICT-2
+	 */
+	private static class EdgeMethodVisitor extends MethodVisitor {
+		/**
+		 * Name of the method, with its class and descriptor.
+		 */
+		private String methodName;
+
+		/**
+		 * Number of blocks found so far.
+		 */
+		private int blocks = 0;
+
+		/**
+		 * Whether a block has started, and its hit is still to be put.
+		 */
+		private boolean blockStarted = false;
+
+		/**
+		 * Constructs a visitor which passes the instrumented method on.
+		 *
+		 * @param next
+		 *            - visitor to pass the method on to
+		 * @param methodName
+		 *            - name of the method, with its class and descriptor
+		 */
+		public EdgeMethodVisitor(MethodVisitor next, String methodName) {
+			super(Opcodes.ASM5, next);
+			this.methodName = methodName;
+		}
+
+		/**
+		 * Puts the hit of a block which has started.
+		 */
+		private void hitBlock() {
+			if (!this.blockStarted) {
+				return;
+			}
+			this.blockStarted = false;
+			// ids are fixed, so the same edge has the same index in every run
+			int id = (this.methodName + "#" + this.blocks++).hashCode() & (EdgeMap.MAP_SIZE - 1);
+			super.visitLdcInsn(id);
+			super.visitMethodInsn(Opcodes.INVOKESTATIC, RUNTIME, "hit", "(I)V", false);
+		}
+
+		@Override
+		public void visitCode() {
+			super.visitCode();
+			this.blockStarted = true;
+		}
+
+		@Override
+		public void visitLabel(Label label) {
+			super.visitLabel(label);
+			// a label only fallen through to is inside the current block
+			if (LabelInfo.isMultiTarget(label) || !LabelInfo.isSuccessor(label)) {
+				this.blockStarted = true;
+			}
+		}
+
+		@Override
+		public void visitInsn(int opcode) {
+			hitBlock();
+			super.visitInsn(opcode);
+		}
+
+		@Override
+		public void visitIntInsn(int opcode, int operand) {
+			hitBlock();
+			super.visitIntInsn(opcode, operand);
+		}
+
+		@Override
+		public void visitVarInsn(int opcode, int var) {
+			hitBlock();
+			super.visitVarInsn(opcode, var);
+		}
+
+		@Override
+		public void visitTypeInsn(int opcode, String type) {
+			hitBlock();
+			super.visitTypeInsn(opcode, type);
+		}
+
+		@Override
+		public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+			hitBlock();
+			super.visitFieldInsn(opcode, owner, name, desc);
+		}
+
+		@Override
+		public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+			hitBlock();
+			super.visitMethodInsn(opcode, owner, name, desc, itf);
+		}
+
+		@Override
+		public void visitInvokeDynamicInsn(String name, String desc, Handle bsm, Object... bsmArgs) {
+			hitBlock();
+			super.visitInvokeDynamicInsn(name, desc, bsm, bsmArgs);
+		}
+
+		@Override
+		public void visitJumpInsn(int opcode, Label label) {
+			hitBlock();
+			super.visitJumpInsn(opcode, label);
+			// the fall through of a conditional jump is a block of its own
+			if (opcode != Opcodes.GOTO && opcode != Opcodes.JSR) {
+				this.blockStarted = true;
+			}
+		}
+
+		@Override
+		public void visitLdcInsn(Object cst) {
+			hitBlock();
+			super.visitLdcInsn(cst);
+		}
+
+		@Override
+		public void visitIincInsn(int var, int increment) {
+			hitBlock();
+			super.visitIincInsn(var, increment);
+		}
+
+		@Override
+		public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+			hitBlock();
+			super.visitTableSwitchInsn(min, max, dflt, labels);
+		}
+
+		@Override
+		public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+			hitBlock();
+			super.visitLookupSwitchInsn(dflt, keys, labels);
+		}
+
+		@Override
+		public void visitMultiANewArrayInsn(String desc, int dims) {
+			hitBlock();
+			super.visitMultiANewArrayInsn(desc, dims);
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package contest.winter2017;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Runtime of edge coverage, called by classes of the jar under test which were
+ * instrumented with edge hits.
+ * <p>
+ * Every basic block of an instrumented class has an id. Each time a block is
+ * entered, the edge from the block entered before it is counted in a map of
+ * hit counts, indexed by the block's id xor the previous block's id shifted
+ * right by one, as AFL does. Counts wrap at 256. The map is a file memory
+ * mapped by both the test's JVM and the tester, so the tester reads counts
+ * straight from memory once the test ends.
+ * <p>
+ * The map file is named by a system property, or opened by the watchdog once
+ * it is told which map to use. Until a map is open, hits are not counted.
+ *
+ * @author ICT-2
+ */
+public class EdgeMap {
+	/**
+	 * Number of edges in a map, a power of two.
+	 */
+	public static final int MAP_SIZE = 1 << 16;
+
+	/**
+	 * System property naming the map file a JVM counts edges in.
+	 */
+	static final String MAP_PROPERTY = "contest.winter2017.edgeMap";
+
+	/**
+	 * Map of hit counts, or null if no map is open.
+	 */
+	private static ByteBuffer map = open(System.getProperty(MAP_PROPERTY));
+
+	/**
+	 * Id of the last block entered, shifted right by one.
+	 */
+	private static int previous = 0;
+
+	/**
+	 * Counts the edge into a block.
+	 *
+	 * @param block
+	 *            - id of the block entered, below MAP_SIZE
+	 */
+	public static void hit(int block) {
+		ByteBuffer counts = map;
+		if (counts == null) {
+			return;
+		}
+		int edge = block ^ previous;
+		counts.put(edge, (byte) (counts.get(edge) + 1));
+		previous = block >>> 1;
+	}
+
+	/**
+	 * Opens the given map, if no map is open yet. Must be called before the
+	 * security manager is set, so opening the map is not reported as a
+	 * permission used by the jar under test.
+	 *
+	 * @param path
+	 *            - path of the map file, or null or empty for no map
+	 */
+	static void start(String path) {
+		if (map == null) {
+			map = open(path);
+		}
+	}
+
+	/**
+	 * Forgets the last block entered, so a new test's first edge does not
+	 * depend on the last test.
+	 */
+	static void reset() {
+		previous = 0;
+	}
+
+	/**
+	 * Memory maps a map file.
+	 *
+	 * @param path
+	 *            - path of the map file, or null or empty for no map
+	 * @return the mapped file, or null if there is no map or it could not be
+	 *         mapped
+	 */
+	private static ByteBuffer open(String path) {
+		if (path == null || path.isEmpty()) {
+			return null;
+		}
+		try {
+			RandomAccessFile file = new RandomAccessFile(path, "rw");
+			try {
+				// a mapping stays valid after its file is closed
+				return file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, MAP_SIZE);
+			} finally {
+				file.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+}
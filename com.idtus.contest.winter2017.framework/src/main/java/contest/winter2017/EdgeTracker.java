@@ -0,0 +1,167 @@
+package contest.winter2017;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Class to keep track of the edges covered by all tests run so far.
+ * <p>
+ * Each worker slot has an edge map file, which the tester and the slot's test
+ * JVMs both memory map. The tester clears a slot's map before each test, and
+ * reads the test's hit counts from memory once it ends, without copying the
+ * map or waiting for anything to be sent.
+ * <p>
+ * As in AFL, hit counts are put in buckets of 1, 2, 3, 4-7, 8-15, 16-31,
+ * 32-127 and 128 or more, one bit per bucket. A test finds something new for
+ * every edge it hits in a bucket no earlier test hit that edge in, so a test
+ * which only runs a loop more often than before still counts.
+ *
+ * @author ICT-2
+ */
+class EdgeTracker {
+	/**
+	 * Bucket bit of each hit count.
+	 */
+	private static final byte[] BUCKETS = new byte[256];
+	static {
+		for (int count = 1; count < BUCKETS.length; count++) {
+			int bucket;
+			if (count <= 3) {
+				bucket = count - 1;
+			} else if (count <= 7) {
+				bucket = 3;
+			} else if (count <= 15) {
+				bucket = 4;
+			} else if (count <= 31) {
+				bucket = 5;
+			} else if (count <= 127) {
+				bucket = 6;
+			} else {
+				bucket = 7;
+			}
+			BUCKETS[count] = (byte) (1 << bucket);
+		}
+	}
+
+	/**
+	 * Zeros a map is cleared with.
+	 */
+	private static final byte[] ZEROS = new byte[EdgeMap.MAP_SIZE];
+
+	/**
+	 * Map files, by slot.
+	 */
+	private File[] files;
+
+	/**
+	 * Memory mapped maps, by slot.
+	 */
+	private ByteBuffer[] maps;
+
+	/**
+	 * Buckets hit so far, by edge.
+	 */
+	private byte[] seen = new byte[EdgeMap.MAP_SIZE];
+
+	/**
+	 * Number of edges hit so far.
+	 */
+	private int edgeCount = 0;
+
+	/**
+	 * Constructs a tracker for which no edge has been hit yet, creating and
+	 * mapping the map file of each slot.
+	 *
+	 * @param dir
+	 *            - directory to keep map files in
+	 * @param prefix
+	 *            - prefix of the map files' names
+	 * @param slots
+	 *            - number of worker slots
+	 * @throws IOException
+	 *             - an exception encountered while creating or mapping a file
+	 */
+	public EdgeTracker(File dir, String prefix, int slots) throws IOException {
+		this.files = new File[slots];
+		this.maps = new ByteBuffer[slots];
+		for (int slot = 0; slot < slots; slot++) {
+			this.files[slot] = new File(dir, prefix + "_slot" + slot + ".edges");
+			RandomAccessFile file = new RandomAccessFile(this.files[slot], "rw");
+			try {
+				this.maps[slot] = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, EdgeMap.MAP_SIZE);
+			} finally {
+				file.close();
+			}
+			reset(slot);
+		}
+	}
+
+	/**
+	 * Returns the path of a slot's map file, which the slot's test JVMs count
+	 * edges in.
+	 *
+	 * @param slot
+	 *            - slot of a worker
+	 * @return the path of the slot's map file
+	 */
+	public String getPath(int slot) {
+		return this.files[slot].getPath();
+	}
+
+	/**
+	 * Clears a slot's map before a test runs in the slot.
+	 *
+	 * @param slot
+	 *            - slot of the worker about to run a test
+	 */
+	public void reset(int slot) {
+		ByteBuffer map = this.maps[slot].duplicate();
+		map.clear();
+		map.put(ZEROS);
+	}
+
+	/**
+	 * Merges the edges hit by the last test of a slot into the edges hit so
+	 * far.
+	 * <p>
+	 * Most of a map is zero, so it is scanned eight edges at a time, and only
+	 * the edges of non-zero words are looked at.
+	 *
+	 * @param slot
+	 *            - slot of the worker which ran the test
+	 * @return number of edges hit in a new bucket by the test
+	 */
+	public synchronized int collect(int slot) {
+		ByteBuffer map = this.maps[slot];
+		int newEdges = 0;
+		for (int word = 0; word < EdgeMap.MAP_SIZE; word += 8) {
+			if (map.getLong(word) == 0) {
+				continue;
+			}
+			for (int edge = word; edge < word + 8; edge++) {
+				byte bucket = BUCKETS[map.get(edge) & 0xff];
+				if ((this.seen[edge] & bucket) != 0 || bucket == 0) {
+					continue;
+				}
+				if (this.seen[edge] == 0) {
+					this.edgeCount++;
+				}
+				this.seen[edge] |= bucket;
+				newEdges++;
+			}
+		}
+		return newEdges;
+	}
+
+	/**
+	 * Returns the number of edges hit so far.
+	 *
+	 * @return number of edges hit so far
+	 */
+	public synchronized int getEdgeCount() {
+		return this.edgeCount;
+	}
+}
@@ -0,0 +1,261 @@
+package contest.winter2017;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Class to represent an exception printed to standard err by a test, as
+ * parsed from its stack trace.
+ * <p>
+ * An exception has a type, an optional message, the frames of its stack
+ * trace, and optionally the exception which caused it and exceptions
+ * suppressed while it was thrown. The top exception of a trace may also name
+ * the thread it went uncaught in.
+ *
+ * @author ICT-2
+ */
+public class ExceptionRecord {
+	/**
+	 * Prefix of the trace of an exception no code caught.
+	 */
+	static final String UNCAUGHT_PREFIX = "Exception in thread \"";
+
+	/**
+	 * Name of the thread the exception went uncaught in, or null.
+	 */
+	private String thread = null;
+
+	/**
+	 * Class name of the exception.
+	 */
+	private String type;
+
+	/**
+	 * Message of the exception, or null if it had none.
+	 */
+	private String message;
+
+	/**
+	 * Frames of the stack trace, innermost first, without their "at".
+	 */
+	private List<String> frames = new ArrayList<String>();
+
+	/**
+	 * Number of frames of the stack trace which were left out.
+	 */
+	private int omittedFrames = 0;
+
+	/**
+	 * Exception which caused this exception, or null.
+	 */
+	private ExceptionRecord cause = null;
+
+	/**
+	 * Exceptions suppressed while this exception was thrown.
+	 */
+	private List<ExceptionRecord> suppressed = new ArrayList<ExceptionRecord>();
+
+	/**
+	 * Constructs a record from the first line of an exception's trace, the
+	 * line which gives its type and message.
+	 *
+	 * @param header
+	 *            - first line of the trace, without any "Caused by: " or
+	 *            "Suppressed: "
+	 */
+	ExceptionRecord(String header) {
+		if (header.startsWith(UNCAUGHT_PREFIX)) {
+			int end = header.indexOf("\" ", UNCAUGHT_PREFIX.length());
+			if (end != -1) {
+				this.thread = header.substring(UNCAUGHT_PREFIX.length(), end);
+				header = header.substring(end + 2);
+			}
+		}
+		int colon = header.indexOf(": ");
+		if (colon == -1) {
+			this.type = header.trim();
+			this.message = null;
+		} else {
+			this.type = header.substring(0, colon).trim();
+			this.message = header.substring(colon + 2);
+		}
+	}
+
+	/**
+	 * Constructs a record of an exception reported by the security watchdog.
+	 *
+	 * @param thread
+	 *            - name of the thread the exception went uncaught in, or null
+	 *            if it is the cause of, or was suppressed by, another
+	 * @param type
+	 *            - class name of the exception
+	 * @param message
+	 *            - message of the exception, or null if it had none
+	 */
+	ExceptionRecord(String thread, String type, String message) {
+		this.thread = thread;
+		this.type = type;
+		this.message = message;
+	}
+
+	/**
+	 * Adds the next line of the exception's message, for a message of more
+	 * than one line.
+	 *
+	 * @param line
+	 *            - the line
+	 */
+	void addMessageLine(String line) {
+		this.message = this.message == null ? line : this.message + "\n" + line;
+	}
+
+	/**
+	 * Adds the next frame of the stack trace.
+	 *
+	 * @param frame
+	 *            - the frame, without its "at"
+	 */
+	void addFrame(String frame) {
+		this.frames.add(frame);
+	}
+
+	/**
+	 * Counts frames of the stack trace which were left out.
+	 *
+	 * @param count
+	 *            - number of frames left out
+	 */
+	void addOmittedFrames(int count) {
+		this.omittedFrames += count;
+	}
+
+	/**
+	 * Sets the exception which caused this exception.
+	 *
+	 * @param cause
+	 *            - the cause
+	 */
+	void setCause(ExceptionRecord cause) {
+		this.cause = cause;
+	}
+
+	/**
+	 * Adds an exception suppressed while this exception was thrown.
+	 *
+	 * @param suppressed
+	 *            - the suppressed exception
+	 */
+	void addSuppressed(ExceptionRecord suppressed) {
+		this.suppressed.add(suppressed);
+	}
+
+	/**
+	 * Returns the name of the thread the exception went uncaught in.
+	 *
+	 * @return the thread's name, or null if the trace did not name one
+	 */
+	public String getThread() {
+		return this.thread;
+	}
+
+	/**
+	 * Returns the class name of the exception.
+	 *
+	 * @return the exception's type
+	 */
+	public String getType() {
+		return this.type;
+	}
+
+	/**
+	 * Returns the message of the exception.
+	 *
+	 * @return the exception's message, or null if it had none
+	 */
+	public String getMessage() {
+		return this.message;
+	}
+
+	/**
+	 * Returns the frames of the stack trace, innermost first.
+	 *
+	 * @return unmodifiable list of frames, each without its "at"
+	 */
+	public List<String> getFrames() {
+		return Collections.unmodifiableList(this.frames);
+	}
+
+	/**
+	 * Returns the number of frames of the stack trace which were left out,
+	 * either by the JVM because the exception's cause shares them, or by the
+	 * parser to bound its memory.
+	 *
+	 * @return number of frames left out
+	 */
+	public int getOmittedFrames() {
+		return this.omittedFrames;
+	}
+
+	/**
+	 * Returns the exception which caused this exception.
+	 *
+	 * @return the cause, or null if there was none
+	 */
+	public ExceptionRecord getCause() {
+		return this.cause;
+	}
+
+	/**
+	 * Returns the exceptions suppressed while this exception was thrown.
+	 *
+	 * @return unmodifiable list of suppressed exceptions
+	 */
+	public List<ExceptionRecord> getSuppressed() {
+		return Collections.unmodifiableList(this.suppressed);
+	}
+
+	/**
+	 * Returns the stack trace, printed as the JVM prints it.
+	 *
+	 * @return the stack trace, one line per frame
+	 */
+	@Override
+	public String toString() {
+		StringBuffer out = new StringBuffer(100 + 50 * this.frames.size());
+		if (this.thread != null) {
+			out.append(UNCAUGHT_PREFIX + this.thread + "\" ");
+		}
+		append(out, "");
+		return out.toString();
+	}
+
+	/**
+	 * Appends the stack trace from its first line's type on.
+	 *
+	 * @param out
+	 *            - buffer to append to
+	 * @param indent
+	 *            - indent of the trace's lines
+	 */
+	private void append(StringBuffer out, String indent) {
+		out.append(this.type);
+		if (this.message != null) {
+			out.append(": " + this.message);
+		}
+		for (String frame : this.frames) {
+			out.append("\n" + indent + "\tat " + frame);
+		}
+		if (this.omittedFrames > 0) {
+			out.append("\n" + indent + "\t... " + this.omittedFrames + " more");
+		}
+		for (ExceptionRecord record : this.suppressed) {
+			out.append("\n" + indent + "\tSuppressed: ");
+			record.append(out, indent + "\t");
+		}
+		if (this.cause != null) {
+			out.append("\n" + indent + "Caused by: ");
+			this.cause.append(out, indent);
+		}
+	}
+}
@@ -0,0 +1,14 @@
+package contest.winter2017;
+
+/**
+ * This exception is thrown in place of exiting when the jar under test tries
+ * to exit a long-lived watchdog.
+ * 
+ * @author ICT-2
+ */
+@SuppressWarnings("serial")
+class ExitTrappedException extends SecurityException {
+	public ExitTrappedException(String exit) {
+		super(exit);
+	}
+}
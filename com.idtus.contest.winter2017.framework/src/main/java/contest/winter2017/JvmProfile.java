@@ -0,0 +1,153 @@
+package contest.winter2017;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class to represent a set of JVM options tests may be started with, and how
+ * fast tests ran with it while calibrating.
+ * <p>
+ * A test's JVM mostly starts up, loads classes and runs each method of the jar
+ * under test a handful of times, so the optimizing compiler and a parallel
+ * collector rarely pay for themselves. Which options are fastest depends on the
+ * JVM, the machine and the jar under test, so the tester can time each
+ * candidate profile on a few tests and keep the fastest. Every option must be
+ * accepted quietly from Java 8 on.
+ *
+ * @author ICT-2
+ */
+class JvmProfile {
+	/**
+	 * Name of the profile in reports.
+	 */
+	private String name;
+
+	/**
+	 * JVM options of the profile.
+	 */
+	private String[] options;
+
+	/**
+	 * Total milliseconds of the calibration tests run with the profile.
+	 */
+	private long millis = 0;
+
+	/**
+	 * Number of calibration tests run with the profile.
+	 */
+	private int testsRun = 0;
+
+	/**
+	 * Why the profile cannot be used, or null if it can.
+	 */
+	private String rejection = null;
+
+	/**
+	 * Constructs a profile with the given options.
+	 *
+	 * @param name
+	 *            - name of the profile in reports
+	 * @param options
+	 *            - JVM options of the profile
+	 */
+	public JvmProfile(String name, String... options) {
+		this.name = name;
+		this.options = options;
+	}
+
+	/**
+	 * Returns the profiles to calibrate, the JVM's own defaults first. A JVM
+	 * which runs many tests needs its compiler, so the interpreter alone is
+	 * only a candidate when each JVM runs one test.
+	 *
+	 * @param longLived
+	 *            - whether each JVM runs many tests
+	 * @return new, unmeasured candidate profiles
+	 */
+	public static List<JvmProfile> candidates(boolean longLived) {
+		List<JvmProfile> candidates = new ArrayList<JvmProfile>();
+		candidates.add(new JvmProfile("default"));
+		candidates.add(new JvmProfile("c1", "-XX:TieredStopAtLevel=1"));
+		candidates.add(new JvmProfile("c1-serial", "-XX:TieredStopAtLevel=1", "-XX:+UseSerialGC"));
+		candidates.add(new JvmProfile("c1-serial-lean", "-XX:TieredStopAtLevel=1", "-XX:+UseSerialGC",
+				"-XX:-UsePerfData"));
+		if (!longLived) {
+			candidates.add(new JvmProfile("interpreter", "-Xint", "-XX:+UseSerialGC"));
+		}
+		return candidates;
+	}
+
+	/**
+	 * Returns the name of the profile.
+	 *
+	 * @return the name of the profile
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Returns the JVM options of the profile.
+	 *
+	 * @return the JVM options
+	 */
+	public String[] getOptions() {
+		return this.options;
+	}
+
+	/**
+	 * Records the time a calibration test took with the profile.
+	 *
+	 * @param millis
+	 *            - milliseconds the test took
+	 */
+	public void record(long millis) {
+		this.millis += millis;
+		this.testsRun++;
+	}
+
+	/**
+	 * Returns the mean milliseconds of the calibration tests run with the
+	 * profile.
+	 *
+	 * @return mean milliseconds per test, or 0 if none ran
+	 */
+	public long getMeanMillis() {
+		return this.testsRun == 0 ? 0 : this.millis / this.testsRun;
+	}
+
+	/**
+	 * Marks the profile as unusable.
+	 *
+	 * @param rejection
+	 *            - why the profile cannot be used
+	 */
+	public void reject(String rejection) {
+		if (this.rejection == null) {
+			this.rejection = rejection;
+		}
+	}
+
+	/**
+	 * Returns whether the profile can be used.
+	 *
+	 * @return true if the profile was rejected, or false if not
+	 */
+	public boolean isRejected() {
+		return this.rejection != null;
+	}
+
+	/**
+	 * Returns the profile's measurement as a line of the tester's report.
+	 *
+	 * @return the profile's name followed by its mean test time, or why it
+	 *         was rejected
+	 */
+	@Override
+	public String toString() {
+		if (isRejected()) {
+			return this.name + ": rejected, " + this.rejection;
+		}
+		return this.name + ": " + getMeanMillis() + " ms per test";
+	}
+}
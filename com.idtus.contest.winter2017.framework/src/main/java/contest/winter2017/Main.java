@@ -46,6 +46,87 @@ public class Main {
 	 */
 	public static final String TIME_GOAL = "timeGoal";
 
+	/**
+	 * Command line key for number of tests to run at once.
+	 */
+	public static final String WORKERS = "workers";
+
+	/**
+	 * Command line key for maximum milliseconds a test may run.
+	 */
+	public static final String TEST_TIMEOUT = "testTimeout";
+
+	/**
+	 * Command line key for multiple of the 99th percentile test time a test
+	 * may run for.
+	 */
+	public static final String TIMEOUT_FACTOR = "timeoutFactor";
+
+	/**
+	 * Command line key for characters of each output stream kept per test.
+	 */
+	public static final String MAX_OUTPUT = "maxOutput";
+
+	/**
+	 * Command line key for number of tests a long-lived watchdog runs before
+	 * it is replaced.
+	 */
+	public static final String BATCH_SIZE = "batchSize";
+
+	/**
+	 * Command line key for number of tests between writes of jacoco output.
+	 */
+	public static final String FLUSH_TESTS = "flushTests";
+
+	/**
+	 * Command line key for seconds between writes of jacoco output.
+	 */
+	public static final String FLUSH_SECONDS = "flushSeconds";
+
+	/**
+	 * Command line key for running tests in long-lived watchdog JVMs.
+	 */
+	public static final String PERSISTENT_WORKERS = "persistentWorkers";
+
+	/**
+	 * Command line key for instrumenting the jar to test once, ahead of
+	 * testing.
+	 */
+	public static final String OFFLINE_INSTRUMENTATION = "offlineInstrumentation";
+
+	/**
+	 * Command line key for counting the edges between basic blocks tests hit.
+	 */
+	public static final String EDGE_COVERAGE = "edgeCoverage";
+
+	/**
+	 * Command line key for timing tests with several JVM profiles, and
+	 * starting tests with the fastest.
+	 */
+	public static final String TUNE_JVM = "tuneJvm";
+
+	/**
+	 * Command line key for running each test in a scratch working directory
+	 * of its own.
+	 */
+	public static final String SCRATCH_DIRS = "scratchDirs";
+
+	/**
+	 * Command line key for starting tests with a class data sharing archive.
+	 */
+	public static final String CLASS_DATA_SHARING = "classDataSharing";
+
+	/**
+	 * Command line key for starting each test's watchdog ahead of the test.
+	 */
+	public static final String PRESTART_WATCHDOGS = "prestartWatchdogs";
+
+	/**
+	 * Command line key for number of permission checks between the stacks
+	 * the watchdog samples.
+	 */
+	public static final String PERMISSION_STACKS = "permissionStacks";
+
 	/**
 	 * Command line key for whether to only use tool chain output.
 	 */
@@ -95,6 +176,21 @@ public class Main {
 		options.addOption(PERMISSION_INFO, true, "permission to get information about");
 		options.addOption(BLACK_BOX_TESTS, true, "number of black box testings to run");
 		options.addOption(TIME_GOAL, true, "time goal for black box testings to run in");
+		options.addOption(WORKERS, true, "number of black box tests to run at once");
+		options.addOption(TEST_TIMEOUT, true, "maximum milliseconds a test may run");
+		options.addOption(TIMEOUT_FACTOR, true, "multiple of the 99th percentile test time a test may run for");
+		options.addOption(MAX_OUTPUT, true, "characters of standard out and of standard err kept per test");
+		options.addOption(BATCH_SIZE, true, "number of tests a persistent worker runs before it is replaced");
+		options.addOption(FLUSH_TESTS, true, "number of tests between writes of jacoco output");
+		options.addOption(FLUSH_SECONDS, true, "seconds between writes of jacoco output");
+		options.addOption(PERMISSION_STACKS, true, "sample the stack of every so many permission checks a test makes");
+		options.addOption(PERSISTENT_WORKERS, false, "run tests in long-lived watchdog JVMs");
+		options.addOption(OFFLINE_INSTRUMENTATION, false, "instrument the jar to test once, instead of in every test");
+		options.addOption(EDGE_COVERAGE, false, "count the edges tests hit, to guide test generation (implies offlineInstrumentation)");
+		options.addOption(TUNE_JVM, false, "time a few tests with several JVM option profiles, and use the fastest");
+		options.addOption(SCRATCH_DIRS, false, "run each test in an empty working directory of its own");
+		options.addOption(CLASS_DATA_SHARING, false, "start tests with a class data sharing archive (Java 13 or later)");
+		options.addOption(PRESTART_WATCHDOGS, false, "start each test's watchdog JVM ahead of the test");
 		// optional parameters without arguments
 		options.addOption(TOOL_CHAIN, false, "option to print only necessary output");
 		options.addOption(PERMISSION_LIST, false, "print a list of different permissions");
@@ -117,6 +213,14 @@ public class Main {
 					String jacocoAgentJarPath = cliArgs.getOptionValue(JACOCO_AGENT_JAR_PATH);
 					String bbTests = cliArgs.getOptionValue(BLACK_BOX_TESTS);
 					String timeGoal = cliArgs.getOptionValue(TIME_GOAL);
+					String workers = cliArgs.getOptionValue(WORKERS);
+					String testTimeout = cliArgs.getOptionValue(TEST_TIMEOUT);
+					String timeoutFactor = cliArgs.getOptionValue(TIMEOUT_FACTOR);
+					String maxOutput = cliArgs.getOptionValue(MAX_OUTPUT);
+					String batchSize = cliArgs.getOptionValue(BATCH_SIZE);
+					String flushTests = cliArgs.getOptionValue(FLUSH_TESTS);
+					String flushSeconds = cliArgs.getOptionValue(FLUSH_SECONDS);
+					String permissionStacks = cliArgs.getOptionValue(PERMISSION_STACKS);
 					boolean quiet = cliArgs.hasOption(TOOL_CHAIN);
 					// don't report permissions if tool chain used
 					boolean watchdog = !quiet;
@@ -127,8 +231,23 @@ public class Main {
 						// the Tester class contains all of the logic for the
 						// testing framework
 						Tester tester = new Tester();
-						boolean init = tester.init(null, jarToTestPath, jacocoOutputDirPath, jacocoAgentJarPath,
-								bbTests, timeGoal, "", quiet, watchdog);
+						tester.setPersistentWorkers(cliArgs.hasOption(PERSISTENT_WORKERS));
+						tester.setOfflineInstrumentation(cliArgs.hasOption(OFFLINE_INSTRUMENTATION));
+						tester.setEdgeCoverage(cliArgs.hasOption(EDGE_COVERAGE));
+						tester.setTuneJvm(cliArgs.hasOption(TUNE_JVM));
+						tester.setScratchDirs(cliArgs.hasOption(SCRATCH_DIRS));
+						tester.setClassDataSharing(cliArgs.hasOption(CLASS_DATA_SHARING));
+						tester.setPrestartWatchdogs(cliArgs.hasOption(PRESTART_WATCHDOGS));
+						// init runs calibration and training tests, which are
+						// limited by the test timeout, so every other option is
+						// checked before that startup is spent
+						boolean init = tester.setPermissionStacks(permissionStacks)
+								&& tester.setTestTimeout(testTimeout, timeoutFactor)
+								&& tester.setMaxOutput(maxOutput)
+								&& tester.setBatchSize(batchSize)
+								&& tester.setCoverageFlush(flushTests, flushSeconds)
+								&& tester.init(null, jarToTestPath, jacocoOutputDirPath, jacocoAgentJarPath,
+								bbTests, timeGoal, workers, "", quiet, watchdog);
 						if (init) {
 							// implemented by IDT
 							tester.executeBasicTests();
@@ -0,0 +1,126 @@
+package contest.winter2017;
+
+import org.jacoco.core.analysis.ICounter;
+import org.jacoco.core.analysis.IMethodCoverage;
+import org.jacoco.core.internal.analysis.CounterImpl;
+import org.jacoco.core.internal.analysis.MethodCoverageImpl;
+
+/**
+ * Class to hold the probes of one method of a class of the jar under test.
+ * <p>
+ * Each instruction of the method has a line, a number of branches, and a
+ * predecessor, which is the instruction control flow passes through to reach
+ * it. A hit probe covers the instruction it was inserted after, and every
+ * predecessor up to the first instruction which is already covered.
+ *
+ * @author ICT-2
+ */
+class MethodProbes {
+	/**
+	 * Name of the method.
+	 */
+	final String name;
+
+	/**
+	 * Descriptor of the method.
+	 */
+	final String desc;
+
+	/**
+	 * Generic signature of the method.
+	 */
+	final String signature;
+
+	/**
+	 * First and last lines of the method, or -1 without debug information.
+	 */
+	int firstLine = -1, lastLine = -1;
+
+	/**
+	 * Line of each instruction.
+	 */
+	int[] lines;
+
+	/**
+	 * Index of the predecessor of each instruction, or -1 for none.
+	 */
+	int[] predecessors;
+
+	/**
+	 * Number of branches of each instruction.
+	 */
+	int[] branches;
+
+	/**
+	 * Ids of the probes of the method.
+	 */
+	int[] probeIds;
+
+	/**
+	 * Index of the instruction each probe was inserted after.
+	 */
+	int[] probeInstructions;
+
+	/**
+	 * Constructs the probes of a method with the given name, descriptor and
+	 * signature.
+	 *
+	 * @param name
+	 *            - name of the method
+	 * @param desc
+	 *            - descriptor of the method
+	 * @param signature
+	 *            - generic signature of the method
+	 */
+	public MethodProbes(String name, String desc, String signature) {
+		this.name = name;
+		this.desc = desc;
+		this.signature = signature;
+	}
+
+	/**
+	 * Returns the number of branches of each instruction covered by the given
+	 * probe array. An instruction is covered if any of its branches are.
+	 *
+	 * @param hits
+	 *            - probes hit, or null if the class was not executed
+	 * @return covered branches of each instruction
+	 */
+	public int[] getCoveredBranches(boolean[] hits) {
+		int[] coveredBranches = new int[this.lines.length];
+		if (hits != null) {
+			for (int p = 0; p < this.probeIds.length; p++) {
+				if (hits[this.probeIds[p]]) {
+					int i = this.probeInstructions[p];
+					while (i != -1 && coveredBranches[i]++ == 0) {
+						i = this.predecessors[i];
+					}
+				}
+			}
+		}
+		return coveredBranches;
+	}
+
+	/**
+	 * Returns the coverage of this method for the given probe array.
+	 *
+	 * @param hits
+	 *            - probes hit, or null if the class was not executed
+	 * @return coverage of this method
+	 */
+	public IMethodCoverage getCoverage(boolean[] hits) {
+		int[] coveredBranches = getCoveredBranches(hits);
+		MethodCoverageImpl coverage = new MethodCoverageImpl(this.name, this.desc, this.signature);
+		coverage.ensureCapacity(this.firstLine, this.lastLine);
+		for (int i = 0; i < this.lines.length; i++) {
+			ICounter instructions = coveredBranches[i] == 0 ? CounterImpl.COUNTER_1_0 : CounterImpl.COUNTER_0_1;
+			ICounter branchCounter = CounterImpl.COUNTER_0_0;
+			if (this.branches[i] > 1) {
+				branchCounter = CounterImpl.getInstance(this.branches[i] - coveredBranches[i], coveredBranches[i]);
+			}
+			coverage.increment(instructions, branchCounter, this.lines[i]);
+		}
+		coverage.incrementMethodCounter();
+		return coverage;
+	}
+}
@@ -6,8 +6,6 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.TreeSet;
 
-import org.jacoco.core.analysis.CoverageBuilder;
-import org.jacoco.core.analysis.IClassCoverage;
 import org.jacoco.core.analysis.ICounter;
 
 /**
@@ -29,9 +27,10 @@ public class MonteCarloTestGenerator extends TestGenerator {
 	private HashMap<String, ClassCounter> classes = new HashMap<String, ClassCounter>();
 
 	/**
-	 * The last parameter string tested.
+	 * Parameter strings handed out whose outputs have not been seen yet, oldest
+	 * first. Tests from the fall-back generator are held as null.
 	 */
-	private ParameterString lastParameterString = null;
+	private LinkedList<ParameterString> pending = new LinkedList<ParameterString>();
 
 	/**
 	 * The root parameter string of the search tree.
@@ -44,7 +43,7 @@ public class MonteCarloTestGenerator extends TestGenerator {
 	private RandomTestGenerator fallBack;
 
 	/**
-	 * The size of the outputs
+	 * The number of outputs which have been used to update the tree.
 	 */
 	private int outputSize;
 
@@ -73,24 +72,16 @@ public class MonteCarloTestGenerator extends TestGenerator {
 	 * tests.
 	 * 
 	 * When a test is run, the associated output object is added to the end of
-	 * this class's outputs list.
+	 * this class's outputs list. Several tests may be running at once, so the
+	 * outputs are matched to the tests in the order the tests were handed out.
 	 * 
 	 * @return an array of objects which represent parameters to be tested.
 	 */
 	@Override
 	public Object[] nextTest() {
 		try {
-			// update tree with last test
-			if (getOutputs().size() != this.outputSize && this.lastParameterString != null) {
-				Output lastOutput = getOutputs().get(getOutputs().size() - 1);
-				if (lastOutput != null) {
-					CoverageBuilder builder = lastOutput.getCoverageBuilder();
-					for (IClassCoverage cc : builder.getClasses()) {
-						updateClassUniquenesses(this.lastParameterString, lastOutput, cc);
-					}
-					this.lastParameterString.updateMean();
-				}
-			}
+			// update tree with every test finished since the last call
+			updateTree();
 
 			// get next test from the tree if there is one
 			ParameterString curr = this.root;
@@ -98,8 +89,8 @@ public class MonteCarloTestGenerator extends TestGenerator {
 			while (hasTest) {
 				if (curr.isTestable() && !curr.isTested()) {
 					curr.setTested();
-					this.lastParameterString = curr;
-					return ("" + curr).split(" ");
+					this.pending.addLast(curr);
+					return curr.getParameters();
 				} else if (curr.isExpandable()) {
 					if (!curr.isExpanded()) {
 						curr.expand();
@@ -118,26 +109,67 @@ public class MonteCarloTestGenerator extends TestGenerator {
 		}
 		// fall-back test if monte carlo generation fails
 		System.out.println("ERROR: Monte-Carlo test generation failed, generating random test.");
+		this.pending.addLast(null);
 		return this.fallBack.nextTest();
 	}
 
+	/**
+	 * Forgets the oldest test handed out whose output has not been seen, as it
+	 * ended without an output.
+	 */
+	@Override
+	public void testDropped() {
+		// tests ahead of it in pending have outputs the tree has not seen yet
+		int seenLater = getOutputs().size() - this.outputSize;
+		if (seenLater < this.pending.size()) {
+			this.pending.remove(seenLater);
+		}
+	}
+
+	/**
+	 * Updates the tree with the output of every test finished since the last
+	 * update, matching outputs to the tests in the order they were handed out.
+	 */
+	private void updateTree() {
+		while (this.outputSize < getOutputs().size() && !this.pending.isEmpty()) {
+			Output output = getOutputs().get(this.outputSize);
+			ParameterString tested = this.pending.removeFirst();
+			this.outputSize++;
+			if (tested != null && output != null && output.getCoverage() != null) {
+				TestCoverage coverage = output.getCoverage();
+				for (int i = 0; i < coverage.getClassCount(); i++) {
+					updateClassUniquenesses(tested, coverage, i);
+				}
+				// new edges also count, as a test may find them without
+				// covering any new line
+				tested.addUniqueness(output.getNewEdges());
+				tested.updateMean();
+			}
+		}
+	}
+
 	/**
 	 * Updates how many unique lines of code nodes in the tree encounter.
 	 * 
 	 * @param parameter
-	 * @param icc
+	 *            - parameter string whose test was run
+	 * @param coverage
+	 *            - coverage of the test
+	 * @param index
+	 *            - index of the class to update in the coverage
 	 */
-	public void updateClassUniquenesses(ParameterString parameter, Output output, IClassCoverage icc) {
+	public void updateClassUniquenesses(ParameterString parameter, TestCoverage coverage, int index) {
 		// add the class to our map if it hasn't been visited
-		if (this.classes.get(icc.getSignature()) == null) {
-			int first = icc.getFirstLine();
-			int last = icc.getLastLine();
-			this.classes.put(icc.getSignature(), new ClassCounter(first, last));
+		String className = coverage.getClassName(index);
+		if (this.classes.get(className) == null) {
+			int first = coverage.getFirstLine(index);
+			int last = coverage.getLastLine(index);
+			this.classes.put(className, new ClassCounter(first, last));
 		}
 
 		// delegate updating the uniquenesses to the class counter
-		ClassCounter cc = classes.get(icc.getSignature());
-		for (Range r : getRanges(parameter, cc, icc)) {
+		ClassCounter cc = classes.get(className);
+		for (Range r : getRanges(parameter, cc, coverage, index)) {
 			List<Range> subRanges = getSubRanges(parameter, cc, r);
 			cc.updateStartRange(subRanges.get(0));
 			cc.updateEndRange(subRanges.get(subRanges.size() - 1));
@@ -155,18 +187,20 @@ public class MonteCarloTestGenerator extends TestGenerator {
 	 *            - parameter to track coverage for
 	 * @param cc
 	 *            - class counter to track lines for
-	 * @param icc
-	 *            - i class coverage containing coverage information
+	 * @param coverage
+	 *            - coverage of the test
+	 * @param index
+	 *            - index of the class in the coverage
 	 * @return list of ranges covered by the given parameter string's test
 	 */
-	private List<Range> getRanges(ParameterString parameter, ClassCounter cc, IClassCoverage icc) {
+	private List<Range> getRanges(ParameterString parameter, ClassCounter cc, TestCoverage coverage, int index) {
 		List<Range> ranges = new ArrayList<Range>();
 		int lastLine = cc.getLastLine();
 		int start = cc.getFirstLine();
 		while (start <= lastLine) {
-			if (icc.getLine(start).getStatus() == ICounter.PARTLY_COVERED) {
+			if (coverage.getLineStatus(index, start) == ICounter.PARTLY_COVERED) {
 				int end = start;
-				while (end != lastLine && icc.getLine(end + 1).getStatus() == ICounter.PARTLY_COVERED) {
+				while (end != lastLine && coverage.getLineStatus(index, end + 1) == ICounter.PARTLY_COVERED) {
 					end++;
 				}
 				ranges.add(new Range(parameter, start, end));
@@ -0,0 +1,83 @@
+package contest.winter2017;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.jacoco.core.JaCoCo;
+import org.jacoco.core.instr.Instrumenter;
+import org.jacoco.core.runtime.OfflineInstrumentationAccessGenerator;
+
+/**
+ * Class to instrument the jar under test for coverage once, ahead of testing.
+ * <p>
+ * With the jacoco agent, every test's JVM instruments each class of the jar
+ * under test again as it loads. An offline instrumented copy of the jar holds
+ * classes already instrumented, which need only the jacoco runtime, found in
+ * the agent jar, on the class path. The runtime reads its options from
+ * jacoco-agent system properties, and starts when the first instrumented class
+ * is initialized.
+ * <p>
+ * Instrumented classes keep the ids of the original classes, so their
+ * execution data matches the probe map of the original jar. The copy is cached
+ * next to the jacoco output, and only made again if the jar under test
+ * changes.
+ *
+ * @author ICT-2
+ */
+class OfflineJar {
+	/**
+	 * Class of the jacoco runtime which instrumented classes call into.
+	 * Initializing it starts the runtime.
+	 */
+	static final String RUNTIME_CLASS = JaCoCo.RUNTIMEPACKAGE + ".Offline";
+
+	/**
+	 * Suffix of the instrumented copy of a jar.
+	 */
+	private static final String SUFFIX = "_offline.jar";
+
+	/**
+	 * Returns an offline instrumented copy of a jar, instrumenting it if no
+	 * up to date copy is cached.
+	 *
+	 * @param jar
+	 *            - jar to instrument
+	 * @param cacheDir
+	 *            - directory to cache the copy in
+	 * @return the instrumented copy of the jar
+	 * @throws IOException
+	 *             - an exception encountered while reading the jar or writing
+	 *             the copy
+	 */
+	public static File instrument(File jar, File cacheDir) throws IOException {
+		File cached = new File(cacheDir, jar.getName().replaceAll("\\.", "_") + SUFFIX);
+		if (cached.exists() && cached.lastModified() >= jar.lastModified()) {
+			return cached;
+		}
+
+		// write to a temporary file first, so a cached copy is always complete
+		File part = new File(cached.getPath() + ".part");
+		Instrumenter instrumenter = new Instrumenter(new OfflineInstrumentationAccessGenerator());
+		InputStream in = new BufferedInputStream(new FileInputStream(jar));
+		try {
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(part));
+			try {
+				instrumenter.instrumentAll(in, out, jar.getPath());
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+		Files.move(part.toPath(), cached.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		return cached;
+	}
+}
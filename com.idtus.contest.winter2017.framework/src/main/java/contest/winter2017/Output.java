@@ -1,28 +1,39 @@
 package contest.winter2017;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map.Entry;
+import java.util.List;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import org.jacoco.core.analysis.CoverageBuilder;
 
 /**
  * Class to hold output associated with a given test run. Output includes the
- * standard err, standard out, coverage builder, and permissions requested
- * during a test.
+ * standard err, standard out, coverage, and permissions requested during a
+ * test.
+ * <p>
+ * ICT-2 counts permissions in an array indexed by permission id. Each
+ * permission name is given an id the first time any test uses it, and keeps it
+ * for as long as the tester runs.
  * 
  * @author IDT
  */
 public class Output {
 	/**
-	 * Pattern to find exceptions from the standard error associated with a
-	 * given test run.
+	 * Names of the permissions given ids so far, by id.
+	 */
+	private static final List<String> PERMISSION_NAMES = new ArrayList<String>();
+
+	/**
+	 * Ids of the permissions given ids so far, by name.
+	 */
+	private static final HashMap<String, Integer> PERMISSION_IDS = new HashMap<String, Integer>();
+
+	/**
+	 * Counts of no permissions.
 	 */
-	private static Pattern exceptionFinder = Pattern
-			.compile("(\\n|^).+Exception[^\\n]+(\\n\\t+\\Qat \\E.+)+(\n\\QCaused by\\E[^\\n]+(\\n\\t+\\Qat \\E.+)+)*");
+	private static final int[] NO_PERMISSIONS = new int[0];
 
 	/**
 	 * String command used for this test
@@ -40,15 +51,84 @@ public class Output {
 	private String stdErrString = null;
 
 	/**
-	 * Coverage builder associated with a given test run.
+	 * Total length of the standard out, including any part not kept.
+	 */
+	private long stdOutLength = 0;
+
+	/**
+	 * Whether part of the standard out was not kept.
+	 */
+	private boolean stdOutTruncated = false;
+
+	/**
+	 * Total length of the standard error, including any part not kept.
+	 */
+	private long stdErrLength = 0;
+
+	/**
+	 * Whether part of the standard error was not kept.
+	 */
+	private boolean stdErrTruncated = false;
+
+	/**
+	 * Exceptions parsed from the standard error, or null if it was not parsed
+	 * yet.
+	 */
+	private List<ExceptionRecord> exceptionRecords = null;
+
+	/**
+	 * Other error output parsed from the standard error, or null if it was
+	 * not parsed yet.
+	 */
+	private List<String> otherErrors = null;
+
+	/**
+	 * Exceptions no code caught, as reported by the security watchdog.
+	 */
+	private List<ExceptionRecord> reportedExceptions = new ArrayList<ExceptionRecord>();
+
+	/**
+	 * Stacks permissions were requested from, as sampled by the security
+	 * watchdog, each after the permission's name.
+	 */
+	private List<String> permissionStacks = new ArrayList<String>();
+
+	/**
+	 * Coverage associated with a given test run.
+	 */
+	private TestCoverage coverage;
+
+	/**
+	 * Number of edges the test hit in a new bucket of hit counts.
+	 */
+	private int newEdges = 0;
+
+	/**
+	 * Whether the test ran out of time and was killed.
+	 */
+	private boolean timedOut = false;
+
+	/**
+	 * Files the test left in its scratch directory, relative to it.
+	 */
+	private List<String> createdFiles = Collections.emptyList();
+
+	/**
+	 * Exit status the jar under test asked for, or null if it is not known.
+	 */
+	private Integer exitStatus = null;
+
+	/**
+	 * Nanoseconds the jar under test ran, as timed by the security watchdog,
+	 * or -1 if it is not known.
 	 */
-	private CoverageBuilder coverageBuilder;
+	private long runNanos = -1;
 
 	/**
-	 * HashMap representing how many times different permissions have been used
-	 * during a given test run.
+	 * How many times different permissions have been used during a given test
+	 * run, by permission id. Permissions with higher ids were not used.
 	 */
-	private HashMap<String, Integer> permissionLogMap = null;
+	private int[] permissionCounts = NO_PERMISSIONS;
 
 	/**
 	 * Constructs a new output object with the specified output and error
@@ -63,17 +143,48 @@ public class Output {
 		this.command = command;
 		this.stdOutString = stdOutString;
 		this.stdErrString = stdErrString;
-		this.permissionLogMap = new HashMap<String, Integer>();
 	}
 
 	/**
 	 * Constructs a new output object with no initial command, output or error
-	 * strings, or coverage builder.
+	 * strings, or coverage.
 	 */
 	public Output() {
 		this("", "", "");
 	}
 
+	/**
+	 * Returns the id of a permission, giving it the next id if it has none.
+	 * 
+	 * @param permission
+	 *            - name of the permission
+	 * @return the permission's id
+	 */
+	static int permissionId(String permission) {
+		synchronized (PERMISSION_NAMES) {
+			Integer id = PERMISSION_IDS.get(permission);
+			if (id == null) {
+				id = PERMISSION_NAMES.size();
+				PERMISSION_NAMES.add(permission);
+				PERMISSION_IDS.put(permission, id);
+			}
+			return id;
+		}
+	}
+
+	/**
+	 * Returns the name of a permission.
+	 * 
+	 * @param id
+	 *            - id of the permission
+	 * @return the permission's name
+	 */
+	static String permissionName(int id) {
+		synchronized (PERMISSION_NAMES) {
+			return PERMISSION_NAMES.get(id);
+		}
+	}
+
 	/**
 	 * Logs the specified permission request to this output.
 	 * 
@@ -81,22 +192,65 @@ public class Output {
 	 *            - permission to log to this output
 	 */
 	public void logPermission(String permission) {
-		if (this.permissionLogMap.keySet().contains(permission)) {
-			int num = this.permissionLogMap.get(permission);
-			this.permissionLogMap.put(permission, num + 1);
-		} else {
-			this.permissionLogMap.put(permission, 1);
+		logPermission(permissionId(permission), 1);
+	}
+
+	/**
+	 * Logs uses of a permission to this output.
+	 * 
+	 * @param id
+	 *            - id of the permission
+	 * @param count
+	 *            - number of times the permission was used
+	 */
+	void logPermission(int id, int count) {
+		if (id >= this.permissionCounts.length) {
+			this.permissionCounts = Arrays.copyOf(this.permissionCounts, id + 1);
 		}
+		this.permissionCounts[id] += count;
 	}
 
 	/**
-	 * Resets the permission log HashMap.
+	 * Resets the permission log.
 	 * <p>
 	 * This method becomes necessary if the security reporter decides to output
 	 * an updated security log.
 	 */
 	public void resetPermissionLog() {
-		this.permissionLogMap = new HashMap<String, Integer>();
+		this.permissionCounts = NO_PERMISSIONS;
+	}
+
+	/**
+	 * Returns how many times each permission was used.
+	 * 
+	 * @return counts by permission id, which must not be changed; permissions
+	 *         with higher ids were not used
+	 */
+	public int[] getPermissionCounts() {
+		return this.permissionCounts;
+	}
+
+	/**
+	 * Returns whether another output used the same permissions as many times
+	 * as this output.
+	 * 
+	 * @param other
+	 *            - output to compare to
+	 * @return true if the permission counts are the same, or false if not
+	 */
+	public boolean samePermissions(Output other) {
+		int[] shorter = this.permissionCounts;
+		int[] longer = other.permissionCounts;
+		if (shorter.length > longer.length) {
+			shorter = other.permissionCounts;
+			longer = this.permissionCounts;
+		}
+		for (int id = 0; id < longer.length; id++) {
+			if (longer[id] != (id < shorter.length ? shorter[id] : 0)) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	/**
@@ -111,9 +265,11 @@ public class Output {
 	 */
 	public String getPermissionLogString() {
 		StringBuffer out = new StringBuffer();
-		for (Entry<String, Integer> entry : this.permissionLogMap.entrySet()) {
-			String rep = entry.getKey() + "(" + entry.getValue() + "x) ";
-			out.append(rep);
+		for (int id = 0; id < this.permissionCounts.length; id++) {
+			if (this.permissionCounts[id] > 0) {
+				String rep = permissionName(id) + "(" + this.permissionCounts[id] + "x) ";
+				out.append(rep);
+			}
 		}
 		return out.toString();
 	}
@@ -121,10 +277,57 @@ public class Output {
 	/**
 	 * Returns a map of permissions used to their occurrences.
 	 * 
-	 * @return a map of permissions used to their occurrences
+	 * @return a new map of permissions used to their occurrences
 	 */
 	public HashMap<String, Integer> getPermissionMap() {
-		return this.permissionLogMap;
+		HashMap<String, Integer> map = new HashMap<String, Integer>();
+		for (int id = 0; id < this.permissionCounts.length; id++) {
+			if (this.permissionCounts[id] > 0) {
+				map.put(permissionName(id), this.permissionCounts[id]);
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * Returns the exit status the jar under test asked for, or exited with,
+	 * as reported by the security watchdog.
+	 * 
+	 * @return the exit status, or null if it is not known
+	 */
+	public Integer getExitStatus() {
+		return this.exitStatus;
+	}
+
+	/**
+	 * Sets the exit status the jar under test asked for.
+	 * 
+	 * @param exitStatus
+	 *            - the exit status, or null if it is not known
+	 */
+	void setExitStatus(Integer exitStatus) {
+		this.exitStatus = exitStatus;
+	}
+
+	/**
+	 * Returns how long the jar under test ran, not counting the time its JVM
+	 * took to start, as timed by the security watchdog.
+	 * 
+	 * @return nanoseconds the jar under test ran, or -1 if it is not known
+	 */
+	public long getRunNanos() {
+		return this.runNanos;
+	}
+
+	/**
+	 * Sets how long the jar under test ran.
+	 * 
+	 * @param runNanos
+	 *            - nanoseconds the jar under test ran, or -1 if it is not
+	 *            known
+	 */
+	void setRunNanos(long runNanos) {
+		this.runNanos = runNanos;
 	}
 
 	/**
@@ -146,39 +349,147 @@ public class Output {
 	 */
 	public void setStdOutString(String stdOutString) {
 		this.stdOutString = stdOutString;
+		this.stdOutLength = stdOutString.length();
+		this.stdOutTruncated = false;
+	}
+
+	/**
+	 * Sets the standard out from a capture, which may have been truncated.
+	 * 
+	 * @param capture
+	 *            - capture of standard out associated with a given test run
+	 */
+	void setStdOut(OutputCapture capture) {
+		this.stdOutString = capture.toString();
+		this.stdOutLength = capture.getLength();
+		this.stdOutTruncated = capture.isTruncated();
+	}
+
+	/**
+	 * Returns the total length of the standard out, including any part not
+	 * kept.
+	 * 
+	 * @return the number of characters the test wrote to standard out
+	 */
+	public long getStdOutLength() {
+		return this.stdOutLength;
+	}
+
+	/**
+	 * Returns whether part of the standard out was not kept. The part left out
+	 * is marked in the standard out string.
+	 * 
+	 * @return true if standard out was truncated, otherwise false
+	 */
+	public boolean isStdOutTruncated() {
+		return this.stdOutTruncated;
 	}
 
 	/**
 	 * Gets the exceptions/errors parsed from the stdErrString of a given test
 	 * run.
 	 * <p>
-	 * The standard err string is parsed using a regular exception. The regular
-	 * expression parses Exceptions (including chained exceptions) from each
-	 * other, and from other standard error output. Exceptions and other error
-	 * output are added to a set to remove duplicates.
+	 * ICT-2 parses the standard err with a stack trace parser, which parses
+	 * exceptions (including chained exceptions) from each other, and from other
+	 * standard error output, in time linear in the length of the standard err.
+	 * Exceptions and other error output are added to a set to remove
+	 * duplicates.
 	 * 
 	 * @return a string list of representation of exceptions and error messages
 	 */
 	public Set<String> getExceptions() {
-		// find exceptions
-		String toSplit = this.stdErrString;
 		Set<String> exceptions = new HashSet<String>();
-		Matcher matcher = exceptionFinder.matcher(toSplit);
-		while (matcher.find()) {
-			String match = matcher.group(0);
-			toSplit = toSplit.replace(match, "SPLITERRORSTRING");
-			exceptions.add(match);
+		for (ExceptionRecord record : getExceptionRecords()) {
+			exceptions.add(record.toString());
+		}
+		exceptions.addAll(getOtherErrors());
+		return exceptions;
+	}
+
+	/**
+	 * Returns the distinct exceptions of the test: those no code caught, as
+	 * reported by the security watchdog, then any other the test printed to
+	 * standard err. The watchdog prints the exceptions it reports to standard
+	 * err too, and those traces are left out.
+	 * 
+	 * @return the exceptions, reported first, each in the order they happened
+	 */
+	public List<ExceptionRecord> getExceptionRecords() {
+		if (this.exceptionRecords == null) {
+			setStdErrTraces(StackTraceParser.parse(this.stdErrString));
+		}
+		if (this.reportedExceptions.isEmpty()) {
+			return this.exceptionRecords;
 		}
 
-		// parse other standard error output
-		toSplit = toSplit.replace("\n", " ");
-		for (String err : toSplit.split("SPLITERRORSTRING")) {
-			if (!err.trim().equals("")) {
-				exceptions.add(err);
+		List<ExceptionRecord> records = new ArrayList<ExceptionRecord>(this.reportedExceptions);
+		Set<String> reported = new HashSet<String>();
+		for (ExceptionRecord record : this.reportedExceptions) {
+			reported.add(record.toString());
+		}
+		for (ExceptionRecord record : this.exceptionRecords) {
+			if (!reported.contains(record.toString())) {
+				records.add(record);
 			}
 		}
+		return records;
+	}
 
-		return exceptions;
+	/**
+	 * Adds an exception no code caught, as reported by the security watchdog.
+	 * Only as many are kept as exceptions parsed from standard err.
+	 * 
+	 * @param record
+	 *            - the exception
+	 */
+	void addReportedException(ExceptionRecord record) {
+		if (this.reportedExceptions.size() < StackTraceParser.MAX_EXCEPTIONS) {
+			this.reportedExceptions.add(record);
+		}
+	}
+
+	/**
+	 * Adds the stack a permission was requested from, as sampled by the
+	 * security watchdog.
+	 * 
+	 * @param stack
+	 *            - the permission's name, followed by a line per frame
+	 */
+	void addPermissionStack(String stack) {
+		this.permissionStacks.add(stack);
+	}
+
+	/**
+	 * Returns the stacks permissions were requested from, as sampled by the
+	 * security watchdog.
+	 * 
+	 * @return unmodifiable list of stacks, each after the permission's name
+	 */
+	public List<String> getPermissionStacks() {
+		return Collections.unmodifiableList(this.permissionStacks);
+	}
+
+	/**
+	 * Returns the distinct error output the test printed to standard err
+	 * outside of stack traces.
+	 * 
+	 * @return the other errors, each the lines between two traces joined by
+	 *         spaces, in the order they were printed
+	 */
+	public List<String> getOtherErrors() {
+		getExceptionRecords();
+		return this.otherErrors;
+	}
+
+	/**
+	 * Sets the exceptions and other errors parsed from the standard err.
+	 * 
+	 * @param traces
+	 *            - finished parser of the standard err
+	 */
+	void setStdErrTraces(StackTraceParser traces) {
+		this.exceptionRecords = traces.getExceptions();
+		this.otherErrors = traces.getOtherErrors();
 	}
 
 	/**
@@ -200,36 +511,126 @@ public class Output {
 	 */
 	public void setStdErrString(String stdErrString) {
 		this.stdErrString = stdErrString;
+		this.stdErrLength = stdErrString.length();
+		this.stdErrTruncated = false;
+		this.exceptionRecords = null;
+		this.otherErrors = null;
+	}
+
+	/**
+	 * Sets the standard err from a capture, which may have been truncated,
+	 * and the exceptions parsed from all of it as it was read.
+	 * 
+	 * @param capture
+	 *            - capture of standard err associated with a given test run
+	 * @param traces
+	 *            - parser the same lines were given to, which is finished
+	 *            here
+	 */
+	void setStdErr(OutputCapture capture, StackTraceParser traces) {
+		this.stdErrString = capture.toString();
+		this.stdErrLength = capture.getLength();
+		this.stdErrTruncated = capture.isTruncated();
+		traces.finish();
+		setStdErrTraces(traces);
+	}
+
+	/**
+	 * Returns the total length of the standard err, including any part not
+	 * kept.
+	 * 
+	 * @return the number of characters the test wrote to standard err
+	 */
+	public long getStdErrLength() {
+		return this.stdErrLength;
+	}
+
+	/**
+	 * Returns whether part of the standard err was not kept. The part left out
+	 * is marked in the standard err string.
+	 * 
+	 * @return true if standard err was truncated, otherwise false
+	 */
+	public boolean isStdErrTruncated() {
+		return this.stdErrTruncated;
+	}
+
+	/**
+	 * Returns this output's coverage.
+	 * 
+	 * @return this output's coverage, or null if it could not be loaded
+	 */
+	public TestCoverage getCoverage() {
+		return this.coverage;
+	}
+
+	/**
+	 * Sets the coverage.
+	 * 
+	 * @param coverage
+	 *            - coverage to set
+	 */
+	public void setCoverage(TestCoverage coverage) {
+		this.coverage = coverage;
+	}
+
+	/**
+	 * Returns the number of edges this output's test hit in a new bucket of
+	 * hit counts.
+	 * 
+	 * @return number of new edges, which is 0 without edge coverage
+	 */
+	public int getNewEdges() {
+		return this.newEdges;
+	}
+
+	/**
+	 * Sets the number of new edges.
+	 * 
+	 * @param newEdges
+	 *            - number of new edges to set
+	 */
+	public void setNewEdges(int newEdges) {
+		this.newEdges = newEdges;
+	}
+
+	/**
+	 * Returns whether this output's test ran out of time and was killed.
+	 * 
+	 * @return true if the test timed out, otherwise false
+	 */
+	public boolean isTimedOut() {
+		return this.timedOut;
 	}
 
 	/**
-	 * Deletes the coverage builder associated with this output.
+	 * Sets whether this output's test ran out of time and was killed.
 	 * 
-	 * @return true if there was a coverage builder to remove, otherwise false
+	 * @param timedOut
+	 *            - whether the test timed out
 	 */
-	public boolean clearBuilder() {
-		boolean toReturn = (this.coverageBuilder != null);
-		this.coverageBuilder = null;
-		return toReturn;
+	public void setTimedOut(boolean timedOut) {
+		this.timedOut = timedOut;
 	}
 
 	/**
-	 * Returns this outputs coverage builder.
+	 * Returns the files this output's test left in its scratch directory.
 	 * 
-	 * @return this output's coverage builder
+	 * @return paths of the files relative to the scratch directory, which
+	 *         are none if the test did not run in one
 	 */
-	public CoverageBuilder getCoverageBuilder() {
-		return this.coverageBuilder;
+	public List<String> getCreatedFiles() {
+		return this.createdFiles;
 	}
 
 	/**
-	 * Sets the coverage builder.
+	 * Sets the files the test left in its scratch directory.
 	 * 
-	 * @param builder
-	 *            - coverage builder to set
+	 * @param createdFiles
+	 *            - paths of the files relative to the scratch directory
 	 */
-	public void setCoverageBuilder(CoverageBuilder builder) {
-		this.coverageBuilder = builder;
+	public void setCreatedFiles(List<String> createdFiles) {
+		this.createdFiles = createdFiles;
 	}
 
 	/**
@@ -0,0 +1,159 @@
+package contest.winter2017;
+
+/**
+ * Class to capture one output stream of a test in bounded memory.
+ * <p>
+ * The first half of the cap is kept as the head of the stream, and the last
+ * half in a ring buffer as its tail, so a test which prints without end costs
+ * no more than one which prints exactly the cap. Both buffers are allocated up
+ * front. If the stream was longer than the cap, a truncation marker joins the
+ * head to the tail. The total length of the stream is always counted.
+ *
+ * @author ICT-2
+ */
+class OutputCapture {
+	/**
+	 * Marker put between the head and tail of a truncated stream.
+	 */
+	public static final String TRUNCATED = "<<TRUNCATED>>";
+
+	/**
+	 * Start of the stream.
+	 */
+	private final char[] head;
+
+	/**
+	 * Number of characters in the head.
+	 */
+	private int headLength = 0;
+
+	/**
+	 * End of the stream, as a ring buffer.
+	 */
+	private final char[] tail;
+
+	/**
+	 * Index in the tail of the next character to write.
+	 */
+	private int tailIndex = 0;
+
+	/**
+	 * Number of characters in the tail.
+	 */
+	private int tailLength = 0;
+
+	/**
+	 * Total number of characters in the stream.
+	 */
+	private long length = 0;
+
+	/**
+	 * Number of lines appended with appendLine.
+	 */
+	private long lines = 0;
+
+	/**
+	 * Constructs an empty capture which keeps at most the given number of
+	 * characters.
+	 *
+	 * @param maxChars
+	 *            - number of characters to keep, at least 2
+	 */
+	public OutputCapture(int maxChars) {
+		this.head = new char[maxChars / 2];
+		this.tail = new char[maxChars - maxChars / 2];
+	}
+
+	/**
+	 * Appends text to the stream.
+	 *
+	 * @param text
+	 *            - text to append
+	 */
+	public void append(String text) {
+		for (int i = 0; i < text.length(); i++) {
+			append(text.charAt(i));
+		}
+	}
+
+	/**
+	 * Appends a line to the stream, separated from the line before it by a
+	 * newline.
+	 *
+	 * @param line
+	 *            - line to append, without its newline
+	 */
+	public void appendLine(String line) {
+		if (this.lines++ > 0) {
+			append('\n');
+		}
+		append(line);
+	}
+
+	/**
+	 * Appends a character to the stream.
+	 *
+	 * @param c
+	 *            - character to append
+	 */
+	private void append(char c) {
+		this.length++;
+		if (this.headLength < this.head.length) {
+			this.head[this.headLength++] = c;
+			return;
+		}
+		this.tail[this.tailIndex] = c;
+		this.tailIndex = (this.tailIndex + 1) % this.tail.length;
+		this.tailLength = Math.min(this.tailLength + 1, this.tail.length);
+	}
+
+	/**
+	 * Empties this capture so it can be used for another test.
+	 */
+	public void reset() {
+		this.headLength = 0;
+		this.tailIndex = 0;
+		this.tailLength = 0;
+		this.length = 0;
+		this.lines = 0;
+	}
+
+	/**
+	 * Returns the total number of characters in the stream, including those
+	 * not kept.
+	 *
+	 * @return the length of the stream
+	 */
+	public long getLength() {
+		return this.length;
+	}
+
+	/**
+	 * Returns whether some of the stream was not kept.
+	 *
+	 * @return true if the stream was longer than the cap, or false if not
+	 */
+	public boolean isTruncated() {
+		return this.length > this.headLength + this.tailLength;
+	}
+
+	/**
+	 * Returns the characters kept of the stream, with a truncation marker
+	 * where characters were left out.
+	 *
+	 * @return the stream as kept
+	 */
+	@Override
+	public String toString() {
+		StringBuffer out = new StringBuffer(this.headLength + this.tailLength + TRUNCATED.length());
+		out.append(this.head, 0, this.headLength);
+		if (isTruncated()) {
+			out.append(TRUNCATED);
+		}
+		int start = (this.tailIndex - this.tailLength + this.tail.length) % this.tail.length;
+		for (int i = 0; i < this.tailLength; i++) {
+			out.append(this.tail[(start + i) % this.tail.length]);
+		}
+		return out.toString();
+	}
+}
@@ -259,7 +259,7 @@ public class Parameter {
 		StringBuffer sb = new StringBuffer();
 		for (Object variable : formatVariableValues) {
 			if (replaceMeMatcher.find()) {
-				replaceMeMatcher.appendReplacement(sb, variable.toString());
+				replaceMeMatcher.appendReplacement(sb, Matcher.quoteReplacement(variable.toString()));
 			}
 		}
 		replaceMeMatcher.appendTail(sb);
@@ -215,7 +215,7 @@ class ParameterString implements Comparable<ParameterString> {
 					if (Number.class.isAssignableFrom(c)) {
 						formatVals.add(1);
 					} else {
-						formatVals.add("\"The lazy dog jumped over the quick brown fox.\"");
+						formatVals.add("The lazy dog jumped over the quick brown fox.");
 					}
 				}
 			}
@@ -286,7 +286,7 @@ class ParameterString implements Comparable<ParameterString> {
 				if (Number.class.isAssignableFrom(c)) {
 					formatVals.add(1);
 				} else {
-					formatVals.add("\"The lazy dog jumped over the quick brown fox.\"");
+					formatVals.add("The lazy dog jumped over the quick brown fox.");
 				}
 			}
 		}
@@ -347,9 +347,9 @@ class ParameterString implements Comparable<ParameterString> {
 					}
 				}
 			} else {
-				branches.add("\"The l4zy dog jump3d 0ver the qu1ck brown fox.\"");
-				branches.add("\"hi \n hi \t } \\n hi { hey\"");
-				branches.add("\"brown fox\"");
+				branches.add("The l4zy dog jump3d 0ver the qu1ck brown fox.");
+				branches.add("hi \n hi \t } \\n hi { hey");
+				branches.add("brown fox");
 			}
 
 			for (Object branch : branches) {
@@ -413,9 +413,9 @@ class ParameterString implements Comparable<ParameterString> {
 			}
 
 		} else {
-			branches.add("\"The l4zy dog jump3d 0ver the qu1ck brown fox.\"");
-			branches.add("\"hi \n hi \t } \\n hi { hey\"");
-			branches.add("\"brown fox\"");
+			branches.add("The l4zy dog jump3d 0ver the qu1ck brown fox.");
+			branches.add("hi \n hi \t } \\n hi { hey");
+			branches.add("brown fox");
 		}
 
 		for (Object branch : branches) {
@@ -475,6 +475,16 @@ class ParameterString implements Comparable<ParameterString> {
 		this.uniqueLines -= uniqueLines;
 	}
 
+	/**
+	 * Returns this parameter string's parameters, each of which is one
+	 * argument of a test.
+	 * 
+	 * @return the parameters
+	 */
+	public String[] getParameters() {
+		return this.parameters.toArray(new String[this.parameters.size()]);
+	}
+
 	/**
 	 * Returns this parameter string's list of parameters as a string.
 	 * 
@@ -0,0 +1,52 @@
+package contest.winter2017;
+
+import java.security.Permission;
+
+/**
+ * Class to encapsulate a permission request sampled along with the stack it
+ * was requested from, to find where dubious permissions are executed from.
+ * 
+ * @author ICT-2
+ */
+class PermissionEvent {
+	/**
+	 * Permission logged to this permission event.
+	 */
+	private Permission permission;
+
+	/**
+	 * Stack the permission was requested from.
+	 */
+	private StackTraceElement[] stack;
+
+	/**
+	 * Constructs a PermissionEvent with the given permission and StackTrace.
+	 * 
+	 * @param permission
+	 *            - permission to log
+	 * @param stack
+	 *            - stack trace to log
+	 */
+	public PermissionEvent(Permission permission, StackTraceElement[] stack) {
+		this.permission = permission;
+		this.stack = stack;
+	}
+
+	/**
+	 * Gets the permission logged to this permission event.
+	 * 
+	 * @return permission logged to this permission event
+	 */
+	public Permission getPermission() {
+		return this.permission;
+	}
+
+	/**
+	 * Gets the stack the permission was requested from.
+	 * 
+	 * @return stack trace, innermost first
+	 */
+	public StackTraceElement[] getStack() {
+		return this.stack;
+	}
+}
@@ -0,0 +1,490 @@
+package contest.winter2017;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.internal.data.CRC64;
+import org.jacoco.core.internal.flow.ClassProbesAdapter;
+import org.jacoco.core.internal.flow.ClassProbesVisitor;
+import org.jacoco.core.internal.flow.IFrame;
+import org.jacoco.core.internal.flow.LabelInfo;
+import org.jacoco.core.internal.flow.MethodProbesVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Class to map the probes jacoco inserts into the jar under test to the
+ * instructions, lines and branches they cover.
+ * <p>
+ * Analyzing execution data with jacoco's Analyzer inflates and parses every
+ * class in the jar under test, which costs far more than running most tests.
+ * The probe map parses the jar once, and then turns the probe arrays of any
+ * execution data into class coverage directly. It follows jacoco's own
+ * MethodAnalyzer, so the coverage it gives is the same as the Analyzer's.
+ *
+ * Classes in jars nested within the jar under test are not analyzed.
+ *
+ * @author ICT-2
+ */
+class ProbeMap {
+
+	/**
+	 * Probes of every class in the jar under test, by jacoco class id.
+	 */
+	private Map<Long, ClassProbes> classes = new HashMap<Long, ClassProbes>();
+
+	/**
+	 * Constructs a probe map by analyzing every class in the given jar.
+	 *
+	 * @param jar
+	 *            - jar under test
+	 * @throws IOException
+	 *             - an exception encountered while reading the jar
+	 */
+	public ProbeMap(File jar) throws IOException {
+		JarFile jarFile = new JarFile(jar);
+		try {
+			Enumeration<JarEntry> entries = jarFile.entries();
+			while (entries.hasMoreElements()) {
+				JarEntry entry = entries.nextElement();
+				if (entry.isDirectory() || !entry.getName().endsWith(".class")) {
+					continue;
+				}
+
+				InputStream in = jarFile.getInputStream(entry);
+				try {
+					ClassReader reader = new ClassReader(in);
+					ClassProbes probes = new ClassProbes(CRC64.checksum(reader.b), reader.getClassName());
+					reader.accept(new ClassProbesAdapter(new ClassMapper(probes), false), 0);
+					probes.computeLines();
+					this.classes.put(probes.id, probes);
+				} finally {
+					in.close();
+				}
+			}
+		} finally {
+			jarFile.close();
+		}
+	}
+
+	/**
+	 * Returns the compact coverage of the classes which have execution data.
+	 *
+	 * @param data
+	 *            - execution data of a test
+	 * @return coverage of every executed class
+	 */
+	public TestCoverage getTestCoverage(ExecutionDataStore data) {
+		List<ClassProbes> executed = new ArrayList<ClassProbes>();
+		List<boolean[]> hits = new ArrayList<boolean[]>();
+		for (ExecutionData classData : data.getContents()) {
+			ClassProbes probes = this.classes.get(classData.getId());
+			if (probes != null) {
+				executed.add(probes);
+				hits.add(classData.getProbes());
+			}
+		}
+
+		TestCoverage coverage = new TestCoverage(executed.size());
+		for (int i = 0; i < executed.size(); i++) {
+			executed.get(i).addTestCoverage(coverage, i, hits.get(i));
+		}
+		return coverage;
+	}
+
+	/**
+	 * Returns the probes of a class of the jar under test.
+	 *
+	 * @param id
+	 *            - jacoco id of the class
+	 * @return the probes of the class, or null if it is not in the jar
+	 */
+	ClassProbes getClass(long id) {
+		return this.classes.get(id);
+	}
+
+	/**
+	 * Returns the probes of every class in the jar under test.
+	 *
+	 * @return the probes of every class
+	 */
+	Collection<ClassProbes> getClasses() {
+		return this.classes.values();
+	}
+}
+
+/**
+ * Class to record the probes of a class as jacoco visits it.
+ * <p>
+ * Synthetic methods other than lambdas are skipped, as jacoco does, though
+ * their probes still take up ids.
+ *
+ * @author ICT-2
+ */
+class ClassMapper extends ClassProbesVisitor {
+	/**
+	 * Probes of the class being visited.
+	 */
+	private ClassProbes probes;
+
+	/**
+	 * Constructs a class mapper which records to the given class probes.
+	 *
+	 * @param probes
+	 *            - class probes to record to
+	 */
+	public ClassMapper(ClassProbes probes) {
+		this.probes = probes;
+	}
+
+	@Override
+	public void visit(int version, int access, String name, String signature, String superName,
+			String[] interfaces) {
+		this.probes.signature = signature;
+		this.probes.superName = superName;
+		this.probes.interfaces = interfaces;
+	}
+
+	@Override
+	public void visitSource(String source, String debug) {
+		this.probes.sourceFileName = source;
+	}
+
+	@Override
+	public MethodProbesVisitor visitMethod(int access, String name, String desc, String signature,
+			String[] exceptions) {
+		if ((access & Opcodes.ACC_SYNTHETIC) != 0 && !name.startsWith("lambda$")) {
+			return null;
+		}
+		MethodProbes method = new MethodProbes(name, desc, signature);
+		this.probes.methods.add(method);
+		return new MethodMapper(method);
+	}
+
+	@Override
+	public void visitTotalProbeCount(int count) {
+		this.probes.probeCount = count;
+	}
+}
+
+/**
+ * Class to record the probes of a method as jacoco visits it.
+ * <p>
+ * This mirrors jacoco's MethodAnalyzer, except that it records which
+ * instructions probes belong to instead of which probes were hit.
+ *
+ * @author ICT-2
+ */
+class MethodMapper extends MethodProbesVisitor {
+	/**
+	 * Probes of the method being visited.
+	 */
+	private MethodProbes method;
+
+	/**
+	 * Line of the instructions being visited.
+	 */
+	private int currentLine = -1;
+
+	/**
+	 * Labels waiting for their instruction.
+	 */
+	private List<Label> currentLabels = new ArrayList<Label>(2);
+
+	/**
+	 * Instruction each visited label belongs to.
+	 */
+	private Map<Label, Integer> labelInstructions = new IdentityHashMap<Label, Integer>();
+
+	/**
+	 * Line, predecessor and branches of each instruction.
+	 */
+	private List<int[]> instructions = new ArrayList<int[]>();
+
+	/**
+	 * Probe id and instruction of each probe.
+	 */
+	private List<int[]> probes = new ArrayList<int[]>();
+
+	/**
+	 * Source instruction and target label of each jump.
+	 */
+	private List<Object[]> jumps = new ArrayList<Object[]>();
+
+	/**
+	 * Last instruction visited, or -1 if control flow does not continue from
+	 * it.
+	 */
+	private int lastInsn = -1;
+
+	/**
+	 * Constructs a method mapper which records to the given method probes.
+	 *
+	 * @param method
+	 *            - method probes to record to
+	 */
+	public MethodMapper(MethodProbes method) {
+		this.method = method;
+	}
+
+	@Override
+	public void visitLabel(Label label) {
+		this.currentLabels.add(label);
+		if (!LabelInfo.isSuccessor(label)) {
+			this.lastInsn = -1;
+		}
+	}
+
+	@Override
+	public void visitLineNumber(int line, Label start) {
+		this.currentLine = line;
+		if (this.method.firstLine > line || this.method.lastLine == -1) {
+			this.method.firstLine = line;
+		}
+		if (this.method.lastLine < line) {
+			this.method.lastLine = line;
+		}
+	}
+
+	/**
+	 * Records an instruction on the current line, following the last one.
+	 */
+	private void visitInsn() {
+		int insn = this.instructions.size();
+		this.instructions.add(new int[] { this.currentLine, -1, 0 });
+		if (this.lastInsn != -1) {
+			setPredecessor(insn, this.lastInsn);
+		}
+		for (Label label : this.currentLabels) {
+			this.labelInstructions.put(label, insn);
+		}
+		this.currentLabels.clear();
+		this.lastInsn = insn;
+	}
+
+	/**
+	 * Sets the predecessor of an instruction, adding a branch to the
+	 * predecessor.
+	 *
+	 * @param insn
+	 *            - instruction to set the predecessor of
+	 * @param predecessor
+	 *            - predecessor of the instruction
+	 */
+	private void setPredecessor(int insn, int predecessor) {
+		this.instructions.get(insn)[1] = predecessor;
+		this.instructions.get(predecessor)[2]++;
+	}
+
+	/**
+	 * Records a probe inserted after the last instruction.
+	 *
+	 * @param probeId
+	 *            - id of the probe
+	 */
+	private void addProbe(int probeId) {
+		this.instructions.get(this.lastInsn)[2]++;
+		this.probes.add(new int[] { probeId, this.lastInsn });
+	}
+
+	/**
+	 * Records a jump from the last instruction to the given label.
+	 *
+	 * @param target
+	 *            - label jumped to
+	 */
+	private void addJump(Label target) {
+		this.jumps.add(new Object[] { this.lastInsn, target });
+	}
+
+	@Override
+	public void visitInsn(int opcode) {
+		visitInsn();
+	}
+
+	@Override
+	public void visitIntInsn(int opcode, int operand) {
+		visitInsn();
+	}
+
+	@Override
+	public void visitVarInsn(int opcode, int var) {
+		visitInsn();
+	}
+
+	@Override
+	public void visitTypeInsn(int opcode, String type) {
+		visitInsn();
+	}
+
+	@Override
+	public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+		visitInsn();
+	}
+
+	@Override
+	public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+		visitInsn();
+	}
+
+	@Override
+	public void visitInvokeDynamicInsn(String name, String desc, Handle bsm, Object... bsmArgs) {
+		visitInsn();
+	}
+
+	@Override
+	public void visitJumpInsn(int opcode, Label label) {
+		visitInsn();
+		addJump(label);
+	}
+
+	@Override
+	public void visitLdcInsn(Object cst) {
+		visitInsn();
+	}
+
+	@Override
+	public void visitIincInsn(int var, int increment) {
+		visitInsn();
+	}
+
+	@Override
+	public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+		visitSwitchInsn(dflt, labels);
+	}
+
+	@Override
+	public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+		visitSwitchInsn(dflt, labels);
+	}
+
+	/**
+	 * Records a switch without probes, with one jump per distinct target.
+	 *
+	 * @param dflt
+	 *            - default target
+	 * @param labels
+	 *            - case targets
+	 */
+	private void visitSwitchInsn(Label dflt, Label[] labels) {
+		visitInsn();
+		LabelInfo.resetDone(labels);
+		addJump(dflt);
+		LabelInfo.setDone(dflt);
+		for (Label label : labels) {
+			if (!LabelInfo.isDone(label)) {
+				addJump(label);
+				LabelInfo.setDone(label);
+			}
+		}
+	}
+
+	@Override
+	public void visitMultiANewArrayInsn(String desc, int dims) {
+		visitInsn();
+	}
+
+	@Override
+	public void visitProbe(int probeId) {
+		addProbe(probeId);
+		this.lastInsn = -1;
+	}
+
+	@Override
+	public void visitJumpInsnWithProbe(int opcode, Label label, int probeId, IFrame frame) {
+		visitInsn();
+		addProbe(probeId);
+	}
+
+	@Override
+	public void visitInsnWithProbe(int opcode, int probeId) {
+		visitInsn();
+		addProbe(probeId);
+	}
+
+	@Override
+	public void visitTableSwitchInsnWithProbes(int min, int max, Label dflt, Label[] labels, IFrame frame) {
+		visitSwitchInsnWithProbes(dflt, labels);
+	}
+
+	@Override
+	public void visitLookupSwitchInsnWithProbes(Label dflt, int[] keys, Label[] labels, IFrame frame) {
+		visitSwitchInsnWithProbes(dflt, labels);
+	}
+
+	/**
+	 * Records a switch with probes, with one jump or probe per distinct
+	 * target.
+	 *
+	 * @param dflt
+	 *            - default target
+	 * @param labels
+	 *            - case targets
+	 */
+	private void visitSwitchInsnWithProbes(Label dflt, Label[] labels) {
+		visitInsn();
+		LabelInfo.resetDone(dflt);
+		LabelInfo.resetDone(labels);
+		visitSwitchTarget(dflt);
+		for (Label label : labels) {
+			visitSwitchTarget(label);
+		}
+	}
+
+	/**
+	 * Records a jump or probe for a switch target which was not yet seen.
+	 *
+	 * @param label
+	 *            - target of the switch
+	 */
+	private void visitSwitchTarget(Label label) {
+		int probeId = LabelInfo.getProbeId(label);
+		if (!LabelInfo.isDone(label)) {
+			if (probeId == LabelInfo.NO_PROBE) {
+				addJump(label);
+			} else {
+				addProbe(probeId);
+			}
+			LabelInfo.setDone(label);
+		}
+	}
+
+	@Override
+	public void visitEnd() {
+		for (Object[] jump : this.jumps) {
+			setPredecessor(this.labelInstructions.get(jump[1]), (Integer) jump[0]);
+		}
+
+		int count = this.instructions.size();
+		this.method.lines = new int[count];
+		this.method.predecessors = new int[count];
+		this.method.branches = new int[count];
+		for (int i = 0; i < count; i++) {
+			int[] insn = this.instructions.get(i);
+			this.method.lines[i] = insn[0];
+			this.method.predecessors[i] = insn[1];
+			this.method.branches[i] = insn[2];
+		}
+
+		this.method.probeIds = new int[this.probes.size()];
+		this.method.probeInstructions = new int[this.probes.size()];
+		for (int p = 0; p < this.probes.size(); p++) {
+			this.method.probeIds[p] = this.probes.get(p)[0];
+			this.method.probeInstructions[p] = this.probes.get(p)[1];
+		}
+	}
+}
@@ -0,0 +1,245 @@
+package contest.winter2017;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Class to read output from a process without causing the input stream to
+ * block.
+ * <p>
+ * Each reader blocks on its own stream, and wakes whoever waits on its signal
+ * whenever it reads a line or the stream ends, so the thread consuming the
+ * lines sleeps instead of polling while a test runs.
+ * <p>
+ * Only MAX_QUEUED_LINES lines are queued at once. While the queue is full the
+ * reader stops reading, so a process which prints faster than its lines are
+ * taken blocks on its pipe instead of filling the tester's memory.
+ * 
+ * @author ICT-2
+ */
+class ProcessStreamReader extends Thread {
+	/**
+	 * Longest line queued, in characters. Longer lines are queued in pieces.
+	 */
+	public static final int MAX_LINE = 8_192;
+
+	/**
+	 * Number of lines queued at most.
+	 */
+	public static final int MAX_QUEUED_LINES = 256;
+
+	/**
+	 * Milliseconds between checks of whether time is up, while the queue is
+	 * full.
+	 */
+	private static final long FULL_WAIT = 100;
+
+	/**
+	 * Input stream to read from.
+	 */
+	private InputStream iStream;
+
+	/**
+	 * Monitor notified whenever a line is read or the stream ends.
+	 */
+	private Object signal;
+
+	/**
+	 * Whether this thread should stop due to time constraints.
+	 */
+	private AtomicBoolean timeUp;
+
+	/**
+	 * Whether this thread is done reading.
+	 */
+	private AtomicBoolean isDone;
+
+	/**
+	 * Queue of lines read from the process.
+	 */
+	private BlockingQueue<String> lines;
+
+	/**
+	 * Constructs a process stream reader with the given input stream, which
+	 * signals only itself.
+	 * 
+	 * @param iStream
+	 *            - input stream to read from
+	 */
+	public ProcessStreamReader(InputStream iStream) {
+		this(iStream, new Object());
+	}
+
+	/**
+	 * Constructs a process stream reader with the given input stream and
+	 * signal.
+	 * 
+	 * @param iStream
+	 *            - input stream to read from
+	 * @param signal
+	 *            - monitor to notify when a line is read or the stream ends,
+	 *            which may be shared with other readers
+	 */
+	public ProcessStreamReader(InputStream iStream, Object signal) {
+		this.iStream = iStream;
+		this.signal = signal;
+		this.timeUp = new AtomicBoolean(false);
+		this.isDone = new AtomicBoolean(false);
+		this.lines = new ArrayBlockingQueue<String>(MAX_QUEUED_LINES);
+		setDaemon(true);
+	}
+
+	/**
+	 * Reads from the given input stream.
+	 * <p>
+	 * Lines end at a line feed, a carriage return, or both. Lines longer than
+	 * MAX_LINE characters are queued in pieces, so a process which never ends
+	 * a line cannot fill memory. Stops reading once the stream ends or time is
+	 * up, including while waiting for room in the queue.
+	 */
+	@Override
+	public void run() {
+		InputStreamReader iReader = new InputStreamReader(this.iStream);
+		char[] buffer = new char[MAX_LINE];
+		StringBuffer line = new StringBuffer();
+		boolean skipLineFeed = false;
+		try {
+			int read;
+			while ((read = iReader.read(buffer)) != -1 && !this.timeUp.get()) {
+				for (int i = 0; i < read; i++) {
+					char c = buffer[i];
+					if (skipLineFeed) {
+						skipLineFeed = false;
+						if (c == '\n') {
+							continue;
+						}
+					}
+					if (c == '\n' || c == '\r') {
+						skipLineFeed = c == '\r';
+						queue(line);
+					} else {
+						if (line.length() == MAX_LINE) {
+							queue(line);
+						}
+						line.append(c);
+					}
+				}
+			}
+			if (line.length() > 0) {
+				queue(line);
+			}
+		} catch (Exception e) {
+		}
+		this.isDone.set(true);
+		wake();
+	}
+
+	/**
+	 * Queues a line read from the process, and empties it for the next. Waits
+	 * for room in the queue if it is full.
+	 * 
+	 * @param line
+	 *            - line read from the process
+	 * @throws InterruptedException
+	 *             - time was up before there was room in the queue
+	 */
+	private void queue(StringBuffer line) throws InterruptedException {
+		String text = line.toString();
+		line.setLength(0);
+		while (!this.lines.offer(text, FULL_WAIT, TimeUnit.MILLISECONDS)) {
+			if (this.timeUp.get()) {
+				throw new InterruptedException("Time is up.");
+			}
+		}
+		wake();
+	}
+
+	/**
+	 * Wakes every thread waiting on this reader's signal.
+	 */
+	private void wake() {
+		synchronized (this.signal) {
+			this.signal.notifyAll();
+		}
+	}
+
+	/**
+	 * Notifies the process stream reader that time is up.
+	 */
+	public void endProcess() {
+		this.timeUp.set(true);
+	}
+
+	/**
+	 * Returns and removes the next line from the process stream reader,
+	 * without waiting.
+	 * 
+	 * @return the next line from the process stream reader, or null if none
+	 *         has been read yet
+	 */
+	public String pollLine() {
+		return this.lines.poll();
+	}
+
+	/**
+	 * Returns whether this process stream reader has a line waiting.
+	 * 
+	 * @return true if a line has been read and not yet taken, or false if not
+	 */
+	public boolean hasLine() {
+		return !this.lines.isEmpty();
+	}
+
+	/**
+	 * Returns whether this process stream reader is done.
+	 * 
+	 * @return true if this process stream reader is done, or false if not.
+	 */
+	public boolean isDone() {
+		return this.isDone.get();
+	}
+
+	/**
+	 * Waits until any of the given readers has a line waiting, all of them
+	 * are done, or the deadline passes. The readers must share the given
+	 * signal.
+	 * 
+	 * @param signal
+	 *            - signal shared by the readers
+	 * @param deadline
+	 *            - time to stop waiting, in milliseconds since the epoch
+	 * @param readers
+	 *            - readers to wait on
+	 * @return true if a reader has a line or all are done, or false if the
+	 *         deadline passed first
+	 * @throws InterruptedException
+	 *             - the thread was interrupted while waiting
+	 */
+	public static boolean await(Object signal, long deadline, ProcessStreamReader... readers)
+			throws InterruptedException {
+		synchronized (signal) {
+			while (true) {
+				boolean allDone = true;
+				for (ProcessStreamReader reader : readers) {
+					if (reader.hasLine()) {
+						return true;
+					}
+					allDone &= reader.isDone();
+				}
+				if (allDone) {
+					return true;
+				}
+
+				long wait = deadline - System.currentTimeMillis();
+				if (wait <= 0) {
+					return false;
+				}
+				signal.wait(wait);
+			}
+		}
+	}
+}
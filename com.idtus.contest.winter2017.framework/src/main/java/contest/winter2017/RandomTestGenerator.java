@@ -55,7 +55,7 @@ public class RandomTestGenerator extends TestGenerator {
 				// dumb logic - given a list of options, always use the first
 				// one
 				List<String> enumerationValues = potentialParameter.getEnumerationValues();
-				parameterString = enumerationValues.get(rng.nextInt(enumerationValues.size())) + " ";
+				parameterString = enumerationValues.get(rng.nextInt(enumerationValues.size()));
 
 				// if the parameter has internal format (eg.
 				// "<number>:<number>PM EST")
@@ -84,11 +84,11 @@ public class RandomTestGenerator extends TestGenerator {
 			} else {
 				if (potentialParameter.getType() == Integer.class) {
 					// dumb logic - always use '1' for an Integer
-					parameterString = Integer.toString(randomInt()) + " ";
+					parameterString = Integer.toString(randomInt());
 					previousParameterStrings.add(parameterString);
 				} else if (potentialParameter.getType() == Double.class) {
 					// dumb logic - always use '1.0' for a Double
-					parameterString = Double.toString(randomDouble()) + " ";
+					parameterString = Double.toString(randomDouble());
 					previousParameterStrings.add(parameterString);
 				} else if (potentialParameter.getType() == String.class) {
 
@@ -160,11 +160,11 @@ public class RandomTestGenerator extends TestGenerator {
 		int choice = r.nextInt(5);
 		String str = "";
 		if (choice == 0) {
-			str = "\"}{\\\\s({\t0\"";
+			str = "}{\\\\s({\t0";
 		} else if (choice == 1) {
-			str = "\"~The d0g jump3d ov3r the cow~\"";
+			str = "~The d0g jump3d ov3r the cow~";
 		} else if (choice == 2) {
-			str = "\"\"";
+			str = "";
 		} else {
 			for (int i = 0; i < 5; i++) {
 				str += "" + (char) (32 + r.nextInt(127 - 32));
@@ -0,0 +1,416 @@
+package contest.winter2017;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * Class to send a security watchdog's reports to the tester over a channel of
+ * their own, apart from the standard out and err of the jar under test.
+ * <p>
+ * The channel is a socket connected to the tester's report server on the
+ * loopback address, opened before the security manager is set. The tester
+ * sends the token the reports go under on the watchdog's standard in, and
+ * the port of the server is cleared from the system properties once the
+ * channel is open, so the jar under test can read neither. It carries
+ * frames of a type byte and an int length, followed by that many bytes. The
+ * first frame names the test, or the long-lived watchdog, the reports belong
+ * to. Each permission's name is sent once, with an id, and permissions used are
+ * then sent as ids and counts. Exceptions no code caught, errors of the
+ * watchdog itself, and the end of each test, with the exit status the jar
+ * under test asked for and how long it ran, follow as they happen, as do the
+ * stacks of any permissions sampled.
+ * <p>
+ * A channel whose tester stops reading is dropped, so the jar under test never
+ * fails because of it.
+ *
+ * @author ICT-2
+ */
+class ReportChannel {
+	/**
+	 * System property holding the port of the tester's report server.
+	 */
+	static final String PORT_PROPERTY = "contest.winter2017.reportPort";
+
+	/**
+	 * Frame naming the reports' test: the token, a long.
+	 */
+	static final byte HELLO = 1;
+
+	/**
+	 * Frame giving a permission's id: the id, then the name.
+	 */
+	static final byte PERMISSION_NAME = 2;
+
+	/**
+	 * Frame of the permissions a test used so far: the count of permissions,
+	 * then each permission's id and use count.
+	 */
+	static final byte PERMISSIONS = 3;
+
+	/**
+	 * Frame of an exception no code caught: the thread's name, then the
+	 * exception.
+	 */
+	static final byte EXCEPTION = 4;
+
+	/**
+	 * Frame of an error of the watchdog itself: the error's text.
+	 */
+	static final byte ERROR = 5;
+
+	/**
+	 * Frame ending a test: the exit status the jar under test asked for, and
+	 * the nanoseconds it ran.
+	 */
+	static final byte TEST_END = 6;
+
+	/**
+	 * Frame of a permission's stack, sampled: the permission's name, then the
+	 * count of frames and each frame.
+	 */
+	static final byte PERMISSION_STACK = 7;
+
+	/**
+	 * Longest frame, in bytes.
+	 */
+	static final int MAX_FRAME = 1 << 24;
+
+	/**
+	 * Number of characters of a string sent.
+	 */
+	static final int MAX_STRING = 1 << 16;
+
+	/**
+	 * Token the reports are sent under.
+	 */
+	private long token;
+
+	/**
+	 * Socket connected to the tester.
+	 */
+	private Socket socket;
+
+	/**
+	 * Stream of frames to the tester, or null once the channel is dropped.
+	 */
+	private DataOutputStream out;
+
+	/**
+	 * Content of the frame being built.
+	 */
+	private ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024);
+
+	/**
+	 * Writer of the frame being built.
+	 */
+	private DataOutputStream frame = new DataOutputStream(this.buffer);
+
+	/**
+	 * Ids of the permission names sent so far.
+	 */
+	private HashMap<String, Integer> permissionIds = new HashMap<String, Integer>();
+
+	/**
+	 * Connects to the tester's report server.
+	 *
+	 * @param port
+	 *            - port of the report server on the loopback address
+	 * @param token
+	 *            - token to send the reports under
+	 * @throws IOException
+	 *             - an exception encountered while connecting
+	 */
+	private ReportChannel(int port, long token) throws IOException {
+		this.token = token;
+		this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		this.socket.setTcpNoDelay(true);
+		this.out = new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream()));
+		this.frame.writeLong(token);
+		send(HELLO);
+		if (this.out == null) {
+			throw new IOException("Report server closed the channel.");
+		}
+	}
+
+	/**
+	 * Reads the token to send reports under from a control channel, and
+	 * connects to the report server named by the system property, if the
+	 * tester named one. Must be called before the security manager is set.
+	 *
+	 * @param control
+	 *            - control channel the tester sends the token on
+	 * @return the channel, or null if the tester did not ask for reports
+	 * @throws IOException
+	 *             - an exception encountered while reading or connecting
+	 */
+	static ReportChannel fromControl(DataInputStream control) throws IOException {
+		if (System.getProperty(PORT_PROPERTY) == null) {
+			return null;
+		}
+		try {
+			return connect(control.readLong());
+		} catch (EOFException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Connects to the report server named by the system property, sending
+	 * reports under the given token, and clears the property. Must be called
+	 * before the security manager is set.
+	 *
+	 * @param token
+	 *            - token to send the reports under, or 0 for no reports
+	 * @return the channel, or null if the tester did not ask for reports
+	 * @throws IOException
+	 *             - an exception encountered while connecting
+	 */
+	static ReportChannel connect(long token) throws IOException {
+		String port = System.clearProperty(PORT_PROPERTY);
+		if (port == null || token == 0) {
+			return null;
+		}
+		try {
+			return new ReportChannel(Integer.parseInt(port), token);
+		} catch (NumberFormatException e) {
+			throw new IOException("Bad report server port " + port + ".");
+		}
+	}
+
+	/**
+	 * Returns the token the reports are sent under.
+	 *
+	 * @return the token
+	 */
+	long getToken() {
+		return this.token;
+	}
+
+	/**
+	 * Sends the permissions a test used so far, sending the name of each
+	 * permission not sent before.
+	 *
+	 * @param counts
+	 *            - use counts by permission name
+	 */
+	synchronized void sendPermissions(Map<String, Integer> counts) {
+		int[] ids = new int[counts.size()];
+		int[] uses = new int[counts.size()];
+		int i = 0;
+		try {
+			for (Entry<String, Integer> entry : counts.entrySet()) {
+				Integer id = this.permissionIds.get(entry.getKey());
+				if (id == null) {
+					id = this.permissionIds.size();
+					this.permissionIds.put(entry.getKey(), id);
+					this.frame.writeInt(id);
+					writeString(this.frame, entry.getKey());
+					send(PERMISSION_NAME);
+				}
+				ids[i] = id;
+				uses[i++] = entry.getValue();
+			}
+			this.frame.writeInt(ids.length);
+			for (i = 0; i < ids.length; i++) {
+				this.frame.writeInt(ids[i]);
+				this.frame.writeInt(uses[i]);
+			}
+		} catch (IOException e) {
+			// writing to memory does not fail
+		}
+		send(PERMISSIONS);
+	}
+
+	/**
+	 * Sends the stack a permission was requested from.
+	 *
+	 * @param permission
+	 *            - name of the permission, as its uses are counted
+	 * @param stack
+	 *            - the stack, innermost first
+	 */
+	synchronized void sendPermissionStack(String permission, StackTraceElement[] stack) {
+		try {
+			writeString(this.frame, permission);
+			this.frame.writeInt(stack.length);
+			for (StackTraceElement element : stack) {
+				writeString(this.frame, "" + element);
+			}
+		} catch (IOException e) {
+			// writing to memory does not fail
+		}
+		send(PERMISSION_STACK);
+	}
+
+	/**
+	 * Sends an exception no code caught.
+	 * <p>
+	 * An exception is sent as its class name, whether it has a message and
+	 * the message, the count of its frames and each frame, the count of
+	 * frames it shares with the enclosing exception, as printed stack traces
+	 * leave them out, the count of its suppressed exceptions and each of
+	 * them, and whether it has a cause and the cause.
+	 *
+	 * @param thread
+	 *            - thread the exception went uncaught in
+	 * @param e
+	 *            - the exception
+	 */
+	synchronized void sendException(Thread thread, Throwable e) {
+		try {
+			writeString(this.frame, thread.getName());
+			writeException(this.frame, e, new StackTraceElement[0], new HashSet<Throwable>());
+		} catch (IOException ioe) {
+			// writing to memory does not fail
+		}
+		send(EXCEPTION);
+	}
+
+	/**
+	 * Sends an error of the watchdog itself.
+	 *
+	 * @param error
+	 *            - text of the error
+	 */
+	synchronized void sendError(String error) {
+		try {
+			writeString(this.frame, error);
+		} catch (IOException e) {
+			// writing to memory does not fail
+		}
+		send(ERROR);
+	}
+
+	/**
+	 * Sends the end of a test.
+	 *
+	 * @param status
+	 *            - exit status the jar under test asked for, or would have
+	 *            exited with
+	 * @param runNanos
+	 *            - nanoseconds the jar under test ran
+	 */
+	synchronized void sendTestEnd(int status, long runNanos) {
+		try {
+			this.frame.writeInt(status);
+			this.frame.writeLong(runNanos);
+		} catch (IOException e) {
+			// writing to memory does not fail
+		}
+		send(TEST_END);
+	}
+
+	/**
+	 * Writes an exception, its suppressed exceptions and its causes.
+	 *
+	 * @param frame
+	 *            - frame to write to
+	 * @param e
+	 *            - the exception
+	 * @param enclosing
+	 *            - frames of the enclosing exception
+	 * @param seen
+	 *            - exceptions written so far, so a circular chain ends
+	 * @throws IOException
+	 *             - an exception encountered while writing
+	 */
+	private static void writeException(DataOutputStream frame, Throwable e, StackTraceElement[] enclosing,
+			Set<Throwable> seen) throws IOException {
+		seen.add(e);
+		writeString(frame, e.getClass().getName());
+		String message = e.getLocalizedMessage();
+		frame.writeBoolean(message != null);
+		if (message != null) {
+			writeString(frame, message);
+		}
+
+		StackTraceElement[] frames = e.getStackTrace();
+		int last = frames.length - 1;
+		for (int n = enclosing.length - 1; last >= 0 && n >= 0 && frames[last].equals(enclosing[n]); n--) {
+			last--;
+		}
+		frame.writeInt(last + 1);
+		for (int i = 0; i <= last; i++) {
+			writeString(frame, "" + frames[i]);
+		}
+		frame.writeInt(frames.length - 1 - last);
+
+		List<Throwable> suppressed = new ArrayList<Throwable>();
+		for (Throwable s : e.getSuppressed()) {
+			if (!seen.contains(s)) {
+				suppressed.add(s);
+			}
+		}
+		frame.writeInt(suppressed.size());
+		for (Throwable s : suppressed) {
+			writeException(frame, s, frames, seen);
+		}
+		Throwable cause = e.getCause();
+		boolean hasCause = cause != null && !seen.contains(cause);
+		frame.writeBoolean(hasCause);
+		if (hasCause) {
+			writeException(frame, cause, frames, seen);
+		}
+	}
+
+	/**
+	 * Writes a string of up to MAX_STRING characters, as its length in bytes
+	 * and its UTF-8 bytes.
+	 *
+	 * @param frame
+	 *            - frame to write to
+	 * @param value
+	 *            - string to write
+	 * @throws IOException
+	 *             - an exception encountered while writing
+	 */
+	private static void writeString(DataOutputStream frame, String value) throws IOException {
+		if (value.length() > MAX_STRING) {
+			value = value.substring(0, MAX_STRING);
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		frame.writeInt(bytes.length);
+		frame.write(bytes);
+	}
+
+	/**
+	 * Sends the frame built, dropping the channel if it cannot be sent.
+	 *
+	 * @param type
+	 *            - type of the frame
+	 */
+	private void send(byte type) {
+		try {
+			if (this.out == null || this.buffer.size() > MAX_FRAME) {
+				return;
+			}
+			this.out.writeByte(type);
+			this.out.writeInt(this.buffer.size());
+			this.buffer.writeTo(this.out);
+			this.out.flush();
+		} catch (IOException e) {
+			this.out = null;
+			try {
+				this.socket.close();
+			} catch (IOException closed) {
+				// already closed
+			}
+		} finally {
+			this.buffer.reset();
+		}
+	}
+}
@@ -0,0 +1,431 @@
+package contest.winter2017;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class to receive the reports of security watchdogs.
+ * <p>
+ * Each watchdog the tester asks for reports connects to this server on the
+ * loopback address, and first sends the token of the test, or the long-lived
+ * watchdog, it reports on. The tester expects a token before it starts the
+ * watchdog. Each report ends with the end of its test, and is then handed to
+ * whoever waits on the token; a watchdog whose JVM ends before its test does
+ * leaves what it sent so far. Connections with tokens no one expects are
+ * dropped.
+ * <p>
+ * Permission names are turned into the tester's permission ids as they
+ * arrive, so reports count permissions by id. Exceptions, and the stacks of
+ * permissions sampled, keep as many frames as a trace parsed from standard
+ * err.
+ *
+ * @author ICT-2
+ */
+class ReportServer extends Thread {
+	/**
+	 * Number of permission ids a watchdog may give.
+	 */
+	public static final int MAX_PERMISSION_IDS = 1 << 16;
+
+	/**
+	 * Socket the watchdogs connect to.
+	 */
+	private ServerSocket serverSocket;
+
+	/**
+	 * Reports received and not yet taken, by token.
+	 */
+	private ConcurrentHashMap<Long, BlockingQueue<WatchdogReport>> reports = new ConcurrentHashMap<Long, BlockingQueue<WatchdogReport>>();
+
+	/**
+	 * Watchdogs connected to the server.
+	 */
+	private CopyOnWriteArrayList<Connection> connections = new CopyOnWriteArrayList<Connection>();
+
+	/**
+	 * Source of tokens, which the jar under test must not be able to guess.
+	 */
+	private SecureRandom random = new SecureRandom();
+
+	/**
+	 * Whether the server has been closed.
+	 */
+	private volatile boolean closed = false;
+
+	/**
+	 * Constructs a server listening on a free port of the loopback address.
+	 * Start the server before starting tests.
+	 *
+	 * @throws IOException
+	 *             - an exception encountered while opening the socket
+	 */
+	public ReportServer() throws IOException {
+		super("report server");
+		this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		setDaemon(true);
+	}
+
+	/**
+	 * Returns the JVM option which tells watchdogs the port of this server.
+	 * Each watchdog is told its token on its standard in, where the jar under
+	 * test cannot see it.
+	 *
+	 * @return the JVM option
+	 */
+	public String getPortOption() {
+		return "-D" + ReportChannel.PORT_PROPERTY + "=" + this.serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Accepts connections from watchdogs until the server is closed.
+	 */
+	@Override
+	public void run() {
+		while (!this.closed) {
+			try {
+				new Connection(this.serverSocket.accept()).start();
+			} catch (IOException e) {
+				if (!this.closed) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Prepares to receive the reports of a watchdog about to be started.
+	 *
+	 * @return the token the watchdog is to report under
+	 */
+	public long expect() {
+		while (true) {
+			long token;
+			synchronized (this.random) {
+				token = this.random.nextLong();
+			}
+			if (token != 0 && this.reports.putIfAbsent(token, new LinkedBlockingQueue<WatchdogReport>()) == null) {
+				return token;
+			}
+		}
+	}
+
+	/**
+	 * Takes the next report under a token, waiting for it if it has not
+	 * arrived.
+	 *
+	 * @param token
+	 *            - token to take the report of, which must be expected
+	 * @param maxMillis
+	 *            - time to wait for the report
+	 * @return the report, or null if none arrived in time
+	 * @throws InterruptedException
+	 *             - the thread was interrupted while waiting
+	 */
+	public WatchdogReport take(long token, long maxMillis) throws InterruptedException {
+		BlockingQueue<WatchdogReport> queue = this.reports.get(token);
+		if (queue == null) {
+			return null;
+		}
+		return queue.poll(maxMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops expecting reports under a token, dropping any not yet taken.
+	 *
+	 * @param token
+	 *            - token of a watchdog which has ended
+	 */
+	public void forget(long token) {
+		this.reports.remove(token);
+	}
+
+	/**
+	 * Stops accepting connections, and drops the connections of watchdogs
+	 * still connected.
+	 */
+	public void close() {
+		this.closed = true;
+		try {
+			this.serverSocket.close();
+		} catch (IOException e) {
+			// nothing more to accept
+		}
+		for (Connection connection : this.connections) {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Reads an exception, its suppressed exceptions and its causes, as the
+	 * report channel writes them. Only MAX_TRACE_LINES frames, suppressed
+	 * exceptions and causes are kept in all; later frames are counted as left
+	 * out.
+	 *
+	 * @param frame
+	 *            - frame to read from
+	 * @param thread
+	 *            - thread the exception went uncaught in, or null for a cause
+	 *            or suppressed exception
+	 * @param lines
+	 *            - number of lines of the trace kept so far, in its only
+	 *            element
+	 * @return the exception
+	 * @throws IOException
+	 *             - the frame ended early
+	 */
+	private static ExceptionRecord readException(DataInputStream frame, String thread, int[] lines) throws IOException {
+		String type = readString(frame);
+		String message = frame.readBoolean() ? readString(frame) : null;
+		ExceptionRecord record = new ExceptionRecord(thread, type, message);
+
+		int frames = frame.readInt();
+		for (int i = 0; i < frames; i++) {
+			String at = readString(frame);
+			if (lines[0]++ < StackTraceParser.MAX_TRACE_LINES) {
+				record.addFrame(at);
+			} else {
+				record.addOmittedFrames(1);
+			}
+		}
+		record.addOmittedFrames(frame.readInt());
+
+		int suppressed = frame.readInt();
+		for (int i = 0; i < suppressed; i++) {
+			ExceptionRecord s = readException(frame, null, lines);
+			if (lines[0]++ < StackTraceParser.MAX_TRACE_LINES) {
+				record.addSuppressed(s);
+			}
+		}
+		if (frame.readBoolean()) {
+			ExceptionRecord cause = readException(frame, null, lines);
+			if (lines[0]++ < StackTraceParser.MAX_TRACE_LINES) {
+				record.setCause(cause);
+			}
+		}
+		return record;
+	}
+
+	/**
+	 * Reads the stack a permission was requested from, keeping only
+	 * MAX_TRACE_LINES frames.
+	 *
+	 * @param frame
+	 *            - frame to read from
+	 * @return the permission's name, followed by a line per frame of the
+	 *         stack
+	 * @throws IOException
+	 *             - the frame ended early
+	 */
+	private static String readPermissionStack(DataInputStream frame) throws IOException {
+		StringBuffer stack = new StringBuffer(readString(frame));
+		int frames = frame.readInt();
+		for (int i = 0; i < frames; i++) {
+			String at = readString(frame);
+			if (i < StackTraceParser.MAX_TRACE_LINES) {
+				stack.append("\n\tat " + at);
+			}
+		}
+		if (frames > StackTraceParser.MAX_TRACE_LINES) {
+			stack.append("\n\t... " + (frames - StackTraceParser.MAX_TRACE_LINES) + " more");
+		}
+		return stack.toString();
+	}
+
+	/**
+	 * Reads a string, as its length in bytes and its UTF-8 bytes.
+	 *
+	 * @param frame
+	 *            - frame to read from
+	 * @return the string
+	 * @throws IOException
+	 *             - the frame ended early
+	 */
+	private static String readString(DataInputStream frame) throws IOException {
+		int length = frame.readInt();
+		if (length < 0 || length > frame.available()) {
+			throw new IOException("Bad string length " + length + ".");
+		}
+		byte[] bytes = new byte[length];
+		frame.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Class to read the reports of one watchdog.
+	 *
+	 * @author ICT-2
+	 */
+	private class Connection extends Thread {
+		/**
+		 * Socket connected to the watchdog.
+		 */
+		private Socket socket;
+
+		/**
+		 * Tester's permission ids, by the watchdog's permission ids.
+		 */
+		private int[] permissionIds = new int[0];
+
+		/**
+		 * Type of the frame last read.
+		 */
+		private int type;
+
+		/**
+		 * Constructs a reader for a watchdog's connection.
+		 *
+		 * @param socket
+		 *            - socket connected to the watchdog
+		 */
+		public Connection(Socket socket) {
+			super("report connection");
+			this.socket = socket;
+			setDaemon(true);
+		}
+
+		/**
+		 * Drops the connection, ending the reading of its reports.
+		 */
+		public void close() {
+			try {
+				this.socket.close();
+			} catch (IOException e) {
+				// already disconnected
+			}
+		}
+
+		/**
+		 * Reads reports until the watchdog disconnects.
+		 */
+		@Override
+		public void run() {
+			connections.add(this);
+			if (closed) {
+				// the server closed while the connection was being accepted
+				close();
+			}
+			BlockingQueue<WatchdogReport> queue = null;
+			WatchdogReport report = new WatchdogReport();
+			// a report is left when the JVM ends, if it sent anything since
+			// its last test ended, or never ended a test
+			boolean leftOver = true;
+			try {
+				DataInputStream in = new DataInputStream(new BufferedInputStream(this.socket.getInputStream()));
+				DataInputStream hello = readFrame(in);
+				if (hello == null || this.type != ReportChannel.HELLO
+						|| (queue = reports.get(hello.readLong())) == null) {
+					return;
+				}
+
+				DataInputStream frame;
+				while ((frame = readFrame(in)) != null) {
+					leftOver = true;
+					switch (this.type) {
+					case ReportChannel.PERMISSION_NAME:
+						int id = frame.readInt();
+						if (id >= 0 && id < MAX_PERMISSION_IDS) {
+							if (id >= this.permissionIds.length) {
+								this.permissionIds = Arrays.copyOf(this.permissionIds, id + 1);
+							}
+							this.permissionIds[id] = Output.permissionId(readString(frame));
+						}
+						break;
+					case ReportChannel.PERMISSIONS:
+						report.setPermissionCounts(readPermissions(frame));
+						break;
+					case ReportChannel.EXCEPTION:
+						String thread = readString(frame);
+						report.addException(readException(frame, thread, new int[1]));
+						break;
+					case ReportChannel.ERROR:
+						report.setError(readString(frame));
+						break;
+					case ReportChannel.PERMISSION_STACK:
+						report.addPermissionStack(readPermissionStack(frame));
+						break;
+					case ReportChannel.TEST_END:
+						report.end(frame.readInt(), frame.readLong());
+						queue.add(report);
+						report = new WatchdogReport();
+						leftOver = false;
+						break;
+					default:
+						// a frame of a later version
+						break;
+					}
+				}
+			} catch (IOException e) {
+				// the watchdog's JVM was killed
+			} finally {
+				if (queue != null && leftOver) {
+					queue.add(report);
+				}
+				connections.remove(this);
+				close();
+			}
+		}
+
+		/**
+		 * Reads the next frame.
+		 *
+		 * @param in
+		 *            - stream from the watchdog
+		 * @return the frame's content, or null if the watchdog disconnected
+		 * @throws IOException
+		 *             - the stream broke, or a frame was too long
+		 */
+		private DataInputStream readFrame(DataInputStream in) throws IOException {
+			this.type = in.read();
+			if (this.type == -1) {
+				return null;
+			}
+			int length = in.readInt();
+			if (length < 0 || length > ReportChannel.MAX_FRAME) {
+				throw new IOException("Bad frame length " + length + ".");
+			}
+			byte[] content = new byte[length];
+			in.readFully(content);
+			return new DataInputStream(new ByteArrayInputStream(content));
+		}
+
+		/**
+		 * Reads the permissions a test used so far.
+		 *
+		 * @param frame
+		 *            - frame to read from
+		 * @return use counts by the tester's permission id
+		 * @throws IOException
+		 *             - the frame ended early
+		 */
+		private int[] readPermissions(DataInputStream frame) throws IOException {
+			int[] counts = new int[0];
+			int permissions = frame.readInt();
+			for (int i = 0; i < permissions; i++) {
+				int id = frame.readInt();
+				int count = frame.readInt();
+				if (id < 0 || id >= this.permissionIds.length) {
+					continue;
+				}
+				int testerId = this.permissionIds[id];
+				if (testerId >= counts.length) {
+					counts = Arrays.copyOf(counts, testerId + 1);
+				}
+				counts[testerId] += count;
+			}
+			return counts;
+		}
+	}
+}
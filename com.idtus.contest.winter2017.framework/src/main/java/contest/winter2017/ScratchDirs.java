@@ -0,0 +1,277 @@
+package contest.winter2017;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class to give each test a working directory of its own.
+ * <p>
+ * Jars under test often write files into their working directory. Tests which
+ * share a directory see each other's files, so running them at once, or even
+ * one after another, changes what they do and what they cover. Every test's
+ * JVM is instead started in a scratch directory which is empty when the test
+ * starts, and the files left in it are listed on the test's output.
+ * <p>
+ * A test which runs in a JVM of its own takes a directory from a pool, and
+ * gives it back when it ends. Given back directories are emptied on a thread
+ * of their own, and only then put back in the pool, so tests do not wait for
+ * deletes. A JVM started ahead of its tests cannot change its working
+ * directory, so the tests of each worker slot's long-lived or pre-started
+ * watchdogs share the slot's directory, which is emptied between tests.
+ * <p>
+ * Scratch directories are kept in memory backed /dev/shm where it exists, or
+ * in the system's temporary directory if not.
+ *
+ * @author ICT-2
+ */
+class ScratchDirs {
+	/**
+	 * Directory kept in memory on Linux.
+	 */
+	private static final String SHARED_MEMORY_DIR = "/dev/shm";
+
+	/**
+	 * Directory all scratch directories are kept in.
+	 */
+	private File root;
+
+	/**
+	 * Directories of the worker slots' long-lived or pre-started watchdogs.
+	 */
+	private File[] slotDirs;
+
+	/**
+	 * Empty directories ready for a test.
+	 */
+	private LinkedBlockingQueue<File> ready = new LinkedBlockingQueue<File>();
+
+	/**
+	 * Number of pooled directories made so far.
+	 */
+	private int made = 0;
+
+	/**
+	 * Thread emptying given back directories.
+	 */
+	private ExecutorService cleaner = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "scratch-cleaner");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * Constructs the scratch directories of a jar under test.
+	 *
+	 * @param prefix
+	 *            - prefix of the name of the directory scratch directories are
+	 *            kept in
+	 * @param slots
+	 *            - number of worker slots
+	 * @throws IOException
+	 *             - an exception encountered while creating a directory
+	 */
+	public ScratchDirs(String prefix, int slots) throws IOException {
+		File sharedMemory = new File(SHARED_MEMORY_DIR);
+		if (sharedMemory.isDirectory() && sharedMemory.canWrite()) {
+			this.root = Files.createTempDirectory(sharedMemory.toPath(), prefix).toFile();
+		} else {
+			this.root = Files.createTempDirectory(prefix).toFile();
+		}
+		this.slotDirs = new File[slots];
+		for (int slot = 0; slot < slots; slot++) {
+			this.slotDirs[slot] = makeDir("slot" + slot);
+		}
+	}
+
+	/**
+	 * Returns the path of the directory all scratch directories are kept in.
+	 *
+	 * @return the directory's path
+	 */
+	public String getPath() {
+		return this.root.getPath();
+	}
+
+	/**
+	 * Returns the directory a slot's long-lived or pre-started watchdogs run
+	 * in.
+	 *
+	 * @param slot
+	 *            - slot of a worker
+	 * @return the slot's directory
+	 */
+	public File getSlotDir(int slot) {
+		return this.slotDirs[slot];
+	}
+
+	/**
+	 * Lists the files a test left in its slot's directory, and deletes them
+	 * before the slot's next test.
+	 *
+	 * @param slot
+	 *            - slot of the worker which ran the test
+	 * @return paths of the files left, relative to the directory
+	 */
+	public List<String> cleanSlotDir(int slot) {
+		List<String> created = list(this.slotDirs[slot]);
+		if (!created.isEmpty()) {
+			empty(this.slotDirs[slot]);
+		}
+		return created;
+	}
+
+	/**
+	 * Takes an empty directory for a test which runs in a JVM of its own.
+	 *
+	 * @return the directory
+	 * @throws IOException
+	 *             - an exception encountered while creating a directory
+	 */
+	public File take() throws IOException {
+		File dir = this.ready.poll();
+		if (dir != null) {
+			return dir;
+		}
+		synchronized (this) {
+			return makeDir("test" + this.made++);
+		}
+	}
+
+	/**
+	 * Gives back a directory taken for a test which has ended, listing the
+	 * files the test left in it. The directory is emptied, and then reused,
+	 * later.
+	 *
+	 * @param dir
+	 *            - directory taken for the test
+	 * @return paths of the files left, relative to the directory
+	 */
+	public List<String> giveBack(File dir) {
+		List<String> created = list(dir);
+		if (created.isEmpty()) {
+			this.ready.add(dir);
+			return created;
+		}
+		try {
+			this.cleaner.execute(new Runnable() {
+				@Override
+				public void run() {
+					// a directory which cannot be emptied is not reused
+					if (empty(dir)) {
+						ScratchDirs.this.ready.add(dir);
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			// closed
+		}
+		return created;
+	}
+
+	/**
+	 * Deletes every scratch directory, once the directories being emptied are
+	 * empty.
+	 */
+	public void close() {
+		this.cleaner.shutdown();
+		try {
+			this.cleaner.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		empty(this.root);
+		this.root.delete();
+	}
+
+	/**
+	 * Makes a directory in the root directory.
+	 *
+	 * @param name
+	 *            - name of the directory
+	 * @return the directory
+	 * @throws IOException
+	 *             - if the directory cannot be made
+	 */
+	private File makeDir(String name) throws IOException {
+		File dir = new File(this.root, name);
+		if (!dir.mkdir() && !dir.isDirectory()) {
+			throw new IOException("Could not create scratch directory " + dir + ".");
+		}
+		return dir;
+	}
+
+	/**
+	 * Lists the files in a directory and its subdirectories.
+	 *
+	 * @param dir
+	 *            - directory to list
+	 * @return relative paths of the files, in sorted order
+	 */
+	private static List<String> list(File dir) {
+		List<String> files = new ArrayList<String>();
+		list(dir, "", files);
+		Collections.sort(files);
+		return files;
+	}
+
+	/**
+	 * Adds the files in a directory and its subdirectories to a list.
+	 *
+	 * @param dir
+	 *            - directory to list
+	 * @param prefix
+	 *            - relative path of the directory, ending in a separator, or an
+	 *            empty string for the listed directory itself
+	 * @param files
+	 *            - list to add relative paths to
+	 */
+	private static void list(File dir, String prefix, List<String> files) {
+		String[] names = dir.list();
+		if (names == null) {
+			return;
+		}
+		for (String name : names) {
+			File file = new File(dir, name);
+			if (file.isDirectory() && !Files.isSymbolicLink(file.toPath())) {
+				files.add(prefix + name + File.separator);
+				list(file, prefix + name + File.separator, files);
+			} else {
+				files.add(prefix + name);
+			}
+		}
+	}
+
+	/**
+	 * Deletes everything in a directory, without following links out of it.
+	 *
+	 * @param dir
+	 *            - directory to empty
+	 * @return true if the directory is empty, or false if not
+	 */
+	private static boolean empty(File dir) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return false;
+		}
+		boolean empty = true;
+		for (File file : files) {
+			if (file.isDirectory() && !Files.isSymbolicLink(file.toPath())) {
+				empty &= empty(file);
+			}
+			empty &= file.delete();
+		}
+		return empty;
+	}
+}
@@ -1,19 +1,39 @@
 package contest.winter2017;
 
 import java.io.FilePermission;
-import java.io.PrintStream;
 import java.security.Permission;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
 import java.util.PropertyPermission;
 
 /**
  * This class watches for security permission requests. This class is not meant
  * to curtail actions requested by executable jars under test, but to keep track
  * of them, and to report them to the tester.
+ * <p>
+ * Permissions used are counted as they are checked, and the counts are sent to
+ * the tester over the watchdog's report channel when a test ends, along with
+ * the exit status the jar under test asked for and how long it ran. If the
+ * tester asks for them, the stacks of a sample of the permission checks are
+ * sent too.
  * 
  * @author ICT-2
  */
 public class SecurityReporter extends SecurityManager {
+	/**
+	 * System property holding how many permission checks pass between the
+	 * stacks sampled, or 0 for none.
+	 */
+	static final String STACK_SAMPLE_PROPERTY = "contest.winter2017.permissionStacks";
+
+	/**
+	 * Number of stacks sampled per test.
+	 */
+	public static final int MAX_STACK_SAMPLES = 8;
+
 	/**
 	 * Int exit code to signify whether the jar under test is trying to
 	 * terminate the program.
@@ -21,47 +41,103 @@ public class SecurityReporter extends SecurityManager {
 	private static final int WATCHDOG_EXIT_CODE = 302590835;
 
 	/**
-	 * List of permissions attempted by the jar under test.
+	 * Number of times each permission was attempted by the jar under test, in
+	 * the order they were first attempted. File and property permissions are
+	 * counted by their class, and others by their name.
+	 */
+	private final LinkedHashMap<String, int[]> permissionCounts = new LinkedHashMap<String, int[]>();
+
+	/**
+	 * Permissions sampled along with their stacks.
+	 */
+	private final List<PermissionEvent> stackSamples = new ArrayList<PermissionEvent>();
+
+	/**
+	 * Number of permission checks between the stacks sampled, or 0 for none.
+	 */
+	private final int stackSampleInterval;
+
+	/**
+	 * Number of permission checks left until the next stack is sampled.
 	 */
-	private LinkedList<PermissionEvent> permissionEvents;
+	private int untilSample;
 
 	/**
-	 * Reference to stdOut, in case the jar under test uses System.setOut.
+	 * Set on a thread while it logs a permission, so the permissions the
+	 * reporter itself uses meanwhile are neither logged nor checked.
 	 */
-	private PrintStream stdOut;
+	private final ThreadLocal<Boolean> logging = new ThreadLocal<Boolean>();
 
 	/**
-	 * Constructs a new security reporter with the specified standard out.
+	 * Channel to report to the tester over, or null if the tester did not ask
+	 * for reports.
+	 */
+	private ReportChannel channel;
+
+	/**
+	 * Time the current test started, from System.nanoTime.
+	 */
+	private long testStart = System.nanoTime();
+
+	/**
+	 * Whether attempts to exit are turned into exceptions.
+	 */
+	private boolean trapExit;
+
+	/**
+	 * Whether permission requests are currently logged.
+	 */
+	private volatile boolean recording = true;
+
+	/**
+	 * Constructs a new security reporter with the specified report channel.
 	 * 
-	 * @param stdOut
-	 *            - output stream to print log to
+	 * @param channel
+	 *            - channel to report to the tester over, or null for none
 	 */
-	public SecurityReporter(PrintStream stdOut) {
-		this.stdOut = stdOut;
-		permissionEvents = new LinkedList<PermissionEvent>();
+	public SecurityReporter(ReportChannel channel) {
+		this(channel, false);
 	}
 
 	/**
-	 * Logs a permission requested.
+	 * Constructs a new security reporter with the specified report channel.
+	 * Must be constructed before the security manager is set, as it reads the
+	 * stack sample interval from the system properties.
 	 * <p>
-	 * This method attempts to allow the security reporter to circumvent itself,
-	 * disabling the security manager if the permission to check originated from
-	 * the security reporter.
+	 * If exits are trapped, an attempt by the jar under test to exit is logged
+	 * and then refused with an ExitTrappedException, so that a long-lived
+	 * watchdog can run the next test.
+	 * 
+	 * @param channel
+	 *            - channel to report to the tester over, or null for none
+	 * @param trapExit
+	 *            - whether to turn attempts to exit into exceptions
+	 */
+	public SecurityReporter(ReportChannel channel, boolean trapExit) {
+		this.channel = channel;
+		this.trapExit = trapExit;
+		this.stackSampleInterval = Math.max(0, Integer.getInteger(STACK_SAMPLE_PROPERTY, 0));
+		this.untilSample = this.stackSampleInterval;
+	}
+
+	/**
+	 * Logs a permission requested.
 	 * <p>
-	 * Note, it is possible for a jar under test to perform unlogged operations
-	 * using a different thread while the SecurityReporter has disabled itself.
-	 * This could be prevented by granting permissions by looking at the stack
-	 * trace, instead of disabling the security manager.
+	 * Only a request to set the security manager walks the stack, to allow the
+	 * security reporter, and nothing else, to do so. Other requests are counted
+	 * in place. While a thread logs a permission, the permissions the reporter
+	 * uses itself on that thread are allowed without being logged; other
+	 * threads of the jar under test are still logged meanwhile.
 	 * 
 	 * @param toCheck
 	 *            - permission to check and possibly log
 	 */
 	@Override
 	public void checkPermission(Permission toCheck) {
-		StackTraceElement[] thread = Thread.currentThread().getStackTrace();
+		String name = toCheck.getName();
 		// allow this class to set the security manager
-		if (toCheck.getName().equals("setSecurityManager")) {
-			for (StackTraceElement element : thread) {
+		if (name.equals("setSecurityManager")) {
+			for (StackTraceElement element : Thread.currentThread().getStackTrace()) {
 				if (("" + element).startsWith("contest.winter2017.SecurityReporter")) {
 					return;
 				} else if (!("" + element).startsWith("java.lang")) {
@@ -70,79 +146,183 @@ public class SecurityReporter extends SecurityManager {
 			}
 		}
 
-		// disable manager to do real work
-		System.setSecurityManager(null);
+		// the watchdog is working between tests, or this thread is already
+		// logging a permission
+		if (!this.recording || this.logging.get() != null) {
+			return;
+		}
 
-		if (toCheck instanceof RuntimePermission && toCheck.getName().contains("exitVM")) {
-			// log exit permissions if they dont use the special int
-			if (toCheck.getName().contains("" + WATCHDOG_EXIT_CODE)) {
-				outputSecurityLog();
+		this.logging.set(Boolean.TRUE);
+		try {
+			if (toCheck instanceof RuntimePermission && name.contains("exitVM")) {
+				// log exit permissions if they dont use the special int, whose
+				// test the watchdog has already ended
+				if (name.contains("" + WATCHDOG_EXIT_CODE)) {
+					this.recording = false;
+				} else if (this.trapExit) {
+					logPermission(toCheck);
+					throw new ExitTrappedException(name);
+				} else {
+					logPermission(toCheck);
+					endTest(exitStatus(name));
+				}
 			} else {
-				permissionEvents.add(new PermissionEvent(toCheck));
-				outputSecurityLog();
+				logPermission(toCheck);
 			}
-		} else {
-			permissionEvents.add(new PermissionEvent(toCheck));
+		} finally {
+			this.logging.remove();
 		}
-
-		// enable manager
-		System.setSecurityManager(this);
 	}
 
 	/**
-	 * Outputs security events seen so far.
+	 * Counts a permission requested, and samples its stack if it is due.
+	 * 
+	 * @param permission
+	 *            - permission to log
 	 */
-	public void outputSecurityLog() {
-		PrintStream out = System.out;
-		System.setOut(this.stdOut);
-		System.out.println("<<WATCHDOG_OUTPUT_START>>");
-		for (PermissionEvent event : permissionEvents) {
-			Permission perm = event.getPermission();
-			String name;
-			if (perm instanceof FilePermission || perm instanceof PropertyPermission) {
-				name = perm.getClass().getSimpleName();
+	private void logPermission(Permission permission) {
+		String key = countKey(permission);
+		synchronized (this.permissionCounts) {
+			int[] count = this.permissionCounts.get(key);
+			if (count == null) {
+				this.permissionCounts.put(key, new int[] { 1 });
 			} else {
-				name = perm.getName().split("\\Q.\\E")[0];
+				count[0]++;
+			}
+			if (this.stackSampleInterval > 0 && --this.untilSample <= 0
+					&& this.stackSamples.size() < MAX_STACK_SAMPLES) {
+				this.untilSample = this.stackSampleInterval;
+				this.stackSamples.add(new PermissionEvent(permission, callerStack()));
 			}
-			System.out.println(name);
 		}
-		System.out.println("<<WATCHDOG_OUTPUT_END>>");
-		System.setOut(out);
 	}
-}
 
-/**
- * Class to encapsulate a permission request. In the future, this could also
- * hold the stack trace at the permission. This could be parsed to find where
- * dubious permissions are executed from.
- * 
- * @author ICT-2
- */
+	/**
+	 * Returns the key a permission is counted under.
+	 * 
+	 * @param permission
+	 *            - the permission
+	 * @return the class name of file and property permissions, which are
+	 *         final, or the name of other permissions
+	 */
+	private static String countKey(Permission permission) {
+		if (permission instanceof FilePermission) {
+			return "FilePermission";
+		} else if (permission instanceof PropertyPermission) {
+			return "PropertyPermission";
+		}
+		return permission.getName();
+	}
 
-class PermissionEvent {
 	/**
-	 * Permission logged to this permission event.
+	 * Returns the name a permission's count is reported under.
+	 * 
+	 * @param key
+	 *            - key the permission is counted under
+	 * @return the key, up to its first '.'
 	 */
-	private Permission permission;
+	private static String reportName(String key) {
+		return key.split("\\Q.\\E")[0];
+	}
 
 	/**
-	 * Constructs a PermissionEvent with the given permission and StackTrace.
+	 * Returns the stack of the current thread, without the frames of this
+	 * class.
 	 * 
-	 * @param permision
-	 *            - permission to log
-	 * @param traceElements
-	 *            - stack trace to log
+	 * @return the stack, innermost first
 	 */
-	public PermissionEvent(Permission permission) {
-		this.permission = permission;
+	private static StackTraceElement[] callerStack() {
+		StackTraceElement[] stack = new Throwable().getStackTrace();
+		int first = 0;
+		while (first < stack.length && stack[first].getClassName().equals(SecurityReporter.class.getName())) {
+			first++;
+		}
+		return Arrays.copyOfRange(stack, first, stack.length);
+	}
+
+	/**
+	 * Starts logging the permission requests of a test, and timing it.
+	 */
+	public void startTest() {
+		this.testStart = System.nanoTime();
+		this.recording = true;
 	}
 
 	/**
-	 * Gets the permission logged to this permission event.
+	 * Ends a test, sending the security events seen so far, the exit status
+	 * and how long the test ran to the tester, and forgets the events.
 	 * 
-	 * @return permission logged to this permission event
+	 * @param status
+	 *            - exit status the jar under test asked for, or would have
+	 *            exited with
 	 */
-	public Permission getPermission() {
-		return this.permission;
+	public void endTest(int status) {
+		long runNanos = System.nanoTime() - this.testStart;
+		this.recording = false;
+		outputSecurityLog();
+		if (this.channel != null) {
+			this.channel.sendTestEnd(status, runNanos);
+		}
+		reset();
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Outputs security events seen so far, as the number of times each
+	 * permission was used, followed by any stacks sampled.
+	 */
+	public void outputSecurityLog() {
+		LinkedHashMap<String, Integer> counts = new LinkedHashMap<String, Integer>();
+		List<PermissionEvent> samples;
+		synchronized (this.permissionCounts) {
+			for (Entry<String, int[]> entry : this.permissionCounts.entrySet()) {
+				String name = reportName(entry.getKey());
+				Integer count = counts.get(name);
+				counts.put(name, count == null ? entry.getValue()[0] : count + entry.getValue()[0]);
+			}
+			samples = new ArrayList<PermissionEvent>(this.stackSamples);
+		}
+		if (this.channel != null) {
+			this.channel.sendPermissions(counts);
+			for (PermissionEvent sample : samples) {
+				this.channel.sendPermissionStack(reportName(countKey(sample.getPermission())), sample.getStack());
+			}
+		}
+	}
+
+	/**
+	 * Returns the exit status named by an exit permission.
+	 * 
+	 * @param exit
+	 *            - name of the permission, exitVM followed by the status
+	 * @return the exit status, or -1 if the name holds none
+	 */
+	static int exitStatus(String exit) {
+		try {
+			return Integer.parseInt(exit.substring(exit.indexOf('.') + 1));
+		} catch (NumberFormatException | IndexOutOfBoundsException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Forgets the security events seen so far.
+	 */
+	public void reset() {
+		synchronized (this.permissionCounts) {
+			this.permissionCounts.clear();
+			this.stackSamples.clear();
+			this.untilSample = this.stackSampleInterval;
+		}
+	}
+
+	/**
+	 * Sets whether permission requests are logged. A long-lived watchdog does
+	 * not log the requests it makes itself between tests.
+	 * 
+	 * @param recording
+	 *            - whether to log permission requests
+	 */
+	public void setRecording(boolean recording) {
+		this.recording = recording;
+	}
+}
@@ -1,12 +1,21 @@
 package contest.winter2017;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.JarURLConnection;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
 import java.util.jar.Attributes;
 
 /**
@@ -17,6 +26,14 @@ import java.util.jar.Attributes;
  * changed by the jar under test. A fix for this could be to replace the
  * standard error and out, and send err and out from a separate thread, which
  * monitors and sends output form the "fake" standard err and out.
+ * <p>
+ * The watchdog either runs a single test and exits, or runs as a long-lived
+ * worker which runs tests sent to it by the tester. A watchdog can also be
+ * started ahead of its test, and wait for the test on standard in.
+ * <p>
+ * Permissions used, exceptions no code caught and errors of the watchdog are
+ * reported to the tester over a report channel of their own, so nothing the
+ * jar under test prints can be mistaken for them.
  * 
  * @author ICT-2
  *
@@ -28,6 +45,29 @@ public class SecurityWatchdog {
 	 */
 	private static final int WATCHDOG_EXIT_CODE = 302590835;
 
+	/**
+	 * First argument which starts the watchdog as a long-lived worker.
+	 */
+	static final String WORKER_FLAG = "-worker";
+
+	/**
+	 * First argument which starts the watchdog ahead of its single test.
+	 */
+	static final String POOLED_FLAG = "-pooled";
+
+	/**
+	 * Line printed to standard out and err by a worker when a test ends,
+	 * followed by the worker's report token.
+	 */
+	static final String TEST_END = "<<WATCHDOG_TEST_END>>";
+
+	/**
+	 * System property naming the class which starts the jacoco runtime of
+	 * offline instrumented classes, if the jar under test was instrumented
+	 * offline.
+	 */
+	static final String OFFLINE_RUNTIME = "contest.winter2017.offlineRuntime";
+
 	/**
 	 * Whether the watch dog has already been started.
 	 */
@@ -38,9 +78,17 @@ public class SecurityWatchdog {
 	 */
 	private static boolean toolChain = true;
 
+	/**
+	 * Channel to report to the tester over, or null if the tester did not ask
+	 * for reports.
+	 */
+	private static ReportChannel channel = null;
+
 	/**
 	 * Runs an executable jar under test with the specified options.
 	 * <p>
+	 * If the first argument is the worker flag, the watchdog instead runs as a
+	 * long-lived worker; see runWorker.
 	 *
 	 * @param args
 	 *            - arguments with information for the executable jar under test
@@ -58,6 +106,19 @@ public class SecurityWatchdog {
 				watchdogStarted = true;
 			}
 
+			if (args[0].equals(WORKER_FLAG)) {
+				runWorker(args);
+				return;
+			} else if (args[0].equals(POOLED_FLAG)) {
+				runPooled(args);
+				return;
+			}
+
+			// the tester sends the token to report under on standard in, which
+			// the jar under test then sees empty
+			channel = ReportChannel.fromControl(new DataInputStream(System.in));
+			System.setIn(new ByteArrayInputStream(new byte[0]));
+
 			// testing arguments
 			File jarFileToTest = new File(args[0]);
 			toolChain = args[1].equalsIgnoreCase("true");
@@ -68,77 +129,457 @@ public class SecurityWatchdog {
 			}
 
 			// load the jar
-			URL fileURL = null;
-			URL jarURL = null;
-			JarURLConnection jarURLconn = null;
-			URLClassLoader cl = null;
-			try {
-				fileURL = jarFileToTest.toURI().toURL();
-				String jarUrlTemp = "jar:" + jarFileToTest.toURI().toString() + "!/";
-				jarURL = new URL(jarUrlTemp);
-				cl = URLClassLoader.newInstance(new URL[] { fileURL });
-				jarURLconn = null;
-				jarURLconn = (JarURLConnection) jarURL.openConnection();
-			} catch (IOException ioe) {
-				watchdogError("LOAD JAR");
-			}
+			URLClassLoader cl = URLClassLoader.newInstance(new URL[] { getJarURL(jarFileToTest) });
+			Method mainMethod = getMainMethod(cl, getMainClassName(jarFileToTest));
 
-			// figure out the entry-point (main class) is in the jar under test
-			Attributes attr = null;
-			try {
-				attr = jarURLconn.getMainAttributes();
-			} catch (IOException ioe) {
-				watchdogError("LOAD MANIFEST");
-			}
-			String mainClassName = attr.getValue(Attributes.Name.MAIN_CLASS);
-			if (mainClassName == null) {
-				watchdogError("GET MAIN CLASS");
-			}
+			startOfflineRuntime();
+			EdgeMap.start(System.getProperty(EdgeMap.MAP_PROPERTY));
+			runTest(mainMethod, argsToPass);
+		} catch (Exception e) {
+			watchdogError("RUN WATCHDOG", e);
+		}
+	}
 
-			// load the main class from the jar under test
-			Class<?> mainClass = null;
-			try {
-				mainClass = cl.loadClass(mainClassName);
-			} catch (ClassNotFoundException cnfe) {
-				watchdogError("LOAD MAIN CLASS");
-			}
+	/**
+	 * Runs the jar under test once under the security reporter, and exits.
+	 * 
+	 * @param mainMethod
+	 *            - main method of the jar under test
+	 * @param argsToPass
+	 *            - arguments to pass to the jar under test
+	 */
+	private static void runTest(Method mainMethod, String[] argsToPass) {
+		reportUncaughtExceptions();
+		SecurityReporter reporter = new SecurityReporter(channel);
+		try {
+			System.setSecurityManager(reporter);
+		} catch (SecurityException se) {
+			watchdogError("ERROR: Could not set security manager.");
+		}
 
-			// use reflection to invoke the main method
-			Method mainMethod = null;
-			try {
-				Class<?>[] mainArgs = new Class[] { String[].class };
-				mainMethod = mainClass.getDeclaredMethod("main", mainArgs);
-			} catch (NoSuchMethodException nsme) {
-				watchdogError("ERROR: Could not load main method of jar to test.");
-			}
+		// invoke main method, exiting as the JVM would after it
+		int status = 0;
+		reporter.startTest();
+		try {
+			mainMethod.invoke(null, (Object) argsToPass);
+		} catch (InvocationTargetException e) {
+			// invocation target exceptions don't supply from which thread
+			// they occurred, the main thread is assumed here
+			status = 1;
+			Thread curr = Thread.currentThread();
+			curr.getUncaughtExceptionHandler().uncaughtException(curr, e.getCause());
+		} catch (IllegalAccessException | IllegalArgumentException e) {
+			watchdogError("INVOKE MAIN METHOD", e);
+		}
 
-			try {
-				System.setSecurityManager(new SecurityReporter(System.out));
-			} catch (SecurityException se) {
-				watchdogError("ERROR: Could not set security manager.");
-			}
+		// notify tester of program end
+		reporter.endTest(status);
+		System.exit(WATCHDOG_EXIT_CODE);
+	}
 
-			// invoke main method
+	/**
+	 * Starts a watchdog ahead of its test, then runs the single test sent by
+	 * the tester and exits.
+	 * <p>
+	 * The JVM boots and loads the main class of the jar under test before the
+	 * test is known, so a tester can keep watchdogs ready while other tests
+	 * run. The tester then sends, over standard in, the jacoco session id of
+	 * the test, the path of its edge map and the token to report under,
+	 * followed by the test as a worker receives it. The test runs
+	 * just as in a watchdog started for it, in a process of its own, except
+	 * that the jar under test sees an empty standard in. The jacoco runtime
+	 * sends the test's execution data to the tester under that session id
+	 * when the test exits.
+	 * 
+	 * @param args
+	 *            - pooled flag, jar to test and tool chain option
+	 * @throws Exception
+	 *             - any uncaught exceptions thrown
+	 */
+	private static void runPooled(String[] args) throws Exception {
+		if (args.length < 3) {
+			throw new Exception("SecurityWatchdog should be run from Tester.java");
+		}
+
+		File jarFileToTest = new File(args[1]);
+		toolChain = args[2].equalsIgnoreCase("true");
+
+		// load the jar
+		URLClassLoader cl = URLClassLoader.newInstance(new URL[] { getJarURL(jarFileToTest) });
+		Method mainMethod = getMainMethod(cl, getMainClassName(jarFileToTest));
+		startOfflineRuntime();
+
+		// wait for the test, exiting quietly if the tester no longer needs
+		// this watchdog
+		DataInputStream control = new DataInputStream(new BufferedInputStream(System.in));
+		String sessionId;
+		String edgeMap;
+		long token;
+		String[] argsToPass;
+		try {
+			sessionId = readString(control);
+			edgeMap = readString(control);
+			token = control.readLong();
+		} catch (EOFException e) {
+			return;
+		}
+		if ((argsToPass = readTest(control)) == null) {
+			return;
+		}
+		System.setIn(new ByteArrayInputStream(new byte[0]));
+		channel = ReportChannel.connect(token);
+
+		setCoverageSession(sessionId);
+		EdgeMap.start(edgeMap);
+		runTest(mainMethod, argsToPass);
+	}
+
+	/**
+	 * Runs tests on an executable jar until the tester closes the control
+	 * channel.
+	 * <p>
+	 * The control channel is this process's standard in. It starts with the
+	 * token to report under, if the tester asked for reports. Each test then
+	 * arrives as an int count of arguments followed by the arguments, each
+	 * written by writeString, and the jacoco session id of the test, and a
+	 * negative count ends the worker. The jar under test sees an empty
+	 * standard in.
+	 * 
+	 * The main class is loaded in a fresh class loader for every test, so
+	 * static state does not carry over from one test to the next. Attempts by
+	 * the jar under test to exit are turned into exceptions by the security
+	 * reporter. After each test, permissions used and the end of the test are
+	 * reported, the jacoco execution data of the test is dumped to the tester
+	 * and reset, and the end of the test is marked on standard out and
+	 * standard err, followed by the worker's report token so the jar under
+	 * test cannot end a test early by printing the marker.
+	 * 
+	 * @param args
+	 *            - worker flag, jar to test and tool chain option
+	 * @throws Exception
+	 *             - any uncaught exceptions thrown
+	 */
+	private static void runWorker(String[] args) throws Exception {
+		if (args.length < 3) {
+			throw new Exception("SecurityWatchdog should be run from Tester.java");
+		}
+
+		File jarFileToTest = new File(args[1]);
+		toolChain = args[2].equalsIgnoreCase("true");
+
+		// take standard in for the control channel
+		DataInputStream control = new DataInputStream(new BufferedInputStream(System.in));
+		System.setIn(new ByteArrayInputStream(new byte[0]));
+		channel = ReportChannel.fromControl(control);
+		PrintStream stdOut = System.out;
+		PrintStream stdErr = System.err;
+
+		URL jarURL = getJarURL(jarFileToTest);
+		String mainClassName = getMainClassName(jarFileToTest);
+
+		SecurityReporter reporter = new SecurityReporter(channel, true);
+		String testEnd = TEST_END + (channel == null ? "" : "" + channel.getToken());
+		reporter.setRecording(false);
+		startOfflineRuntime();
+		EdgeMap.start(System.getProperty(EdgeMap.MAP_PROPERTY));
+		reportUncaughtExceptions();
+		try {
+			System.setSecurityManager(reporter);
+		} catch (SecurityException se) {
+			watchdogError("ERROR: Could not set security manager.");
+		}
+
+		// drop coverage of the watchdog starting up
+		resetCoverage();
+
+		String[] argsToPass;
+		while ((argsToPass = readTest(control)) != null) {
+			// a dump the tester asked for while the test runs goes under the
+			// test's session too
+			setCoverageSession(readString(control));
+			URLClassLoader cl = URLClassLoader.newInstance(new URL[] { jarURL });
+			Method mainMethod = getMainMethod(cl, mainClassName);
+
+			EdgeMap.reset();
+			int status = 0;
+			reporter.startTest();
 			try {
 				mainMethod.invoke(null, (Object) argsToPass);
 			} catch (InvocationTargetException e) {
-				// invocation target exceptions don't supply from which thread
-				// they occurred, the main thread is assumed here
-				Thread curr = Thread.currentThread();
-				curr.getUncaughtExceptionHandler().uncaughtException(curr, e.getCause());
+				reporter.setRecording(false);
+				if (e.getCause() instanceof ExitTrappedException) {
+					status = SecurityReporter.exitStatus(e.getCause().getMessage());
+				} else {
+					status = 1;
+					// the main thread is assumed, as when running one test
+					Thread curr = Thread.currentThread();
+					curr.getUncaughtExceptionHandler().uncaughtException(curr, e.getCause());
+				}
 			} catch (IllegalAccessException | IllegalArgumentException e) {
 				watchdogError("INVOKE MAIN METHOD", e);
 			}
+			reporter.setRecording(false);
 
-			// notify tester of program end
-			System.exit(WATCHDOG_EXIT_CODE);
-		} catch (Exception e) {
-			watchdogError("RUN WATCHDOG", e);
+			// undo changes the jar under test made to standard out and err
+			System.setOut(stdOut);
+			System.setErr(stdErr);
+			cl.close();
+
+			reporter.endTest(status);
+			dumpCoverage();
+
+			stdOut.println(testEnd);
+			stdOut.flush();
+			stdErr.println(testEnd);
+			stdErr.flush();
 		}
+
+		System.exit(WATCHDOG_EXIT_CODE);
 	}
 
 	/**
-	 * Notifies the tester of errors.
+	 * Reports every exception which no code of the jar under test catches to
+	 * the tester, before printing it to standard err as the JVM would.
+	 * <p>
+	 * An exception thrown out of the main method is handed to the main
+	 * thread's handler, which passes it on to this default handler unless the
+	 * jar under test set a handler of its own.
+	 */
+	private static void reportUncaughtExceptions() {
+		Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+			@Override
+			public void uncaughtException(Thread t, Throwable e) {
+				if (e instanceof ThreadDeath) {
+					return;
+				}
+				if (channel != null) {
+					channel.sendException(t, e);
+				}
+				System.err.print("Exception in thread \"" + t.getName() + "\" ");
+				e.printStackTrace(System.err);
+			}
+		});
+	}
+
+	/**
+	 * Reads the arguments of the next test from the control channel.
+	 * 
+	 * @param control
+	 *            - control channel to read from
+	 * @return arguments of the next test, or null if there are no more tests
+	 * @throws IOException
+	 *             - an exception encountered while reading
+	 */
+	private static String[] readTest(DataInputStream control) throws IOException {
+		int count;
+		try {
+			count = control.readInt();
+		} catch (EOFException e) {
+			return null;
+		}
+		if (count < 0) {
+			return null;
+		}
+
+		String[] args = new String[count];
+		for (int i = 0; i < count; i++) {
+			args[i] = readString(control);
+		}
+		return args;
+	}
+
+	/**
+	 * Writes a string to a control channel, as its length in bytes and its
+	 * UTF-8 bytes. Unlike writeUTF, strings of any length can be written.
+	 * 
+	 * @param control
+	 *            - control channel to write to
+	 * @param value
+	 *            - string to write
+	 * @throws IOException
+	 *             - an exception encountered while writing
+	 */
+	static void writeString(DataOutputStream control, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		control.writeInt(bytes.length);
+		control.write(bytes);
+	}
+
+	/**
+	 * Reads a string written by writeString from a control channel.
+	 * 
+	 * @param control
+	 *            - control channel to read from
+	 * @return the string
+	 * @throws IOException
+	 *             - an exception encountered while reading, or a bad length
+	 */
+	static String readString(DataInputStream control) throws IOException {
+		int length = control.readInt();
+		if (length < 0) {
+			throw new IOException("Bad string length " + length + ".");
+		}
+		byte[] bytes = new byte[length];
+		control.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Starts the jacoco runtime of offline instrumented classes, if the jar
+	 * under test was instrumented offline.
+	 * <p>
+	 * The runtime otherwise starts when the first class of the jar under test
+	 * is initialized, and the permissions it needs to read its options and
+	 * open its output would be reported as used by the jar under test.
+	 */
+	private static void startOfflineRuntime() {
+		String runtimeClass = System.getProperty(OFFLINE_RUNTIME);
+		if (runtimeClass == null) {
+			return;
+		}
+		try {
+			Class.forName(runtimeClass);
+		} catch (ClassNotFoundException e) {
+			watchdogError("START OFFLINE RUNTIME", e);
+		}
+	}
+
+	/**
+	 * Sends the jacoco execution data collected so far to the tester, and
+	 * resets it.
+	 * <p>
+	 * The jacoco agent's runtime is accessed reflectively, as it is only on
+	 * the class path of watchdogs started with the agent, or running offline
+	 * instrumented classes.
+	 */
+	private static void dumpCoverage() {
+		try {
+			Class<?> agentClass = Class.forName("org.jacoco.agent.rt.IAgent");
+			agentClass.getMethod("dump", boolean.class).invoke(getAgent(), true);
+		} catch (ReflectiveOperationException e) {
+			watchdogError("DUMP COVERAGE", e);
+		}
+	}
+
+	/**
+	 * Drops the jacoco execution data collected so far.
+	 */
+	private static void resetCoverage() {
+		try {
+			Class<?> agentClass = Class.forName("org.jacoco.agent.rt.IAgent");
+			agentClass.getMethod("reset").invoke(getAgent());
+		} catch (ReflectiveOperationException e) {
+			watchdogError("RESET COVERAGE", e);
+		}
+	}
+
+	/**
+	 * Sets the jacoco session id the execution data is sent to the tester
+	 * under.
+	 * 
+	 * @param sessionId
+	 *            - session id of the test
+	 */
+	private static void setCoverageSession(String sessionId) {
+		try {
+			Class<?> agentClass = Class.forName("org.jacoco.agent.rt.IAgent");
+			agentClass.getMethod("setSessionId", String.class).invoke(getAgent(), sessionId);
+		} catch (ReflectiveOperationException e) {
+			watchdogError("SET COVERAGE SESSION", e);
+		}
+	}
+
+	/**
+	 * Returns the jacoco agent's runtime.
+	 * 
+	 * @return the agent
+	 * @throws ReflectiveOperationException
+	 *             - the agent could not be found
+	 */
+	private static Object getAgent() throws ReflectiveOperationException {
+		return Class.forName("org.jacoco.agent.rt.RT").getMethod("getAgent").invoke(null);
+	}
+
+	/**
+	 * Returns a URL for the given jar.
+	 * 
+	 * @param jarFileToTest
+	 *            - jar to get a URL for
+	 * @return URL of the jar
+	 */
+	private static URL getJarURL(File jarFileToTest) {
+		URL fileURL = null;
+		try {
+			fileURL = jarFileToTest.toURI().toURL();
+		} catch (IOException ioe) {
+			watchdogError("LOAD JAR");
+		}
+		return fileURL;
+	}
+
+	/**
+	 * Returns the name of the entry-point (main class) of the given jar.
+	 * 
+	 * @param jarFileToTest
+	 *            - jar to get the main class name of
+	 * @return name of the main class of the jar
+	 */
+	private static String getMainClassName(File jarFileToTest) {
+		JarURLConnection jarURLconn = null;
+		try {
+			String jarUrlTemp = "jar:" + jarFileToTest.toURI().toString() + "!/";
+			URL jarURL = new URL(jarUrlTemp);
+			jarURLconn = (JarURLConnection) jarURL.openConnection();
+		} catch (IOException ioe) {
+			watchdogError("LOAD JAR");
+		}
+
+		// figure out the entry-point (main class) is in the jar under test
+		Attributes attr = null;
+		try {
+			attr = jarURLconn.getMainAttributes();
+		} catch (IOException ioe) {
+			watchdogError("LOAD MANIFEST");
+		}
+		String mainClassName = attr.getValue(Attributes.Name.MAIN_CLASS);
+		if (mainClassName == null) {
+			watchdogError("GET MAIN CLASS");
+		}
+		return mainClassName;
+	}
+
+	/**
+	 * Loads the main method of the jar under test.
+	 * 
+	 * @param cl
+	 *            - class loader for the jar under test
+	 * @param mainClassName
+	 *            - name of the main class of the jar under test
+	 * @return main method of the jar under test
+	 */
+	private static Method getMainMethod(ClassLoader cl, String mainClassName) {
+		// load the main class from the jar under test
+		Class<?> mainClass = null;
+		try {
+			mainClass = cl.loadClass(mainClassName);
+		} catch (ClassNotFoundException cnfe) {
+			watchdogError("LOAD MAIN CLASS");
+		}
+
+		// use reflection to invoke the main method
+		Method mainMethod = null;
+		try {
+			Class<?>[] mainArgs = new Class[] { String[].class };
+			mainMethod = mainClass.getDeclaredMethod("main", mainArgs);
+		} catch (NoSuchMethodException nsme) {
+			watchdogError("ERROR: Could not load main method of jar to test.");
+		}
+		return mainMethod;
+	}
+
+	/**
+	 * Notifies the tester of errors, over the report channel if there is one,
+	 * or on standard err if not.
 	 * 
 	 * @param error
 	 *            - error to pass to tester
@@ -146,12 +587,18 @@ public class SecurityWatchdog {
 	 *            - exception to pass to tester
 	 */
 	private static void watchdogError(String error, Exception e) {
-		System.err.println("<<WATCHDOG_OUTPUT_START>>");
-		System.err.println(error);
+		StringWriter text = new StringWriter();
+		PrintWriter writer = new PrintWriter(text);
+		writer.println(error);
 		if (e != null) {
-			e.printStackTrace();
+			e.printStackTrace(writer);
+		}
+		writer.flush();
+		if (channel != null) {
+			channel.sendError("" + text);
+		} else {
+			System.err.print(text);
 		}
-		System.err.println("<<WATCHDOG_OUTPUT_END>>");
 		System.exit(0);
 	}
 
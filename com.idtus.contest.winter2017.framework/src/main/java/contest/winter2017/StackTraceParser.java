@@ -0,0 +1,301 @@
+package contest.winter2017;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Class to parse the exceptions a test prints to standard err, one line at a
+ * time, as the lines are read.
+ * <p>
+ * A line which names an exception, and is followed by a frame line, which
+ * starts with "at " after its indent, starts a stack trace. Lines in between
+ * are the rest of the exception's message. The trace goes on for as long as
+ * lines are frames, "... n more" lines, or start a cause or suppressed
+ * exception. Every other line is other error output, and the lines between
+ * two traces are joined into one error.
+ * <p>
+ * Each line is looked at once, and only a bounded number of exceptions,
+ * lines per trace, errors and characters are kept, so a test which prints
+ * without end costs time in proportion to what it prints, and no more memory
+ * than one which prints a little. A trace printed again is only kept once.
+ *
+ * @author ICT-2
+ */
+class StackTraceParser {
+	/**
+	 * Number of distinct exceptions kept.
+	 */
+	public static final int MAX_EXCEPTIONS = 32;
+
+	/**
+	 * Number of frame, cause and suppressed lines kept per trace. The JVM
+	 * itself prints at most 1024 frames of one exception.
+	 */
+	public static final int MAX_TRACE_LINES = 256;
+
+	/**
+	 * Number of distinct other errors kept.
+	 */
+	public static final int MAX_OTHER_ERRORS = 32;
+
+	/**
+	 * Number of characters kept of one line, or of one other error.
+	 */
+	public static final int MAX_CHARS = 1000;
+
+	/**
+	 * Number of lines of an exception's message kept after its first line.
+	 */
+	public static final int MAX_MESSAGE_LINES = 16;
+
+	/**
+	 * Pattern of the first line of a trace: an optional uncaught exception's
+	 * thread, a class name, and an optional message.
+	 */
+	private static final Pattern HEADER = Pattern
+			.compile("(\\Q" + ExceptionRecord.UNCAUGHT_PREFIX + "\\E[^\"]*\" )?[\\w$]+(\\.[\\w$]+)*(: .*)?");
+
+	/**
+	 * Exceptions parsed so far, in the order they were printed.
+	 */
+	private List<ExceptionRecord> exceptions = new ArrayList<ExceptionRecord>();
+
+	/**
+	 * Other errors so far, in the order they were printed.
+	 */
+	private List<String> otherErrors = new ArrayList<String>();
+
+	/**
+	 * Traces and errors kept so far.
+	 */
+	private Set<String> seen = new HashSet<String>();
+
+	/**
+	 * Last line which could start a trace, if it is not yet known whether it
+	 * does.
+	 */
+	private String header = null;
+
+	/**
+	 * Lines after the header, which are the rest of its message if a trace
+	 * follows.
+	 */
+	private List<String> message = new ArrayList<String>();
+
+	/**
+	 * Lines of other error output since the last trace.
+	 */
+	private StringBuffer other = new StringBuffer();
+
+	/**
+	 * Top exception of the trace being parsed, or null outside a trace.
+	 */
+	private ExceptionRecord trace = null;
+
+	/**
+	 * Exception of the trace whose lines are being parsed.
+	 */
+	private ExceptionRecord current = null;
+
+	/**
+	 * Number of lines of the trace being parsed which were kept.
+	 */
+	private int traceLines = 0;
+
+	/**
+	 * Parses all the lines of a string.
+	 *
+	 * @param text
+	 *            - text to parse, such as a test's whole standard err
+	 * @return the parser, finished
+	 */
+	public static StackTraceParser parse(String text) {
+		StackTraceParser parser = new StackTraceParser();
+		int start = 0;
+		while (start <= text.length()) {
+			int end = text.indexOf('\n', start);
+			if (end == -1) {
+				end = text.length();
+			}
+			parser.addLine(text.substring(start, end));
+			start = end + 1;
+		}
+		parser.finish();
+		return parser;
+	}
+
+	/**
+	 * Parses the next line.
+	 *
+	 * @param line
+	 *            - the line, without its line separator
+	 */
+	public void addLine(String line) {
+		if (line.length() > MAX_CHARS) {
+			line = line.substring(0, MAX_CHARS);
+		}
+		String trimmed = line.trim();
+
+		if (this.trace != null) {
+			if (trimmed.startsWith("at ")) {
+				if (keepTraceLine()) {
+					this.current.addFrame(trimmed.substring(3));
+				} else {
+					this.current.addOmittedFrames(1);
+				}
+				return;
+			} else if (trimmed.startsWith("... ") && trimmed.endsWith(" more")) {
+				try {
+					this.current.addOmittedFrames(Integer.parseInt(trimmed.substring(4, trimmed.length() - 5)));
+					return;
+				} catch (NumberFormatException e) {
+					// not the end of a trace
+				}
+			} else if (trimmed.startsWith("Caused by: ")) {
+				ExceptionRecord cause = new ExceptionRecord(trimmed.substring(11));
+				if (keepTraceLine()) {
+					this.current.setCause(cause);
+				}
+				this.current = cause;
+				return;
+			} else if (trimmed.startsWith("Suppressed: ")) {
+				ExceptionRecord suppressed = new ExceptionRecord(trimmed.substring(12));
+				if (keepTraceLine()) {
+					this.current.addSuppressed(suppressed);
+				}
+				this.current = suppressed;
+				return;
+			} else if (this.current.getFrames().isEmpty() && this.current.getOmittedFrames() == 0) {
+				// a cause's frames follow the rest of its message
+				if (keepTraceLine()) {
+					this.current.addMessageLine(line);
+				}
+				return;
+			}
+			endTrace();
+		}
+
+		if (trimmed.startsWith("at ") && this.header != null) {
+			// the header, and the lines since, were the start of a trace
+			endOther();
+			this.trace = new ExceptionRecord(this.header);
+			for (String messageLine : this.message) {
+				this.trace.addMessageLine(messageLine);
+			}
+			this.current = this.trace;
+			this.traceLines = 0;
+			this.header = null;
+			this.message.clear();
+			this.trace.addFrame(trimmed.substring(3));
+			return;
+		}
+		if (HEADER.matcher(line).matches()) {
+			endHeader();
+			this.header = line;
+		} else if (this.header != null && this.message.size() < MAX_MESSAGE_LINES) {
+			this.message.add(line);
+		} else {
+			endHeader();
+			addOther(line);
+		}
+	}
+
+	/**
+	 * Parses the end of the output, after its last line.
+	 */
+	public void finish() {
+		endTrace();
+		endHeader();
+		endOther();
+	}
+
+	/**
+	 * Returns the distinct exceptions parsed, in the order they were printed.
+	 *
+	 * @return the exceptions
+	 */
+	public List<ExceptionRecord> getExceptions() {
+		return this.exceptions;
+	}
+
+	/**
+	 * Returns the distinct other errors, each the lines between two traces
+	 * joined by spaces, in the order they were printed.
+	 *
+	 * @return the other errors
+	 */
+	public List<String> getOtherErrors() {
+		return this.otherErrors;
+	}
+
+	/**
+	 * Counts a line of the trace being parsed, and returns whether it is kept.
+	 *
+	 * @return true if the line is kept, or false if the trace is too long
+	 */
+	private boolean keepTraceLine() {
+		return this.traceLines++ < MAX_TRACE_LINES;
+	}
+
+	/**
+	 * Keeps the trace being parsed, unless it was seen before.
+	 */
+	private void endTrace() {
+		if (this.trace == null) {
+			return;
+		}
+		if (this.exceptions.size() < MAX_EXCEPTIONS && this.seen.add(this.trace.toString())) {
+			this.exceptions.add(this.trace);
+		}
+		this.trace = null;
+		this.current = null;
+	}
+
+	/**
+	 * Adds the last header, and the lines since, to other error output, as no
+	 * trace followed them.
+	 */
+	private void endHeader() {
+		if (this.header == null) {
+			return;
+		}
+		addOther(this.header);
+		for (String messageLine : this.message) {
+			addOther(messageLine);
+		}
+		this.header = null;
+		this.message.clear();
+	}
+
+	/**
+	 * Adds a line of other error output. Blank lines are left out, so they do
+	 * not pad the error they are joined to.
+	 *
+	 * @param line
+	 *            - the line
+	 */
+	private void addOther(String line) {
+		if (this.other.length() >= MAX_CHARS || line.trim().isEmpty()) {
+			return;
+		}
+		if (this.other.length() > 0) {
+			this.other.append(' ');
+		}
+		this.other.append(line, 0, Math.min(line.length(), MAX_CHARS - this.other.length()));
+	}
+
+	/**
+	 * Keeps the other error output since the last trace, unless it is blank
+	 * or was seen before.
+	 */
+	private void endOther() {
+		String error = this.other.toString();
+		this.other.setLength(0);
+		if (!error.trim().isEmpty() && this.otherErrors.size() < MAX_OTHER_ERRORS && this.seen.add(error)) {
+			this.otherErrors.add(error);
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package contest.winter2017;
+
+import java.util.BitSet;
+
+import org.jacoco.core.analysis.ICounter;
+
+/**
+ * Class to hold the code covered by a single test in a compact form.
+ * <p>
+ * For each class of the jar under test which the test executed, the probes hit
+ * and the status of each line are kept as bit sets. A line is covered if any
+ * of its instructions or branches ran, and missed if any of them did not, so a
+ * line which is both is partly covered. This takes a few hundred bytes per
+ * test, where a jacoco coverage builder holds a tree of counters for every
+ * class, method and line.
+ *
+ * @author ICT-2
+ */
+public class TestCoverage {
+	/**
+	 * VM names of the classes executed.
+	 */
+	private String[] classNames;
+
+	/**
+	 * First line of each class, or -1 if it has no line information.
+	 */
+	private int[] firstLines;
+
+	/**
+	 * Last line of each class, or -1 if it has no line information.
+	 */
+	private int[] lastLines;
+
+	/**
+	 * Probes hit in each class.
+	 */
+	private BitSet[] probes;
+
+	/**
+	 * Lines of each class which were at least partly covered, offset by the
+	 * class's first line.
+	 */
+	private BitSet[] coveredLines;
+
+	/**
+	 * Lines of each class which were at least partly missed, offset by the
+	 * class's first line.
+	 */
+	private BitSet[] missedLines;
+
+	/**
+	 * Constructs empty coverage with room for the given number of classes.
+	 *
+	 * @param classCount
+	 *            - number of classes executed
+	 */
+	TestCoverage(int classCount) {
+		this.classNames = new String[classCount];
+		this.firstLines = new int[classCount];
+		this.lastLines = new int[classCount];
+		this.probes = new BitSet[classCount];
+		this.coveredLines = new BitSet[classCount];
+		this.missedLines = new BitSet[classCount];
+	}
+
+	/**
+	 * Sets the coverage of one class.
+	 *
+	 * @param index
+	 *            - index of the class
+	 * @param className
+	 *            - VM name of the class
+	 * @param firstLine
+	 *            - first line of the class
+	 * @param lastLine
+	 *            - last line of the class
+	 * @param probes
+	 *            - probes hit in the class
+	 * @param coveredLines
+	 *            - lines at least partly covered, offset by the first line
+	 * @param missedLines
+	 *            - lines at least partly missed, offset by the first line
+	 */
+	void setClass(int index, String className, int firstLine, int lastLine, BitSet probes, BitSet coveredLines,
+			BitSet missedLines) {
+		this.classNames[index] = className;
+		this.firstLines[index] = firstLine;
+		this.lastLines[index] = lastLine;
+		this.probes[index] = probes;
+		this.coveredLines[index] = coveredLines;
+		this.missedLines[index] = missedLines;
+	}
+
+	/**
+	 * Returns the number of classes executed.
+	 *
+	 * @return the number of classes executed
+	 */
+	public int getClassCount() {
+		return this.classNames.length;
+	}
+
+	/**
+	 * Returns the VM name of a class executed.
+	 *
+	 * @param index
+	 *            - index of the class
+	 * @return VM name of the class
+	 */
+	public String getClassName(int index) {
+		return this.classNames[index];
+	}
+
+	/**
+	 * Returns the first line of a class executed.
+	 *
+	 * @param index
+	 *            - index of the class
+	 * @return first line of the class, or -1 if it has no line information
+	 */
+	public int getFirstLine(int index) {
+		return this.firstLines[index];
+	}
+
+	/**
+	 * Returns the last line of a class executed.
+	 *
+	 * @param index
+	 *            - index of the class
+	 * @return last line of the class, or -1 if it has no line information
+	 */
+	public int getLastLine(int index) {
+		return this.lastLines[index];
+	}
+
+	/**
+	 * Returns the probes hit in a class executed.
+	 *
+	 * @param index
+	 *            - index of the class
+	 * @return probes hit in the class
+	 */
+	public BitSet getProbes(int index) {
+		return (BitSet) this.probes[index].clone();
+	}
+
+	/**
+	 * Returns the status of a line of a class executed, as one of jacoco's
+	 * ICounter statuses.
+	 *
+	 * @param index
+	 *            - index of the class
+	 * @param line
+	 *            - line to get the status of
+	 * @return EMPTY, NOT_COVERED, PARTLY_COVERED or FULLY_COVERED
+	 */
+	public int getLineStatus(int index, int line) {
+		int offset = line - this.firstLines[index];
+		if (offset < 0) {
+			return ICounter.EMPTY;
+		}
+
+		int status = ICounter.EMPTY;
+		if (this.coveredLines[index].get(offset)) {
+			status |= ICounter.FULLY_COVERED;
+		}
+		if (this.missedLines[index].get(offset)) {
+			status |= ICounter.NOT_COVERED;
+		}
+		return status;
+	}
+
+	/**
+	 * Returns the number of lines at least partly covered by the test.
+	 *
+	 * @return the number of lines covered
+	 */
+	public int getCoveredLineCount() {
+		int count = 0;
+		for (BitSet lines : this.coveredLines) {
+			count += lines.cardinality();
+		}
+		return count;
+	}
+}
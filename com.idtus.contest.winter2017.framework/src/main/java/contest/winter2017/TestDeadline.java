@@ -0,0 +1,165 @@
+package contest.winter2017;
+
+import java.util.Arrays;
+
+/**
+ * Class to choose how long a test may run before it is killed.
+ * <p>
+ * With a fixed deadline, every test may run for the maximum time. With an
+ * adaptive deadline, once enough tests have finished, a test may only run for a
+ * multiple of the 99th percentile of recent test times, though never for less
+ * than a second or more than the maximum. Jars whose tests finish quickly then
+ * lose little time to tests which hang.
+ * <p>
+ * A test which is killed counts as having run for the deadline it was killed
+ * at. Since that only bounds how long it would have run, while more than 1% of
+ * recent tests were killed the deadline doubles with every test killed, and
+ * does not shrink, so slow inputs are sampled again rather than cut off for
+ * the rest of the run.
+ *
+ * @author ICT-2
+ */
+class TestDeadline {
+	/**
+	 * Number of recent test times the percentile is taken from.
+	 */
+	private static final int WINDOW = 1_000;
+
+	/**
+	 * Number of tests which must finish before the deadline adapts.
+	 */
+	private static final int MIN_SAMPLES = 20;
+
+	/**
+	 * Shortest adaptive deadline, in milliseconds.
+	 */
+	private static final long MIN_MILLIS = 1_000;
+
+	/**
+	 * Longest time a test may run, in milliseconds.
+	 */
+	private final long maxMillis;
+
+	/**
+	 * Multiple of the 99th percentile test time a test may run for, or 0 for
+	 * a fixed deadline.
+	 */
+	private final double factor;
+
+	/**
+	 * Recent test times, in milliseconds.
+	 */
+	private final long[] times = new long[WINDOW];
+
+	/**
+	 * Whether each recent test was killed.
+	 */
+	private final boolean[] timedOut = new boolean[WINDOW];
+
+	/**
+	 * Number of recent tests which were killed.
+	 */
+	private int timeouts = 0;
+
+	/**
+	 * Number of test times recorded.
+	 */
+	private int count = 0;
+
+	/**
+	 * Current deadline, in milliseconds.
+	 */
+	private volatile long millis;
+
+	/**
+	 * Constructs a deadline with the given maximum and percentile multiple.
+	 *
+	 * @param maxMillis
+	 *            - longest time a test may run, in milliseconds
+	 * @param factor
+	 *            - multiple of the 99th percentile test time a test may run
+	 *            for, or 0 for a fixed deadline
+	 */
+	public TestDeadline(long maxMillis, double factor) {
+		this.maxMillis = maxMillis;
+		this.factor = factor;
+		this.millis = maxMillis;
+	}
+
+	/**
+	 * Returns the longest time a test may run, whatever recent tests took.
+	 *
+	 * @return the maximum deadline, in milliseconds
+	 */
+	public long getMaxMillis() {
+		return this.maxMillis;
+	}
+
+	/**
+	 * Returns how long the next test may run.
+	 *
+	 * @return the current deadline, in milliseconds
+	 */
+	public long getMillis() {
+		return this.millis;
+	}
+
+	/**
+	 * Records the time a test took to finish.
+	 *
+	 * @param testMillis
+	 *            - time the test took, in milliseconds
+	 */
+	public synchronized void record(long testMillis) {
+		add(testMillis, false);
+	}
+
+	/**
+	 * Records a test which was killed once time was up.
+	 *
+	 * @param limitMillis
+	 *            - deadline the test was killed at, in milliseconds
+	 */
+	public synchronized void recordTimeout(long limitMillis) {
+		add(limitMillis, true);
+	}
+
+	/**
+	 * Adds a test time to the recent test times, and updates the deadline.
+	 *
+	 * @param testMillis
+	 *            - time the test took, or the deadline it was killed at, in
+	 *            milliseconds
+	 * @param killed
+	 *            - whether the test was killed
+	 */
+	private void add(long testMillis, boolean killed) {
+		if (this.factor == 0) {
+			return;
+		}
+
+		int slot = this.count % WINDOW;
+		if (this.count >= WINDOW && this.timedOut[slot]) {
+			this.timeouts--;
+		}
+		this.times[slot] = testMillis;
+		this.timedOut[slot] = killed;
+		if (killed) {
+			this.timeouts++;
+		}
+		this.count++;
+		if (this.count < MIN_SAMPLES) {
+			return;
+		}
+
+		long[] sorted = Arrays.copyOf(this.times, Math.min(this.count, WINDOW));
+		Arrays.sort(sorted);
+		long p99 = sorted[(int) Math.ceil(0.99 * sorted.length) - 1];
+		long adaptive = Math.max(MIN_MILLIS, (long) (p99 * this.factor));
+		// while too many tests are killed, the deadline only grows
+		if (this.timeouts * 100 > sorted.length) {
+			adaptive = Math.max(adaptive, killed ? this.millis * 2 : this.millis);
+		}
+		this.millis = Math.min(this.maxMillis, adaptive);
+	}
+}
@@ -4,9 +4,8 @@ import java.util.List;
 import java.util.Random;
 
 /**
- * Abstract class to generate tests to be run from the Tester. Note, due to
- * memory constraints, all but the last five coverage builders are removed from
- * their respective outputs.
+ * Abstract class to generate tests to be run from the Tester. Every output
+ * keeps the compact coverage of its test for the whole run.
  * 
  * @author ICT-2
  */
@@ -54,6 +53,18 @@ public abstract class TestGenerator {
 	 */
 	public abstract Object[] nextTest();
 
+	/**
+	 * Tells the generator that the oldest of its tests whose output has not
+	 * been recorded yet ended without an output, so the outputs list will not
+	 * hold one for it. Tests whose outputs were recorded before it are already
+	 * in the outputs list.
+	 * <p>
+	 * Generators which do not match outputs to the tests they generated may
+	 * ignore this.
+	 */
+	public void testDropped() {
+	}
+
 	/**
 	 * Returns a random integer number.
 	 * <p>
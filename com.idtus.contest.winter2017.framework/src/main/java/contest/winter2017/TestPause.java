@@ -0,0 +1,250 @@
+package contest.winter2017;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Class to pause and resume testing.
+ * <p>
+ * Threads about to start a test wait on this pause while testing is paused,
+ * without using any CPU. Processes running tests are registered with the pause,
+ * and on POSIX systems each registered process, and every process it started,
+ * is stopped with SIGSTOP when testing is paused and continued with SIGCONT
+ * when it resumes. Time spent paused is counted so deadlines of running tests
+ * can be moved back by it.
+ * <p>
+ * The processes a process started can only be found from Java 9 on, so on Java
+ * 8 only the registered processes themselves are stopped.
+ *
+ * @author ICT-2
+ */
+class TestPause {
+	/**
+	 * Whether processes can be stopped and continued with kill.
+	 */
+	private static final boolean POSIX = !System.getProperty("os.name").startsWith("Windows");
+
+	/**
+	 * Whether testing is paused.
+	 */
+	private boolean paused = false;
+
+	/**
+	 * Time testing was last paused, in milliseconds since the epoch.
+	 */
+	private long pausedSince = 0;
+
+	/**
+	 * Total time testing has been paused before the current pause, in
+	 * milliseconds.
+	 */
+	private long pausedTotal = 0;
+
+	/**
+	 * Processes running tests.
+	 */
+	private Set<Process> processes = new HashSet<Process>();
+
+	/**
+	 * Returns whether testing is paused.
+	 *
+	 * @return true if testing is paused, or false if not
+	 */
+	public synchronized boolean isPaused() {
+		return this.paused;
+	}
+
+	/**
+	 * Pauses or resumes testing, stopping or continuing every registered
+	 * process.
+	 *
+	 * @param paused
+	 *            - whether testing should be paused
+	 */
+	public synchronized void setPaused(boolean paused) {
+		if (paused == this.paused) {
+			return;
+		}
+		this.paused = paused;
+		if (paused) {
+			this.pausedSince = System.currentTimeMillis();
+			for (Process process : this.processes) {
+				signal(process, "STOP");
+			}
+		} else {
+			this.pausedTotal += System.currentTimeMillis() - this.pausedSince;
+			for (Process process : this.processes) {
+				signal(process, "CONT");
+			}
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Waits while testing is paused.
+	 *
+	 * @param killed
+	 *            - whether testing has been killed, which ends the wait
+	 * @return true if testing may go on, or false if it was killed or the
+	 *         thread was interrupted
+	 */
+	public synchronized boolean awaitResume(AtomicBoolean killed) {
+		while (this.paused) {
+			if (killed.get()) {
+				return false;
+			}
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Wakes every thread waiting for testing to resume, so they can see
+	 * testing was killed.
+	 */
+	public synchronized void wake() {
+		notifyAll();
+	}
+
+	/**
+	 * Returns the total time testing has been paused, including the current
+	 * pause.
+	 *
+	 * @return time paused, in milliseconds
+	 */
+	public synchronized long getPausedMillis() {
+		if (this.paused) {
+			return this.pausedTotal + System.currentTimeMillis() - this.pausedSince;
+		}
+		return this.pausedTotal;
+	}
+
+	/**
+	 * Returns the time a test must end by, moved back by however long testing
+	 * has been paused since it started.
+	 *
+	 * @param start
+	 *            - time the test started, in milliseconds since the epoch
+	 * @param pausedAtStart
+	 *            - time paused when the test started, from getPausedMillis
+	 * @param maxMillis
+	 *            - time the test may run, in milliseconds
+	 * @return the test's deadline, in milliseconds since the epoch
+	 */
+	public long getDeadline(long start, long pausedAtStart, long maxMillis) {
+		return start + maxMillis + getPausedMillis() - pausedAtStart;
+	}
+
+	/**
+	 * Registers a process running tests, stopping it at once if testing is
+	 * paused.
+	 *
+	 * @param process
+	 *            - process to register
+	 */
+	public synchronized void register(Process process) {
+		this.processes.add(process);
+		if (this.paused) {
+			signal(process, "STOP");
+		}
+	}
+
+	/**
+	 * Unregisters a process, continuing it if testing is paused so it is not
+	 * left stopped.
+	 *
+	 * @param process
+	 *            - process to unregister
+	 */
+	public synchronized void unregister(Process process) {
+		if (this.processes.remove(process) && this.paused) {
+			signal(process, "CONT");
+		}
+	}
+
+	/**
+	 * Sends a signal to a process and every process it started.
+	 *
+	 * @param process
+	 *            - process to signal
+	 * @param signal
+	 *            - name of the signal, without SIG
+	 */
+	private static void signal(Process process, String signal) {
+		if (!POSIX || !process.isAlive()) {
+			return;
+		}
+
+		List<Long> pids = getPids(process);
+		if (pids.isEmpty()) {
+			return;
+		}
+		// a stopped tree is continued from its leaves up
+		if (signal.equals("CONT")) {
+			Collections.reverse(pids);
+		}
+
+		String[] command = new String[pids.size() + 2];
+		command[0] = "kill";
+		command[1] = "-" + signal;
+		for (int i = 0; i < pids.size(); i++) {
+			command[i + 2] = "" + pids.get(i);
+		}
+		try {
+			Runtime.getRuntime().exec(command).waitFor();
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns the id of a process followed by the ids of every process it
+	 * started.
+	 *
+	 * @param process
+	 *            - process to get the ids of
+	 * @return the process ids found, which are empty if even the process's own
+	 *         id could not be found
+	 */
+	private static List<Long> getPids(Process process) {
+		List<Long> pids = new ArrayList<Long>();
+		try {
+			// Java 9 and later
+			pids.add((Long) Process.class.getMethod("pid").invoke(process));
+			Method pid = Class.forName("java.lang.ProcessHandle").getMethod("pid");
+			Stream<?> descendants = (Stream<?>) Process.class.getMethod("descendants").invoke(process);
+			Iterator<?> handles = descendants.iterator();
+			while (handles.hasNext()) {
+				pids.add((Long) pid.invoke(handles.next()));
+			}
+		} catch (ReflectiveOperationException e) {
+			if (pids.isEmpty()) {
+				// Java 8 keeps the id of a POSIX process in a private field
+				try {
+					Field pid = process.getClass().getDeclaredField("pid");
+					pid.setAccessible(true);
+					pids.add((long) pid.getInt(process));
+				} catch (ReflectiveOperationException | RuntimeException e2) {
+					// no way to find the process id
+				}
+			}
+		}
+		return pids;
+	}
+}
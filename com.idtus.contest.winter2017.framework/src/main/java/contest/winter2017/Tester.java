@@ -1,28 +1,38 @@
 package contest.winter2017;
 
-import java.io.BufferedReader;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.JarURLConnection;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.Attributes;
+import java.util.stream.Stream;
 
-import org.jacoco.core.analysis.Analyzer;
-import org.jacoco.core.analysis.CoverageBuilder;
-import org.jacoco.core.analysis.IClassCoverage;
-import org.jacoco.core.tools.ExecFileLoader;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
 
 import javafx.beans.property.SimpleDoubleProperty;
 
@@ -83,6 +93,99 @@ public class Tester {
 	 */
 	public static final int DEFAULT_BB_TESTS = 1_000;
 
+	/**
+	 * Minimum number of tests to run at once.
+	 */
+	public static final int MIN_WORKERS = 1;
+
+	/**
+	 * Default number of tests to run at once.
+	 */
+	public static final int DEFAULT_WORKERS = 1;
+
+	/**
+	 * Minimum time in milliseconds a test may run before it is killed.
+	 */
+	public static final int MIN_TEST_TIMEOUT = 1;
+
+	/**
+	 * Default time in milliseconds a test may run before it is killed.
+	 */
+	public static final int DEFAULT_TEST_TIMEOUT = 15_000;
+
+	/**
+	 * Minimum multiple of the 99th percentile test time a test may run for.
+	 */
+	public static final double MIN_TIMEOUT_FACTOR = 1;
+
+	/**
+	 * Minimum number of characters of each output stream kept per test.
+	 */
+	public static final int MIN_MAX_OUTPUT = 64;
+
+	/**
+	 * Default number of characters of each output stream kept per test.
+	 */
+	public static final int DEFAULT_MAX_OUTPUT = 65_536;
+
+	/**
+	 * Minimum number of permission checks between the stacks sampled.
+	 */
+	public static final int MIN_PERMISSION_STACKS = 1;
+
+	/**
+	 * Milliseconds to wait for the coverage of a finished test to arrive.
+	 */
+	public static final int COVERAGE_WAIT = 2_000;
+
+	/**
+	 * Milliseconds to wait for the coverage of a test which ran out of time,
+	 * before it is killed.
+	 */
+	public static final int PARTIAL_COVERAGE_WAIT = 500;
+
+	/**
+	 * Minimum number of tests a long-lived watchdog runs before it is
+	 * replaced.
+	 */
+	public static final int MIN_BATCH_SIZE = 1;
+
+	/**
+	 * Number of tests run after other tests in a long-lived watchdog which are
+	 * run again alone, to check that tests do not leak state into later tests.
+	 */
+	public static final int LEAK_CHECKS = 3;
+
+	/**
+	 * Number of predefined tests run with each JVM profile while calibrating.
+	 */
+	public static final int CALIBRATION_TESTS = 3;
+
+	/**
+	 * Number of times each calibration test is run with each JVM profile.
+	 */
+	public static final int CALIBRATION_ROUNDS = 2;
+
+	/**
+	 * Minimum number of tests to run between writes of the jacoco output file.
+	 */
+	public static final int MIN_FLUSH_TESTS = 1;
+
+	/**
+	 * Default number of tests to run between writes of the jacoco output file.
+	 */
+	public static final int DEFAULT_FLUSH_TESTS = 1_000;
+
+	/**
+	 * Minimum seconds between writes of the jacoco output file.
+	 */
+	public static final int MIN_FLUSH_SECONDS = 1;
+
+	/**
+	 * Default seconds between writes of the jacoco output file.
+	 */
+	public static final int DEFAULT_FLUSH_SECONDS = 60;
+
 	//////////////////////////////////////////
 	// INSTANCE MEMBERS
 	//////////////////////////////////////////
@@ -93,9 +196,9 @@ public class Tester {
 	private String guiID;
 
 	/**
-	 * Path to the SecurityWatchdog class.
+	 * Path of the thin jar of the classes the SecurityWatchdog needs.
 	 */
-	private String watchdogPath = null;
+	private String watchdogJarPath = null;
 
 	/**
 	 * Path of the jar to test as a String.
@@ -128,9 +231,51 @@ public class Tester {
 	private Integer timeGoal = DEFAULT_TIME_GOAL;
 
 	/**
-	 * Maximum time per test.
+	 * Number of tests to run at once, default 1.
+	 */
+	private Integer workers = DEFAULT_WORKERS;
+
+	/**
+	 * Number of tests to run between writes of the jacoco output file, default
+	 * 1000.
+	 */
+	private Integer flushTests = DEFAULT_FLUSH_TESTS;
+
+	/**
+	 * Seconds between writes of the jacoco output file, default 60 seconds.
+	 */
+	private Integer flushSeconds = DEFAULT_FLUSH_SECONDS;
+
+	/**
+	 * Number of tests recorded since the jacoco output file was last written.
+	 */
+	private int testsSinceFlush = 0;
+
+	/**
+	 * Time the jacoco output file was last written.
+	 */
+	private long lastFlush = System.currentTimeMillis();
+
+	/**
+	 * Number of characters of each output stream kept per test.
+	 */
+	private int maxOutput = DEFAULT_MAX_OUTPUT;
+
+	/**
+	 * Number of tests a long-lived watchdog runs before it is replaced,
+	 * unlimited by default. Falls to 1 if tests leak state.
 	 */
-	private Integer maxMillisPerTest = 15_000;
+	private volatile int batchSize = Integer.MAX_VALUE;
+
+	/**
+	 * Number of leak checks still to run.
+	 */
+	private AtomicInteger leakChecksLeft = new AtomicInteger(LEAK_CHECKS);
+
+	/**
+	 * Time a test may run before it is killed, default 15 seconds.
+	 */
+	private TestDeadline deadline = new TestDeadline(DEFAULT_TEST_TIMEOUT, 0);
 
 	/**
 	 * Option to be silent.
@@ -143,9 +288,130 @@ public class Tester {
 	private Boolean watchdog;
 
 	/**
-	 * Whether testing is paused.
+	 * Option to run tests in long-lived watchdog JVMs.
+	 */
+	private boolean persistentWorkers = false;
+
+	/**
+	 * Option to run tests on an offline instrumented copy of the jar under
+	 * test, rather than with the jacoco agent.
+	 */
+	private boolean offlineInstrumentation = false;
+
+	/**
+	 * Path of the jar tests run, which is the offline instrumented copy of the
+	 * jar under test when instrumenting offline.
+	 */
+	private String jarToRunPath = null;
+
+	/**
+	 * Name of the main class of the jar under test.
+	 */
+	private String mainClassName = null;
+
+	/**
+	 * Option to build a class data sharing archive with which tests start
+	 * faster.
+	 */
+	private boolean classDataSharing = false;
+
+	/**
+	 * Class data sharing archive tests start with, or null if there is none.
+	 */
+	private File sharedArchive = null;
+
+	/**
+	 * Servers the jacoco runtimes of tests send their coverage to, one per
+	 * worker slot.
+	 */
+	private CoverageServer[] coverageServers = null;
+
+	/**
+	 * Server the security watchdogs of tests send their reports to.
+	 */
+	private ReportServer reportServer = null;
+
+	/**
+	 * Option to count the edges between basic blocks each test hits.
+	 */
+	private boolean edgeCoverage = false;
+
+	/**
+	 * Edges hit by all tests run so far, or null without edge coverage.
+	 */
+	private EdgeTracker edgeTracker = null;
+
+	/**
+	 * Option to time tests with several JVM profiles, and start tests with the
+	 * fastest.
+	 */
+	private boolean tuneJvm = false;
+
+	/**
+	 * JVM profile tests start with, or null for the JVM's defaults.
+	 */
+	private JvmProfile jvmProfile = null;
+
+	/**
+	 * JVM profiles calibrated by init, or null if none were.
+	 */
+	private List<JvmProfile> jvmProfiles = null;
+
+	/**
+	 * Option to run each test in a scratch working directory of its own.
+	 */
+	private boolean scratchDirs = false;
+
+	/**
+	 * Scratch working directories of tests, or null if tests run in the
+	 * tester's working directory.
+	 */
+	private ScratchDirs scratch = null;
+
+	/**
+	 * Shutdown hook which deletes the scratch directories, or null if there
+	 * are none.
+	 */
+	private Thread scratchOnExit = null;
+
+	/**
+	 * Commands which run a test in its own JVM, up to the test's parameters,
+	 * by slot, without the options which collect its coverage. They only
+	 * change when init runs.
+	 */
+	private List<List<String>> testCommands = null;
+
+	/**
+	 * Number of coverage sessions started, which numbers each test's session.
+	 */
+	private AtomicInteger coverageSessions = new AtomicInteger(0);
+
+	/**
+	 * Option to start each test's watchdog ahead of the test.
+	 */
+	private boolean prestartWatchdogs = false;
+
+	/**
+	 * Number of permission checks between the stacks the watchdog samples, or
+	 * 0 for none.
+	 */
+	private int permissionStacks = 0;
+
+	/**
+	 * Watchdogs started ahead of their tests, one pool per worker slot, or
+	 * null if tests start their own.
+	 */
+	private WatchdogPool[] watchdogPools = null;
+
+	/**
+	 * Long-lived watchdogs, one per worker slot, started as they are needed.
+	 */
+	private WatchdogWorker[] watchdogWorkers;
+
+	/**
+	 * Pause of testing, which stops running tests while testing is paused.
 	 */
-	private AtomicBoolean isPaused = new AtomicBoolean(false);
+	private TestPause pause = new TestPause();
 
 	/**
 	 * Whether this tester is killed
@@ -177,6 +443,16 @@ public class Tester {
 	 */
 	private double percentCovered = 0.0;
 
+	/**
+	 * Map from the jacoco probes of the jar under test to the code they cover.
+	 */
+	private ProbeMap probeMap = null;
+
+	/**
+	 * Coverage of all tests run so far, which every worker merges into.
+	 */
+	private CoverageTracker coverageTracker = null;
+
 	/**
 	 * ParameterFactory that can be used to help figure out parameter signatures
 	 * from the black-box jars.
@@ -189,9 +465,9 @@ public class Tester {
 	private List<Output> outputs = Collections.synchronizedList(new ArrayList<Output>(2000));
 
 	/**
-	 * Set to hold unique exceptions that have thus far been encountered.
+	 * Buckets of the unique errors that have thus far been encountered.
 	 */
-	private HashSet<String> exceptionSet = new HashSet<String>();
+	private CrashBuckets crashBuckets = new CrashBuckets();
 
 	/**
 	 * Initialize the tester by loading up the jar to test, and then extracting
@@ -204,21 +480,28 @@ public class Tester {
 	 *            for output
 	 * @param initJacocoAgentJarPath
 	 *            - String representing path of the jacoco agent jar
+	 * @param initWorkers
+	 *            - String representing the number of tests to run at once
 	 * @return boolean - false if initialization encounters an Exception, true
 	 *         if it does not
 	 */
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public boolean init(Map parameterBounds, String initJarToTestPath, String initJacocoOutputDirPath,
-			String initJacocoAgentJarPath, String initbbTests, String initTimeGoal, String initGuiID, boolean initQuiet,
-			boolean initWatchdog) {
+			String initJacocoAgentJarPath, String initbbTests, String initTimeGoal, String initWorkers, String initGuiID,
+			boolean initQuiet, boolean initWatchdog) {
 
 		this.guiID = initGuiID;
-		this.watchdogPath = Tester.class.getResource("Tester.class").getPath();
-		this.watchdogPath = this.watchdogPath.replace("contest/winter2017/Tester.class", "");
 		this.jarToTestPath = initJarToTestPath;
 		this.jacocoOutputDirPath = initJacocoOutputDirPath;
 		this.jacocoAgentJarPath = initJacocoAgentJarPath;
 
+		// tests run elsewhere, so every path they are given must be absolute
+		if (this.scratchDirs) {
+			this.jarToTestPath = new File(initJarToTestPath).getAbsolutePath();
+			this.jacocoOutputDirPath = new File(initJacocoOutputDirPath).getAbsolutePath();
+			this.jacocoAgentJarPath = new File(initJacocoAgentJarPath).getAbsolutePath();
+		}
+
 		// parse toolChain argument
 		this.quiet = initQuiet;
 		this.watchdog = initWatchdog;
@@ -257,6 +540,24 @@ public class Tester {
 			}
 		}
 
+		// parse workers if it exists
+		if (initWorkers != null) {
+			int tempWorkers = -1;
+			try {
+				tempWorkers = Integer.parseInt(initWorkers);
+			} catch (NumberFormatException e) {
+				initError("Option workers could not be parsed to an int.");
+				return false;
+			}
+			if (tempWorkers < MIN_WORKERS) {
+				initError("Minimum value of workers is " + MIN_WORKERS + ".");
+				return false;
+			} else {
+				this.workers = tempWorkers;
+			}
+		}
+		this.watchdogWorkers = new WatchdogWorker[this.workers];
+
 		File jarFileToTest = new File(this.jarToTestPath);
 		StringBuffer outputFilePath = new StringBuffer(300);
 		// delete previous command line runs if running from the command line
@@ -317,6 +618,102 @@ public class Tester {
 			initError("Cannot test jar without a main class.");
 			return false;
 		}
+		this.mainClassName = mainClassName;
+
+		// analyze the classes of the jar under test once, rather than after
+		// every test
+		try {
+			this.probeMap = new ProbeMap(jarFileToTest);
+			this.coverageTracker = new CoverageTracker(this.probeMap);
+		} catch (IOException | RuntimeException e) {
+			initError("Could not analyze classes from jar to test.");
+			return false;
+		}
+
+		// instrument the classes of the jar under test once, rather than in
+		// every test
+		this.jarToRunPath = this.jarToTestPath;
+		if (this.offlineInstrumentation || this.edgeCoverage) {
+			this.offlineInstrumentation = true;
+			try {
+				File instrumented = OfflineJar.instrument(jarFileToTest, new File(this.jacocoOutputDirPath));
+				if (this.edgeCoverage) {
+					instrumented = EdgeJar.instrument(instrumented, new File(this.jacocoOutputDirPath));
+				}
+				this.jarToRunPath = instrumented.getPath();
+			} catch (IOException | RuntimeException e) {
+				initError("Could not instrument jar to test.");
+				return false;
+			}
+		}
+
+		// each slot's tests count edges in a map the tester reads in place
+		if (this.edgeCoverage && this.edgeTracker == null) {
+			try {
+				this.edgeTracker = new EdgeTracker(new File(this.jacocoOutputDirPath),
+						jarFileToTest.getName().replaceAll("\\.", "_"), this.workers);
+			} catch (IOException e) {
+				initError("Could not create edge maps.");
+				return false;
+			}
+		}
+
+		// tests send their coverage straight to this tester, each slot to a
+		// server of its own
+		try {
+			if (this.coverageServers == null || this.coverageServers.length != this.workers) {
+				closeCoverageServers();
+				this.coverageServers = new CoverageServer[this.workers];
+				for (int slot = 0; slot < this.workers; slot++) {
+					this.coverageServers[slot] = new CoverageServer();
+					this.coverageServers[slot].start();
+				}
+			}
+		} catch (IOException e) {
+			closeCoverageServers();
+			initError("Could not start coverage server.");
+			return false;
+		}
+
+		// watchdogs report permissions and exceptions on a channel of their
+		// own, apart from the output of the jar under test
+		try {
+			if (this.reportServer == null) {
+				this.reportServer = new ReportServer();
+				this.reportServer.start();
+			}
+		} catch (IOException e) {
+			initError("Could not start report server.");
+			return false;
+		}
+
+		// every test gets an empty working directory, deleted on exit
+		closeScratch();
+		if (this.scratchDirs) {
+			try {
+				ScratchDirs scratch = new ScratchDirs(jarFileToTest.getName().replaceAll("\\.", "_") + "_scratch",
+						this.workers);
+				this.scratchOnExit = new Thread() {
+					@Override
+					public void run() {
+						scratch.close();
+					}
+				};
+				Runtime.getRuntime().addShutdownHook(this.scratchOnExit);
+				this.scratch = scratch;
+			} catch (IOException e) {
+				initError("Could not create scratch directories.");
+				return false;
+			}
+		}
+
+		// watchdogs only need a few classes, not the whole framework
+		try {
+			this.watchdogJarPath = WatchdogLauncher.writeJar(new File(this.jacocoOutputDirPath)).getPath();
+		} catch (IOException e) {
+			initError("Could not write watchdog jar.");
+			return false;
+		}
 
 		// only get test bounds if they were not supplied
 		this.predefinedTests = new ArrayList<Test>();
@@ -373,56 +770,403 @@ public class Tester {
 		// instantiating a new Parameter Factory using the Test Bounds map
 		this.parameterFactory = new ParameterFactory(mainClassTestBoundsMap);
 
+		// tests start with the JVM options they ran fastest with
+		this.jvmProfile = null;
+		this.jvmProfiles = null;
+		if (this.tuneJvm) {
+			tuneJvm();
+		}
+
+		// a training run archives the classes every test loads; tests start
+		// without an archive if it cannot be built
+		if (this.classDataSharing) {
+			String mode = this.persistentWorkers ? "_worker" : poolsWatchdogs() ? "_pooled" : "";
+			File archive = new File(this.jacocoOutputDirPath,
+					jarFileToTest.getName().replaceAll("\\.", "_") + mode + ".jsa");
+			String[] trainingCommand;
+			byte[] trainingInput;
+			if (this.persistentWorkers) {
+				// one test without arguments, then the end of testing, a
+				// count of -1
+				trainingCommand = watchdogWorkerCommand(0);
+				try {
+					byte[] test = WatchdogWorker.testMessage(new Object[0], newCoverageSession(0));
+					trainingInput = Arrays.copyOf(test, test.length + 4);
+					Arrays.fill(trainingInput, test.length, trainingInput.length, (byte) -1);
+				} catch (IOException e) {
+					trainingInput = null;
+				}
+			} else if (poolsWatchdogs()) {
+				// one test without arguments
+				trainingCommand = watchdogPoolCommand(0);
+				try {
+					trainingInput = WatchdogPool.testMessage(new Object[0], newCoverageSession(0), edgeMap(0), 0);
+				} catch (IOException e) {
+					trainingInput = null;
+				}
+			} else {
+				trainingCommand = withCoverage(testCommand(0), 0, newCoverageSession(0));
+				trainingInput = new byte[0];
+			}
+			if (trainingInput != null
+					&& WatchdogLauncher.trainArchive(trainingCommand, trainingInput, archive,
+							this.deadline.getMaxMillis())) {
+				this.sharedArchive = archive;
+			} else if (!this.quiet) {
+				System.out.println("Class data sharing is not available, tests will start without it.");
+			}
+		}
+
+		// a test's command is its slot's command followed by the test's
+		// parameters
+		List<List<String>> testCommands = new ArrayList<List<String>>();
+		for (int slot = 0; slot < this.workers; slot++) {
+			testCommands.add(Collections.unmodifiableList(Arrays.asList(testCommand(slot))));
+		}
+		this.testCommands = testCommands;
+
 		return true;
 	}
 
 	/**
-	 * Prints an initialization error.
+	 * Sets whether tests run in long-lived watchdog JVMs, rather than one JVM
+	 * per test. Long-lived watchdogs always monitor permissions. Must be set
+	 * before testing starts.
 	 * 
-	 * @param message
-	 *            - information about the initialization error
+	 * @param persistentWorkers
+	 *            - whether to run tests in long-lived watchdog JVMs
 	 */
-	private void initError(String message) {
-		System.out.println("ERROR: " + INIT_ERROR_MSSG);
-		System.out.println(message);
+	public void setPersistentWorkers(boolean persistentWorkers) {
+		this.persistentWorkers = persistentWorkers;
 	}
 
 	/**
-	 * Executes predefined tests on the jar under test.
-	 * <p>
-	 * This is the half of the framework that IDT has completed. We are able to
-	 * pull basic tests directly from the executable jar. We are able to run the
-	 * tests and assess the output as PASS/FAIL.
+	 * Sets whether tests run on a copy of the jar under test instrumented once
+	 * by init, rather than with the jacoco agent instrumenting its classes in
+	 * every test. Must be set before init.
 	 * 
-	 * ICT-2 has made one minor change to this method. If toolChain mode is
-	 * used, this method is now silent.
+	 * @param offlineInstrumentation
+	 *            - whether to instrument the jar under test offline
 	 */
-	public void executeBasicTests() {
-		// iterate through the lists of tests and execute each one
-		for (Test test : this.predefinedTests) {
-			if (isKilled.get()) {
-				return;
-			}
-
-			// instrument the code to code coverage metrics, execute the test
-			// with given parameters, then show the output
-			Output output = instrumentAndExecuteCode(test.getParameters().toArray());
-			if (output != null) {
-				printBasicTestOutput(output);
+	public void setOfflineInstrumentation(boolean offlineInstrumentation) {
+		this.offlineInstrumentation = offlineInstrumentation;
+	}
 
-				// determine the result of the test based on expected
-				// output/error regex
-				if (output.getStdOutString().matches(test.getStdOutExpectedResultRegex())
-						&& output.getStdErrString().matches(test.getStdErrExpectedResultRegex())) {
-					if (!this.quiet) {
-						System.out.println("basic test result: PASS");
-					}
+	/**
+	 * Sets whether tests count the edges between basic blocks of the jar under
+	 * test they hit, in a map shared with the tester, and the test generator
+	 * is told how many new edges each test found. Edges are counted in a copy
+	 * of the offline instrumented jar, so this implies offline
+	 * instrumentation. Must be set before init.
+	 * 
+	 * @param edgeCoverage
+	 *            - whether to count the edges tests hit
+	 */
+	public void setEdgeCoverage(boolean edgeCoverage) {
+		this.edgeCoverage = edgeCoverage;
+	}
 
-					this.passCount++;
-				} else {
-					if (!this.quiet) {
-						System.out.println("basic test result: FAIL ");
-					}
+	/**
+	 * Sets whether init times a few predefined tests with each of several JVM
+	 * profiles, and starts tests with the fastest profile which covers the
+	 * same code as the JVM's defaults. Must be set before init.
+	 * 
+	 * @param tuneJvm
+	 *            - whether to calibrate the JVM options tests start with
+	 */
+	public void setTuneJvm(boolean tuneJvm) {
+		this.tuneJvm = tuneJvm;
+	}
+
+	/**
+	 * Sets whether each test runs in a scratch working directory of its own,
+	 * which is empty when the test starts, rather than in the tester's working
+	 * directory. Files tests leave behind are listed on their outputs, and
+	 * then deleted. Paths given to init are made absolute. Must be set before
+	 * init.
+	 * 
+	 * @param scratchDirs
+	 *            - whether to run tests in scratch directories
+	 */
+	public void setScratchDirs(boolean scratchDirs) {
+		this.scratchDirs = scratchDirs;
+	}
+
+	/**
+	 * Sets whether init builds a class data sharing archive of the classes
+	 * every test loads, by running one test. Tests start with the archive if
+	 * the JVM supports it, and without it if not. Must be set before init.
+	 * 
+	 * @param classDataSharing
+	 *            - whether to build a class data sharing archive
+	 */
+	public void setClassDataSharing(boolean classDataSharing) {
+		this.classDataSharing = classDataSharing;
+	}
+
+	/**
+	 * Sets whether each test's watchdog is started ahead of the test, so that
+	 * it boots while earlier tests run. Each test still runs in a process of
+	 * its own. Only applies when tests run under the watchdog without
+	 * persistent workers. Must be set before init.
+	 * 
+	 * @param prestartWatchdogs
+	 *            - whether to start watchdogs ahead of their tests
+	 */
+	public void setPrestartWatchdogs(boolean prestartWatchdogs) {
+		this.prestartWatchdogs = prestartWatchdogs;
+	}
+
+	/**
+	 * Sets how often the watchdog samples the stack a permission is requested
+	 * from. The stacks of every so many permission checks, up to
+	 * SecurityReporter.MAX_STACK_SAMPLES per test, are printed along with the
+	 * permissions used. Must be set before init.
+	 * 
+	 * @param initPermissionStacks
+	 *            - String representing the number of permission checks
+	 *            between the stacks sampled, or null for no stacks
+	 * @return boolean - false if the option is invalid, true if not
+	 */
+	public boolean setPermissionStacks(String initPermissionStacks) {
+		// parse permissionStacks if it exists
+		if (initPermissionStacks != null) {
+			int tempPermissionStacks = -1;
+			try {
+				tempPermissionStacks = Integer.parseInt(initPermissionStacks);
+			} catch (NumberFormatException e) {
+				initError("Option permissionStacks could not be parsed to an int.");
+				return false;
+			}
+			if (tempPermissionStacks < MIN_PERMISSION_STACKS) {
+				initError("Minimum value of permissionStacks is " + MIN_PERMISSION_STACKS + ".");
+				return false;
+			} else {
+				this.permissionStacks = tempPermissionStacks;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns whether tests run on watchdogs started ahead of them.
+	 * 
+	 * @return true if watchdogs are pooled, or false if not
+	 */
+	private boolean poolsWatchdogs() {
+		return this.prestartWatchdogs && this.watchdog && !this.persistentWorkers;
+	}
+
+	/**
+	 * Sets how long a test may run before it and any processes it started are
+	 * killed. With a timeout factor, the limit adapts to a multiple of the 99th
+	 * percentile time of recent tests, up to the timeout. Calibration and
+	 * training runs are limited by the timeout too, so it must be set before
+	 * init.
+	 * 
+	 * @param initTestTimeout
+	 *            - String representing the maximum milliseconds a test may
+	 *            run, or null for the default
+	 * @param initTimeoutFactor
+	 *            - String representing the multiple of the 99th percentile
+	 *            test time a test may run for, or null for a fixed timeout
+	 * @return boolean - false if either option is invalid, true if not
+	 */
+	public boolean setTestTimeout(String initTestTimeout, String initTimeoutFactor) {
+		int testTimeout = DEFAULT_TEST_TIMEOUT;
+		double timeoutFactor = 0;
+
+		// parse testTimeout if it exists
+		if (initTestTimeout != null) {
+			try {
+				testTimeout = Integer.parseInt(initTestTimeout);
+			} catch (NumberFormatException e) {
+				initError("Option testTimeout could not be parsed to an int.");
+				return false;
+			}
+			if (testTimeout < MIN_TEST_TIMEOUT) {
+				initError("Minimum value of testTimeout is " + MIN_TEST_TIMEOUT + ".");
+				return false;
+			}
+		}
+
+		// parse timeoutFactor if it exists
+		if (initTimeoutFactor != null) {
+			try {
+				timeoutFactor = Double.parseDouble(initTimeoutFactor);
+			} catch (NumberFormatException e) {
+				initError("Option timeoutFactor could not be parsed to a number.");
+				return false;
+			}
+			if (!(timeoutFactor >= MIN_TIMEOUT_FACTOR)) {
+				initError("Minimum value of timeoutFactor is " + MIN_TIMEOUT_FACTOR + ".");
+				return false;
+			}
+		}
+
+		this.deadline = new TestDeadline(testTimeout, timeoutFactor);
+		return true;
+	}
+
+	/**
+	 * Sets how many characters of standard out and of standard err are kept
+	 * per test. Of a longer stream, only the start and end are kept.
+	 * 
+	 * @param initMaxOutput
+	 *            - String representing the number of characters kept of each
+	 *            stream, or null for the default
+	 * @return boolean - false if the option is invalid, true if not
+	 */
+	public boolean setMaxOutput(String initMaxOutput) {
+		// parse maxOutput if it exists
+		if (initMaxOutput != null) {
+			int tempMaxOutput = -1;
+			try {
+				tempMaxOutput = Integer.parseInt(initMaxOutput);
+			} catch (NumberFormatException e) {
+				initError("Option maxOutput could not be parsed to an int.");
+				return false;
+			}
+			if (tempMaxOutput < MIN_MAX_OUTPUT) {
+				initError("Minimum value of maxOutput is " + MIN_MAX_OUTPUT + ".");
+				return false;
+			} else {
+				this.maxOutput = tempMaxOutput;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Sets how many tests a long-lived watchdog runs before it is replaced.
+	 * The first few tests which run after others in the same watchdog are run
+	 * again alone, and if any result differs, every test gets a watchdog of
+	 * its own.
+	 * 
+	 * @param initBatchSize
+	 *            - String representing the number of tests per watchdog, or
+	 *            null for no limit
+	 * @return boolean - false if the option is invalid, true if not
+	 */
+	public boolean setBatchSize(String initBatchSize) {
+		// parse batchSize if it exists
+		if (initBatchSize != null) {
+			int tempBatchSize = -1;
+			try {
+				tempBatchSize = Integer.parseInt(initBatchSize);
+			} catch (NumberFormatException e) {
+				initError("Option batchSize could not be parsed to an int.");
+				return false;
+			}
+			if (tempBatchSize < MIN_BATCH_SIZE) {
+				initError("Minimum value of batchSize is " + MIN_BATCH_SIZE + ".");
+				return false;
+			} else {
+				this.batchSize = tempBatchSize;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Sets how often the coverage of all tests run so far is written to the
+	 * jacoco output file. It is written after every flushTests tests, or
+	 * flushSeconds seconds, whichever comes first, and when testing ends.
+	 * 
+	 * @param initFlushTests
+	 *            - String representing the number of tests between writes, or
+	 *            null for the default
+	 * @param initFlushSeconds
+	 *            - String representing the seconds between writes, or null for
+	 *            the default
+	 * @return boolean - false if either option is invalid, true if not
+	 */
+	public boolean setCoverageFlush(String initFlushTests, String initFlushSeconds) {
+		// parse flushTests if it exists
+		if (initFlushTests != null) {
+			int tempFlushTests = -1;
+			try {
+				tempFlushTests = Integer.parseInt(initFlushTests);
+			} catch (NumberFormatException e) {
+				initError("Option flushTests could not be parsed to an int.");
+				return false;
+			}
+			if (tempFlushTests < MIN_FLUSH_TESTS) {
+				initError("Minimum value of flushTests is " + MIN_FLUSH_TESTS + ".");
+				return false;
+			} else {
+				this.flushTests = tempFlushTests;
+			}
+		}
+
+		// parse flushSeconds if it exists
+		if (initFlushSeconds != null) {
+			int tempFlushSeconds = -1;
+			try {
+				tempFlushSeconds = Integer.parseInt(initFlushSeconds);
+			} catch (NumberFormatException e) {
+				initError("Option flushSeconds could not be parsed to an int.");
+				return false;
+			}
+			if (tempFlushSeconds < MIN_FLUSH_SECONDS) {
+				initError("Minimum value of flushSeconds is " + MIN_FLUSH_SECONDS + ".");
+				return false;
+			} else {
+				this.flushSeconds = tempFlushSeconds;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Prints an initialization error.
+	 * 
+	 * @param message
+	 *            - information about the initialization error
+	 */
+	private void initError(String message) {
+		System.out.println("ERROR: " + INIT_ERROR_MSSG);
+		System.out.println(message);
+	}
+
+	/**
+	 * Executes predefined tests on the jar under test.
+	 * <p>
+	 * This is the half of the framework that IDT has completed. We are able to
+	 * pull basic tests directly from the executable jar. We are able to run the
+	 * tests and assess the output as PASS/FAIL.
+	 * 
+	 * ICT-2 has made one minor change to this method. If toolChain mode is
+	 * used, this method is now silent.
+	 */
+	public void executeBasicTests() {
+		// iterate through the lists of tests and execute each one
+		for (Test test : this.predefinedTests) {
+			if (isKilled.get()) {
+				return;
+			}
+
+			// instrument the code to code coverage metrics, execute the test
+			// with given parameters, then show the output
+			Output output = instrumentAndExecuteCode(test.getParameters().toArray(), 0);
+			if (output != null) {
+				recordOutput(output);
+
+				printBasicTestOutput(output);
+
+				// determine the result of the test based on expected
+				// output/error regex
+				if (output.getStdOutString().matches(test.getStdOutExpectedResultRegex())
+						&& output.getStdErrString().matches(test.getStdErrExpectedResultRegex())) {
+					if (!this.quiet) {
+						System.out.println("basic test result: PASS");
+					}
+
+					this.passCount++;
+				} else {
+					if (!this.quiet) {
+						System.out.println("basic test result: FAIL ");
+					}
 
 					this.failCount++;
 
@@ -456,7 +1200,7 @@ public class Tester {
 		}
 		// print the basic test results and the code coverage associated with
 		// the basic tests
-
+		saveCoverage();
 		double percentCovered = generateSummaryCodeCoverageResults();
 		if (!this.quiet) {
 			System.out.println("basic test results: " + (passCount + failCount) + " total, " + passCount + " pass, "
@@ -476,6 +1220,15 @@ public class Tester {
 			System.out.println("stdout of execution: " + output.getStdOutString());
 			System.out.println("stderr of execution: " + output.getStdErrString());
 			System.out.println("permissions used: " + output.getPermissionLogString());
+			if (output.getExitStatus() != null) {
+				System.out.println("exit status: " + output.getExitStatus());
+			}
+			for (String stack : output.getPermissionStacks()) {
+				System.out.println("permission stack: " + stack);
+			}
+			if (!output.getCreatedFiles().isEmpty()) {
+				System.out.println("files created: " + output.getCreatedFiles());
+			}
 		}
 	}
 
@@ -487,6 +1240,10 @@ public class Tester {
 	 * effort to demonstrate some of the features of the framework that you can
 	 * already utilize, we have provided some example code in the method. The
 	 * examples only demonstrate how to use existing functionality.
+	 * 
+	 * ICT-2 runs up to workers tests at once, each in its own child JVM. Tests
+	 * are always recorded in the order the generator produced them, so the
+	 * outputs a generator sees do not depend on which test finished first.
 	 */
 	public void executeSecurityTests() {
 		Long start = System.currentTimeMillis();
@@ -498,40 +1255,252 @@ public class Tester {
 			generator = new MonteCarloTestGenerator(this.parameterFactory, this.outputs);
 		}
 
-		for (int i = 0; i < this.bbTests; i++) {
-			if (isKilled.get()) {
-				return;
+		// every worker owns a slot, and with it a jacoco output file
+		BlockingQueue<Integer> slots = new ArrayBlockingQueue<Integer>(this.workers);
+		for (int slot = 0; slot < this.workers; slot++) {
+			slots.add(slot);
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(this.workers);
+		LinkedList<Future<Output>> running = new LinkedList<Future<Output>>();
+
+		// write coverage so far if the tester is shut down mid-run
+		Thread flushOnExit = new Thread() {
+			@Override
+			public void run() {
+				saveCoverage();
 			}
+		};
+		Runtime.getRuntime().addShutdownHook(flushOnExit);
 
-			Object[] params = generator.nextTest();
-			instrumentAndExecuteCode(params);
+		try {
+			for (int i = 0; i < this.bbTests; i++) {
+				if (isKilled.get()) {
+					return;
+				}
+				submitTest(generator, pool, slots, running);
+			}
 
-			// trash all but latest coverage builders in order to save memory
-			for (int j = this.outputs.size() - 5; j >= 0; j--) {
-				if (!this.outputs.get(j).clearBuilder()) {
-					break;
+			// run extra tests
+			while (minutesPassed(start) < this.timeGoal) {
+				if (isKilled.get()) {
+					return;
 				}
+				submitTest(generator, pool, slots, running);
+			}
+
+			// wait for the last tests to finish
+			while (!running.isEmpty()) {
+				recordOutput(running.removeFirst(), generator);
+			}
+		} finally {
+			pool.shutdownNow();
+			try {
+				// tests still running when testing is killed are interrupted,
+				// and end before the servers they use are closed
+				pool.awaitTermination(COVERAGE_WAIT, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			stopWatchdogWorkers();
+			closeWatchdogPool();
+			closeReportServer();
+			closeCoverageServers();
+			saveCoverage();
+			try {
+				Runtime.getRuntime().removeShutdownHook(flushOnExit);
+			} catch (IllegalStateException e) {
+				// already shutting down
 			}
 		}
+	}
 
-		// run extra tests
-		while (minutesPassed(start) < this.timeGoal) {
-			if (isKilled.get()) {
-				return;
+	/**
+	 * Returns a slot's pool of watchdogs started ahead of their tests,
+	 * starting the first watchdog of each slot if it is the pools' first use.
+	 * If they cannot be started, tests start their own watchdogs.
+	 * 
+	 * @param slot
+	 *            - slot of the worker about to run a test
+	 * @return the slot's watchdog pool, or null if tests start their own
+	 *         watchdogs
+	 */
+	private synchronized WatchdogPool getWatchdogPool(int slot) {
+		if (this.watchdogPools == null && poolsWatchdogs()) {
+			try {
+				this.watchdogPools = new WatchdogPool[this.workers];
+				for (int i = 0; i < this.workers; i++) {
+					this.watchdogPools[i] = new WatchdogPool(watchdogPoolCommand(i), 1, slotDir(i));
+				}
+			} catch (IOException e) {
+				if (!this.quiet) {
+					System.out.println("ERROR: Could not start watchdogs ahead of tests.");
+				}
+				e.printStackTrace();
+				closeWatchdogPool();
+				this.prestartWatchdogs = false;
 			}
+		}
+		return this.watchdogPools == null ? null : this.watchdogPools[slot];
+	}
 
-			Object[] params = generator.nextTest();
-			instrumentAndExecuteCode(params);
+	/**
+	 * Kills the watchdogs still waiting for tests in the watchdog pools.
+	 */
+	private synchronized void closeWatchdogPool() {
+		if (this.watchdogPools != null) {
+			for (WatchdogPool watchdogPool : this.watchdogPools) {
+				if (watchdogPool != null) {
+					watchdogPool.close();
+				}
+			}
+			this.watchdogPools = null;
+		}
+	}
+
+	/**
+	 * Deletes the scratch directories, if there are any, along with the
+	 * shutdown hook which would delete them on exit.
+	 */
+	private void closeScratch() {
+		if (this.scratchOnExit != null) {
+			try {
+				Runtime.getRuntime().removeShutdownHook(this.scratchOnExit);
+			} catch (IllegalStateException e) {
+				// already shutting down
+			}
+			this.scratchOnExit = null;
+		}
+		if (this.scratch != null) {
+			this.scratch.close();
+			this.scratch = null;
+		}
+	}
+
+	/**
+	 * Stops the report server, which init starts again for the next run.
+	 */
+	private void closeReportServer() {
+		if (this.reportServer != null) {
+			this.reportServer.close();
+			this.reportServer = null;
+		}
+	}
+
+	/**
+	 * Stops the coverage servers of all slots, which init starts again for
+	 * the next run.
+	 */
+	private void closeCoverageServers() {
+		if (this.coverageServers != null) {
+			for (CoverageServer coverageServer : this.coverageServers) {
+				if (coverageServer != null) {
+					coverageServer.close();
+				}
+			}
+			this.coverageServers = null;
+		}
+	}
+
+	/**
+	 * Asks all long-lived watchdogs to exit.
+	 */
+	private void stopWatchdogWorkers() {
+		for (int slot = 0; slot < this.watchdogWorkers.length; slot++) {
+			if (this.watchdogWorkers[slot] != null) {
+				this.watchdogWorkers[slot].stop();
+				this.watchdogWorkers[slot] = null;
+			}
+		}
+	}
+
+	/**
+	 * Submits the generator's next test to the worker pool.
+	 * <p>
+	 * If every worker is busy, the oldest running test is waited on and
+	 * recorded first. The generator is only asked for a test once the outputs
+	 * of all but the running tests have been recorded.
+	 * 
+	 * @param generator
+	 *            - generator to get the next test from
+	 * @param pool
+	 *            - pool to run the test on
+	 * @param slots
+	 *            - worker slots which are not currently running a test
+	 * @param running
+	 *            - tests which have been submitted but not yet recorded, oldest
+	 *            first
+	 */
+	private void submitTest(TestGenerator generator, ExecutorService pool, BlockingQueue<Integer> slots,
+			LinkedList<Future<Output>> running) {
+		if (running.size() >= this.workers) {
+			recordOutput(running.removeFirst(), generator);
+		}
 
-			// trash all but latest coverage builders in order to save memory
-			for (int j = this.outputs.size() - 5; j >= 0; j--) {
-				if (!this.outputs.get(j).clearBuilder()) {
-					break;
+		Object[] params = generator.nextTest();
+		running.addLast(pool.submit(new Callable<Output>() {
+			@Override
+			public Output call() throws InterruptedException {
+				int slot = slots.take();
+				try {
+					return instrumentAndExecuteCode(params, slot);
+				} finally {
+					slots.put(slot);
 				}
 			}
+		}));
+	}
+
+	/**
+	 * Waits for a running test and records its output. A test which ended
+	 * without an output is reported to its generator instead, so the generator
+	 * still matches later outputs to the right tests.
+	 * 
+	 * @param test
+	 *            - running test to record
+	 * @param generator
+	 *            - generator the test came from
+	 */
+	private void recordOutput(Future<Output> test, TestGenerator generator) {
+		Output output = null;
+		try {
+			output = test.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+		}
+
+		if (output != null) {
+			recordOutput(output);
+		} else {
+			generator.testDropped();
 		}
 	}
 
+	/**
+	 * Records the output of a finished test.
+	 * <p>
+	 * Outputs are only recorded from the thread driving the tests, so they
+	 * appear in the outputs list in the order their tests were generated.
+	 * 
+	 * @param output
+	 *            - output of a finished test
+	 */
+	private void recordOutput(Output output) {
+		this.outputs.add(output);
+		this.crashBuckets.record(output, this.outputs.size() - 1);
+
+		// write coverage so far every so many tests or seconds
+		this.testsSinceFlush++;
+		if (this.testsSinceFlush >= this.flushTests
+				|| System.currentTimeMillis() - this.lastFlush >= this.flushSeconds * 1_000L) {
+			saveCoverage();
+		}
+
+		double totalTests = this.bbTests + this.predefinedTests.size();
+		percentDone.set(outputs.size() / totalTests);
+	}
+
 	/**
 	 * Returns unmodifiable list of this tester's outputs.
 	 * 
@@ -541,6 +1510,16 @@ public class Tester {
 		return Collections.unmodifiableList(this.outputs);
 	}
 
+	/**
+	 * Returns the buckets of the unique errors this tester's tests have
+	 * encountered, in the order they were found.
+	 * 
+	 * @return the error buckets
+	 */
+	public List<CrashBucket> getCrashBuckets() {
+		return this.crashBuckets.getBuckets();
+	}
+
 	/**
 	 * Returns this tester's percent of tests completed.
 	 * 
@@ -555,6 +1534,7 @@ public class Tester {
 	 */
 	public void killTests() {
 		this.isKilled.set(true);
+		this.pause.wake();
 	}
 
 	/**
@@ -563,17 +1543,21 @@ public class Tester {
 	 * @return true if this tester is paused or false if not
 	 */
 	public boolean isPaused() {
-		return this.isPaused.get();
+		return this.pause.isPaused();
 	}
 
 	/**
 	 * Sets this tester as paused or not.
+	 * <p>
+	 * While paused, no new test starts, and the processes of running tests are
+	 * stopped where the platform allows it. Time spent paused does not count
+	 * against a test's timeout.
 	 * 
 	 * @param paused
 	 *            - paused state to set
 	 */
 	public void setPaused(boolean paused) {
-		this.isPaused.set(paused);
+		this.pause.setPaused(paused);
 	}
 
 	/**
@@ -590,12 +1574,20 @@ public class Tester {
 		buffer.append("Number of predefined tests that failed: ");
 		buffer.append(this.failCount + "\n");
 		buffer.append("Total code coverage percentage: ");
-		buffer.append(percentCovered + "\n");
+		buffer.append(generateSummaryCodeCoverageResults() + "\n");
 		buffer.append("Unique error count: ");
-		buffer.append(this.exceptionSet.size() + "\n");
+		buffer.append(this.crashBuckets.size() + "\n");
 		buffer.append("Errors seen:\n");
-		for (String error : this.exceptionSet) {
-			buffer.append("  -" + error.replace('\n', ' ') + "\n");
+		for (CrashBucket bucket : this.crashBuckets.getBuckets()) {
+			buffer.append("  -" + bucket.toString().replace('\n', ' ') + "\n");
+		}
+		if (this.jvmProfiles != null) {
+			buffer.append("JVM profile: ");
+			buffer.append((this.jvmProfile == null ? "default" : this.jvmProfile.getName()) + "\n");
+			buffer.append("JVM profiles timed:\n");
+			for (JvmProfile profile : this.jvmProfiles) {
+				buffer.append("  -" + profile + "\n");
+			}
 		}
 
 		return buffer.toString();
@@ -605,55 +1597,31 @@ public class Tester {
 	 * Generates a double code coverage metric.
 	 * <p>
 	 * Code coverage metric is percentage of instructions, branches, lines,
-	 * methods, and complexity covered.
+	 * methods, and complexity covered. The coverage tracker keeps running
+	 * totals, so this is cheap enough to call after every test.
 	 * 
 	 * @return a double representation of the percentage of code covered during
 	 *         testing
 	 */
 	public double generateSummaryCodeCoverageResults() {
-		long total = 0;
-		long covered = 0;
+		percentCovered = this.coverageTracker.getPercentCovered();
+		return percentCovered;
+	}
 
+	/**
+	 * Writes the coverage of all tests run so far to the jacoco output file.
+	 */
+	private void saveCoverage() {
+		this.testsSinceFlush = 0;
+		this.lastFlush = System.currentTimeMillis();
 		try {
-			// creating a new file for output in the jacoco output directory
-			// (one of the application arguments)
-			File executionDataFile = new File(this.jacocoOutputFilePath);
-			ExecFileLoader execFileLoader = new ExecFileLoader();
-			execFileLoader.load(executionDataFile);
-
-			// use CoverageBuilder and Analyzer to assess code coverage from
-			// jacoco output file
-			final CoverageBuilder coverageBuilder = new CoverageBuilder();
-			final Analyzer analyzer = new Analyzer(execFileLoader.getExecutionDataStore(), coverageBuilder);
-
-			// analyzeAll is the way to go to analyze all classes inside a
-			// container (jar or zip or directory)
-			analyzer.analyzeAll(new File(this.jarToTestPath));
-
-			for (final IClassCoverage cc : coverageBuilder.getClasses()) {
-
-				// report code coverage from all classes that are not the
-				// TestBounds class within the jar
-				if (!cc.getName().endsWith("TestBounds")) {
-					total += cc.getInstructionCounter().getTotalCount();
-					total += cc.getBranchCounter().getTotalCount();
-					total += cc.getLineCounter().getTotalCount();
-					total += cc.getMethodCounter().getTotalCount();
-					total += cc.getComplexityCounter().getTotalCount();
-
-					covered += cc.getInstructionCounter().getCoveredCount();
-					covered += cc.getBranchCounter().getCoveredCount();
-					covered += cc.getLineCounter().getCoveredCount();
-					covered += cc.getMethodCounter().getCoveredCount();
-					covered += cc.getComplexityCounter().getCoveredCount();
-				}
+			this.coverageTracker.write(new File(this.jacocoOutputFilePath));
+		} catch (IOException e) {
+			if (!this.quiet) {
+				System.out.println("ERROR: Unable to save Jacoco output.");
 			}
-		} catch (IOException ioe) {
-			ioe.printStackTrace();
+			e.printStackTrace();
 		}
-
-		percentCovered = ((double) covered / (double) total) * 100.0;
-		return percentCovered;
 	}
 
 	/**
@@ -683,321 +1651,900 @@ public class Tester {
 	 * how this method reads I/O from the jar under test, preventing I/O
 	 * deadlocks.
 	 * 
+	 * This method may be called from several workers at once. Each worker uses
+	 * its own slot, and with it its own temporary jacoco output file. The
+	 * returned output is not recorded; see recordOutput.
+	 * 
 	 * @param parameters
 	 *            - array of Objects to use as parameters for this execution of
 	 *            the jar under test
+	 * @param slot
+	 *            - slot of the worker running this test
 	 * 
 	 * @return Output representation of the standard out, standard error, and
 	 *         security notifications encountered during this test
 	 * 
 	 */
-	private Output instrumentAndExecuteCode(Object[] parameters) {
-		while (this.isPaused.get()) {
-			if (this.isKilled.get()) {
-				return null;
-			}
+	private Output instrumentAndExecuteCode(Object[] parameters, int slot) {
+		if (!this.pause.awaitResume(this.isKilled)) {
+			return null;
+		}
+
+		if (this.persistentWorkers) {
+			return executeOnWatchdogWorker(parameters, slot);
 		}
 
 		Process process = null;
 		Output output = new Output();
 
-		// we are building up a command line statement that will use java -jar
-		// to execute the jar
-		// and uses jacoco to instrument that jar and collect code coverage
-		// metrics
-		StringBuffer cmdBuffer = new StringBuffer(300);
+		// drop coverage left over from the slot's last test
+		String sessionId = expectCoverage(slot);
+
 		String command = null;
-		cmdBuffer.append("java");
+		WatchdogPool watchdogPool = getWatchdogPool(slot);
+		File scratchDir = null;
+		// tests without a watchdog send no reports
+		long reportToken = this.watchdog ? this.reportServer.expect() : 0;
 		try {
-			if (this.watchdog) {
-				// change the clss path if running from a jar
-				if (runningFromJar()) {
-					cmdBuffer.append(" -javaagent:" + this.jacocoAgentJarPath + "=destfile=");
-					cmdBuffer.append(this.jacocoOutputFilePath + "temp");
-					cmdBuffer.append(" -cp" + " com.idtus.contest.winter2017.framework.jar ");
-					cmdBuffer.append(SecurityWatchdog.class.getCanonicalName());
-					cmdBuffer.append(" \"" + this.jarToTestPath + "\" " + this.quiet);
-				} else {
-					cmdBuffer.append(" -javaagent:" + this.jacocoAgentJarPath + "=destfile=");
-					cmdBuffer.append(this.jacocoOutputFilePath + "temp");
-					cmdBuffer.append(" -cp \"" + this.watchdogPath + "\" ");
-					cmdBuffer.append(SecurityWatchdog.class.getCanonicalName());
-					cmdBuffer.append(" \"" + this.jarToTestPath + "\" " + this.quiet);
-				}
-			} else {
-				// use a more simple command if we don't want to watch
-				// permissions
-				cmdBuffer.append(" -javaagent:" + this.jacocoAgentJarPath + "=destfile=");
-				cmdBuffer.append(this.jacocoOutputFilePath + "temp");
-				cmdBuffer.append(" -jar " + this.jarToTestPath);
-			}
-
 			// append parameters to the command
 			StringBuffer testCommand = new StringBuffer(200);
 			for (Object o : parameters) {
 				testCommand.append(" " + o.toString());
 			}
 			output.setCommand("" + testCommand);
-			cmdBuffer.append(testCommand);
-			command = "" + cmdBuffer;
-			if (!this.quiet) {
-				System.out.println("command to run: " + command);
-			}
 
 			// prepare the process
-			process = Runtime.getRuntime().exec(command);
+			if (watchdogPool != null) {
+				command = "" + testCommand;
+				if (!this.quiet) {
+					System.out.println("test to run:" + command);
+				}
+				process = watchdogPool.runTest(parameters, sessionId, edgeMap(slot), reportToken);
+			} else {
+				List<String> arguments = new ArrayList<String>(this.testCommands.get(slot));
+				arguments.addAll(1, Arrays.asList(coverageOptions(slot, "sessionid=" + sessionId)));
+				command = String.join(" ", arguments) + testCommand;
+				if (reportToken != 0) {
+					arguments.add(1, this.reportServer.getPortOption());
+				}
+				for (Object o : parameters) {
+					arguments.add(o.toString());
+				}
+				if (!this.quiet) {
+					System.out.println("command to run: " + command);
+				}
+				if (this.scratch != null) {
+					scratchDir = this.scratch.take();
+				}
+				process = WatchdogLauncher.start(arguments.toArray(new String[arguments.size()]), reportToken != 0,
+						scratchDir);
+				// the watchdog reads its token from standard in, where the jar
+				// under test cannot see it, and the jar under test then finds
+				// standard in closed
+				if (reportToken != 0) {
+					DataOutputStream control = new DataOutputStream(process.getOutputStream());
+					control.writeLong(reportToken);
+					control.close();
+				}
+			}
+			this.pause.register(process);
 
 			InputStream isOut = process.getInputStream();
 			InputStream isErr = process.getErrorStream();
 
-			ProcessStreamReader stdOutReader = new ProcessStreamReader(isOut);
-			ProcessStreamReader stdErrReader = new ProcessStreamReader(isErr);
+			// both readers wake this thread when they read a line or finish
+			Object signal = new Object();
+			ProcessStreamReader stdOutReader = new ProcessStreamReader(isOut, signal);
+			ProcessStreamReader stdErrReader = new ProcessStreamReader(isErr, signal);
 
-			StringBuffer stdOutBuff = new StringBuffer();
-			StringBuffer stdErrBuff = new StringBuffer();
+			OutputCapture stdOut = new OutputCapture(this.maxOutput);
+			OutputCapture stdErr = new OutputCapture(this.maxOutput);
+			// exceptions are parsed from every line, kept or not
+			StackTraceParser stdErrTraces = new StackTraceParser();
 
 			stdOutReader.start();
 			stdErrReader.start();
 
 			// allow the process to run for a given time
 			long start = System.currentTimeMillis();
-			while ((System.currentTimeMillis() - start) < this.maxMillisPerTest) {
+			long pausedAtStart = this.pause.getPausedMillis();
+			long maxMillis = this.deadline.getMillis();
+			boolean finished = false;
+			while (true) {
 				String outLine = stdOutReader.pollLine();
 				if (outLine != null) {
-					if (outLine.equals("<<WATCHDOG_OUTPUT_START>>")) {
-						handleWatchdogOutput(stdOutReader, output);
-					} else {
-						stdOutBuff.append(outLine);
-					}
+					stdOut.append(outLine);
 				}
 
 				String errLine = stdErrReader.pollLine();
 				if (errLine != null) {
-					if (errLine.equals("<<WATCHDOG_OUTPUT_START>>")) {
-						handleWatchdogError(stdErrReader);
-					} else {
-						stdErrBuff.append(errLine + "\n");
-					}
+					stdErr.appendLine(errLine);
+					stdErrTraces.addLine(errLine);
 				}
 
-				if (stdErrReader.isDone() && stdOutReader.isDone()) {
-					break;
+				if (outLine == null && errLine == null) {
+					if (stdErrReader.isDone() && stdOutReader.isDone() && !stdErrReader.hasLine()
+							&& !stdOutReader.hasLine()) {
+						finished = true;
+						break;
+					}
+					// sleep until either reader has more, or time is up, which
+					// pausing moves back
+					long end = this.pause.getDeadline(start, pausedAtStart, maxMillis);
+					if (!ProcessStreamReader.await(signal, end, stdOutReader, stdErrReader)
+							&& System.currentTimeMillis() >= this.pause.getDeadline(start, pausedAtStart, maxMillis)) {
+						break;
+					}
 				}
 			}
 
 			stdErrReader.endProcess();
 			stdOutReader.endProcess();
 
-			output.setStdOutString("" + stdOutBuff);
-			// trim extra newline character
-			if (stdErrBuff.length() != 0) {
-				stdErrBuff.deleteCharAt(stdErrBuff.length() - 1);
+			if (finished) {
+				long paused = this.pause.getPausedMillis() - pausedAtStart;
+				this.deadline.record(System.currentTimeMillis() - start - paused);
+			} else {
+				// kill the test, and anything it started, once time is up
+				output.setTimedOut(true);
+				this.deadline.recordTimeout(maxMillis);
+				recoverCoverage(output, slot, sessionId);
+				destroyProcessTree(process);
+				if (!this.quiet) {
+					System.out.println("test timed out after " + maxMillis + " ms");
+				}
+			}
+
+			output.setStdOut(stdOut);
+			output.setStdErr(stdErr, stdErrTraces);
+
+			// a finished watchdog has sent its report, which may still be on
+			// its way; a killed one has sent all it will
+			if (reportToken != 0) {
+				WatchdogReport report = this.reportServer.take(reportToken, finished ? COVERAGE_WAIT : 0);
+				if (report != null) {
+					report.saveTo(output);
+				} else if (finished) {
+					throw new WatchdogException("No report arrived from the watchdog.");
+				}
 			}
-			output.setStdErrString("" + stdErrBuff);
 
 		} catch (IOException e) {
 			if (!this.quiet) {
 				System.out.println("ERROR: IOException has prevented execution of the command: " + command);
 			}
 			e.printStackTrace();
+			if (process != null) {
+				destroyProcessTree(process);
+			}
 			return null;
 		} catch (WatchdogException e) {
 			if (!this.quiet) {
 				System.out.println("ERROR: WatchdogException has prevented execution of the command: " + command);
 			}
 			e.printStackTrace();
+			destroyProcessTree(process);
+			return null;
+		} catch (InterruptedException e) {
+			if (process != null) {
+				destroyProcessTree(process);
+			}
+			Thread.currentThread().interrupt();
 			return null;
+		} finally {
+			if (process != null) {
+				this.pause.unregister(process);
+			}
+			if (reportToken != 0) {
+				this.reportServer.forget(reportToken);
+			}
+			if (scratchDir != null) {
+				output.setCreatedFiles(this.scratch.giveBack(scratchDir));
+			} else if (watchdogPool != null && this.scratch != null) {
+				output.setCreatedFiles(this.scratch.cleanSlotDir(slot));
+			}
 		}
 
-		File toLoad = new File(this.jacocoOutputFilePath + "temp");
-		File toSave = new File(this.jacocoOutputFilePath);
+		// a killed test's coverage was recovered before it was killed
+		if (!output.isTimedOut()) {
+			loadCoverage(output, slot, sessionId);
+		}
+		return output;
+	}
 
+	/**
+	 * Forcibly destroys a process, along with every process it started.
+	 * <p>
+	 * The processes a process started can only be found from Java 9 on, so
+	 * they are looked up reflectively. On Java 8, only the process itself is
+	 * destroyed.
+	 * 
+	 * @param process
+	 *            - process to destroy
+	 */
+	static void destroyProcessTree(Process process) {
 		try {
-			ExecFileLoader loader = new ExecFileLoader();
-			loader.load(toLoad);
-			loader.save(toSave, true);
-			CoverageBuilder builder = new CoverageBuilder();
-			Analyzer analyzer = new Analyzer(loader.getExecutionDataStore(), builder);
-			analyzer.analyzeAll(new File(this.jarToTestPath));
-			output.setCoverageBuilder(builder);
+			Class<?> handleClass = Class.forName("java.lang.ProcessHandle");
+			Method destroy = handleClass.getMethod("destroyForcibly");
+			Stream<?> descendants = (Stream<?>) Process.class.getMethod("descendants").invoke(process);
+			Iterator<?> handles = descendants.iterator();
+			while (handles.hasNext()) {
+				destroy.invoke(handles.next());
+			}
+		} catch (ReflectiveOperationException e) {
+			// running on Java 8
+		}
+		process.destroyForcibly();
+	}
+
+	/**
+	 * Executes the jar under test with the supplied parameters in the
+	 * long-lived watchdog of the given slot.
+	 * <p>
+	 * The watchdog is started if the slot does not have one yet, or if its
+	 * last one died. A watchdog which runs out of time or reports an error is
+	 * killed, and replaced by the next test of its slot.
+	 * 
+	 * @param parameters
+	 *            - array of Objects to use as parameters for this execution of
+	 *            the jar under test
+	 * @param slot
+	 *            - slot of the worker running this test
+	 * @return Output representation of the standard out, standard error, and
+	 *         security notifications encountered during this test
+	 */
+	private Output executeOnWatchdogWorker(Object[] parameters, int slot) {
+		Output output = new Output();
+		StringBuffer testCommand = new StringBuffer(200);
+		for (Object o : parameters) {
+			testCommand.append(" " + o.toString());
+		}
+		output.setCommand("" + testCommand);
+		if (!this.quiet) {
+			System.out.println("test to run:" + testCommand);
+		}
+
+		// the watchdog only sends coverage for tests which finish
+		String sessionId = expectCoverage(slot);
+
+		WatchdogWorker worker = this.watchdogWorkers[slot];
+		boolean batched;
+		try {
+			// a watchdog which has run its batch is replaced
+			if (worker != null && worker.getTestsRun() >= this.batchSize) {
+				worker.stop();
+				worker = null;
+				this.watchdogWorkers[slot] = null;
+			}
+			if (worker == null || !worker.isAlive()) {
+				worker = new WatchdogWorker(watchdogWorkerCommand(slot), this.maxOutput, this.pause, slotDir(slot),
+						this.reportServer);
+				this.watchdogWorkers[slot] = worker;
+			}
+			batched = worker.getTestsRun() > 0;
+
+			long start = System.currentTimeMillis();
+			long pausedAtStart = this.pause.getPausedMillis();
+			long maxMillis = this.deadline.getMillis();
+			if (worker.runTest(parameters, sessionId, output, maxMillis)) {
+				long paused = this.pause.getPausedMillis() - pausedAtStart;
+				this.deadline.record(System.currentTimeMillis() - start - paused);
+			} else {
+				if (output.isTimedOut()) {
+					this.deadline.recordTimeout(maxMillis);
+					recoverCoverage(output, slot, sessionId);
+				}
+				worker.destroy();
+				this.watchdogWorkers[slot] = null;
+				if (output.isTimedOut() && !this.quiet) {
+					System.out.println("test timed out after " + maxMillis + " ms");
+				}
+			}
 		} catch (IOException e) {
-			// if this happens, try lengthening this.maxMillisPerTest
 			if (!this.quiet) {
-				System.out.println("ERROR: Unable to save and load Jacoco output.");
+				System.out.println("ERROR: IOException has prevented execution of the test:" + testCommand);
+			}
+			e.printStackTrace();
+			if (worker != null) {
+				worker.destroy();
+				this.watchdogWorkers[slot] = null;
+			}
+			return null;
+		} catch (WatchdogException e) {
+			if (!this.quiet) {
+				System.out.println("ERROR: WatchdogException has prevented execution of the test:" + testCommand);
 			}
 			e.printStackTrace();
-			output.setCoverageBuilder(null);
+			worker.destroy();
+			this.watchdogWorkers[slot] = null;
+			return null;
+		} catch (InterruptedException e) {
+			if (worker != null) {
+				worker.destroy();
+				this.watchdogWorkers[slot] = null;
+			}
+			Thread.currentThread().interrupt();
+			return null;
 		}
 
-		this.outputs.add(output);
-		this.exceptionSet.addAll(output.getExceptions());
-
-		double totalTests = this.bbTests + this.predefinedTests.size();
-		percentDone.set(outputs.size() / totalTests);
+		if (this.scratch != null) {
+			output.setCreatedFiles(this.scratch.cleanSlotDir(slot));
+		}
 
+		// a killed test's coverage was recovered before it was killed
+		if (!output.isTimedOut()) {
+			loadCoverage(output, slot, sessionId);
+			if (batched && output.getCoverage() != null && this.leakChecksLeft.getAndDecrement() > 0) {
+				checkLeakage(parameters, output, slot);
+			}
+		}
 		return output;
 	}
 
 	/**
-	 * Handles standard output specifically for the tester.
+	 * Runs a test again alone in a new watchdog, and gives every later test a
+	 * watchdog of its own if the result differs from the test's result after
+	 * other tests in the same watchdog. A check which cannot finish is
+	 * inconclusive.
 	 * 
-	 * @param brOut
-	 *            - the reader to get input from
-	 * @param output
-	 *            - the output to save permissions to
-	 * @throws IOException
-	 *             - an exception encountered
+	 * @param parameters
+	 *            - parameters of the test
+	 * @param batched
+	 *            - output of the test after other tests
+	 * @param slot
+	 *            - slot of the worker running the test
 	 */
-	private void handleWatchdogOutput(ProcessStreamReader brOut, Output output) throws IOException {
-		String next;
-		output.resetPermissionLog();
-		while (!"<<WATCHDOG_OUTPUT_END>>".equals(next = brOut.pollLine())) {
-			if (next == null) {
-				continue;
+	private void checkLeakage(Object[] parameters, Output batched, int slot) {
+		Output alone = new Output();
+		String sessionId = expectCoverage(slot);
+		WatchdogWorker worker = null;
+		try {
+			worker = new WatchdogWorker(watchdogWorkerCommand(slot), this.maxOutput, this.pause, slotDir(slot),
+					this.reportServer);
+			if (!worker.runTest(parameters, sessionId, alone, this.deadline.getMillis())) {
+				return;
+			}
+			alone.setCoverage(this.probeMap.getTestCoverage(readCoverage(slot, sessionId)));
+		} catch (IOException | WatchdogException e) {
+			return;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		} finally {
+			if (worker != null) {
+				worker.destroy();
+			}
+			if (this.scratch != null) {
+				this.scratch.cleanSlotDir(slot);
+			}
+		}
+
+		if (!sameResult(batched, alone) && this.batchSize > 1) {
+			this.batchSize = 1;
+			if (!this.quiet) {
+				System.out.println("Tests leak state into later tests in the same watchdog,"
+						+ " running one test per watchdog.");
 			}
-			output.logPermission(next);
 		}
 	}
 
 	/**
-	 * Handles standard error output specifically for the tester.
+	 * Returns whether two runs of a test had the same output, permissions and
+	 * coverage.
 	 * 
-	 * @param brErr
-	 *            - the reader to get input from
-	 * @throws IOException
-	 *             - an IO exception encountered
-	 * @throws WatchdogException
-	 *             - a watch-dog exception encountered
+	 * @param first
+	 *            - output of one run
+	 * @param second
+	 *            - output of the other run
+	 * @return true if the runs had the same result, or false if not
 	 */
-	private void handleWatchdogError(ProcessStreamReader brErr) throws IOException, WatchdogException {
-		String next;
-		StringBuffer errBuff = new StringBuffer();
-		while (!"<<WATCHDOG_OUTPUT_END>>".equals(next = brErr.pollLine())) {
-			if (next == null) {
-				continue;
+	private static boolean sameResult(Output first, Output second) {
+		if (!Objects.equals(first.getStdOutString(), second.getStdOutString())
+				|| !Objects.equals(first.getStdErrString(), second.getStdErrString())
+				|| !first.samePermissions(second)) {
+			return false;
+		}
+
+		TestCoverage firstCoverage = first.getCoverage();
+		TestCoverage secondCoverage = second.getCoverage();
+		if (firstCoverage.getClassCount() != secondCoverage.getClassCount()) {
+			return false;
+		}
+		for (int i = 0; i < firstCoverage.getClassCount(); i++) {
+			if (!firstCoverage.getProbes(i).equals(secondCoverage.getProbes(i))) {
+				return false;
 			}
-			errBuff.append(next + "\n");
 		}
+		return true;
+	}
+
+	/**
+	 * Builds the command which runs a test in its own JVM, up to the test's
+	 * parameters.
+	 * <p>
+	 * We are building up a command that will use java -jar to execute the
+	 * jar. The options which use jacoco to instrument that jar and collect
+	 * code coverage metrics are left out, as each test collects its coverage
+	 * under a session of its own; see withCoverage.
+	 * 
+	 * @param slot
+	 *            - slot of the worker running the test
+	 * @return the command without the test's parameters, one argument per
+	 *         element
+	 */
+	private String[] testCommand(int slot) {
+		List<String> command = new ArrayList<String>();
+		command.add("java");
+		Collections.addAll(command, launchOptions());
+		if (this.edgeTracker != null) {
+			command.add("-D" + EdgeMap.MAP_PROPERTY + "=" + edgeMap(slot));
+		}
+		if (this.watchdog) {
+			Collections.addAll(command, reporterOptions());
+			Collections.addAll(command, "-cp", withRuntime(this.watchdogJarPath),
+					SecurityWatchdog.class.getCanonicalName(), this.jarToRunPath, "" + this.quiet);
+		} else if (this.offlineInstrumentation) {
+			// java -jar ignores the class path, which must hold the jacoco
+			// runtime
+			Collections.addAll(command, "-cp", withRuntime(this.jarToRunPath), this.mainClassName);
+		} else {
+			// use a more simple command if we don't want to watch permissions
+			Collections.addAll(command, "-jar", this.jarToRunPath);
+		}
+		return command.toArray(new String[command.size()]);
+	}
 
-		// TODO: handle watch dog exceptions
-		throw new WatchdogException("" + errBuff);
+	/**
+	 * Builds the command which starts a long-lived watchdog for the given
+	 * slot.
+	 * 
+	 * @param slot
+	 *            - slot of the worker the watchdog will serve
+	 * @return command starting the watchdog, one argument per element
+	 */
+	private String[] watchdogWorkerCommand(int slot) {
+		List<String> command = new ArrayList<String>();
+		command.add("java");
+		Collections.addAll(command, launchOptions());
+		// coverage is dumped after each test, under the session sent with the
+		// test, and a watchdog replaced mid-run must not send more once its
+		// slot has moved on
+		Collections.addAll(command, coverageOptions(slot, "dumponexit=false"));
+		if (this.edgeTracker != null) {
+			command.add("-D" + EdgeMap.MAP_PROPERTY + "=" + edgeMap(slot));
+		}
+		Collections.addAll(command, reporterOptions());
+		Collections.addAll(command, "-cp", withRuntime(this.watchdogJarPath), SecurityWatchdog.class.getCanonicalName(),
+				SecurityWatchdog.WORKER_FLAG, this.jarToRunPath, "" + this.quiet);
+		return command.toArray(new String[command.size()]);
 	}
 
 	/**
-	 * Returns whether this class is running from a Jar.
+	 * Builds the command which starts a watchdog ahead of its test. The
+	 * watchdog is told the session id of its coverage, its edge map and the
+	 * token it reports under along with its test.
 	 * 
-	 * @return true if this class is running from a jar, otherwise false.
+	 * @param slot
+	 *            - slot of the worker the watchdog will serve
+	 * @return command starting the watchdog, one argument per element
 	 */
-	private boolean runningFromJar() {
-		String name = getClass().getName();
-		name = name.replace('.', '/');
-		String path = "" + Tester.class.getResource("/" + name + ".class");
+	private String[] watchdogPoolCommand(int slot) {
+		List<String> command = new ArrayList<String>();
+		command.add("java");
+		Collections.addAll(command, launchOptions());
+		Collections.addAll(command, coverageOptions(slot));
+		command.add(this.reportServer.getPortOption());
+		Collections.addAll(command, reporterOptions());
+		Collections.addAll(command, "-cp", withRuntime(this.watchdogJarPath), SecurityWatchdog.class.getCanonicalName(),
+				SecurityWatchdog.POOLED_FLAG, this.jarToRunPath, "" + this.quiet);
+		return command.toArray(new String[command.size()]);
+	}
 
-		if (path.startsWith("jar:") || path.startsWith("rsrc:") || path.endsWith(".jar")) {
-			return true;
+	/**
+	 * Returns the JVM options which configure the watchdog's security
+	 * reporter.
+	 * 
+	 * @return the JVM options, which are empty unless permission stacks are
+	 *         sampled
+	 */
+	private String[] reporterOptions() {
+		if (this.permissionStacks == 0) {
+			return new String[0];
 		}
-		return false;
+		return new String[] { "-D" + SecurityReporter.STACK_SAMPLE_PROPERTY + "=" + this.permissionStacks };
 	}
-}
 
-/**
- * Class to read output from a process without causing the input stream to
- * block.
- * 
- * @author ICT-2
- */
-class ProcessStreamReader extends Thread {
 	/**
-	 * Input stream to read from.
+	 * Returns the working directory of a slot's long-lived or pre-started
+	 * watchdogs.
+	 * 
+	 * @param slot
+	 *            - slot of a worker
+	 * @return the slot's scratch directory, or null if tests run in the
+	 *         tester's working directory
 	 */
-	private InputStream iStream;
+	private File slotDir(int slot) {
+		return this.scratch == null ? null : this.scratch.getSlotDir(slot);
+	}
 
 	/**
-	 * Whether this thread should stop due to time constraints.
+	 * Returns the JVM options which start a test's JVM with the chosen JVM
+	 * profile and the class data sharing archive, if there are any.
+	 * 
+	 * @return the JVM options, which are empty without a profile or archive
 	 */
-	private AtomicBoolean timeUp;
+	private String[] launchOptions() {
+		List<String> options = new ArrayList<String>();
+		if (this.jvmProfile != null) {
+			Collections.addAll(options, this.jvmProfile.getOptions());
+		}
+		if (this.sharedArchive != null) {
+			Collections.addAll(options, WatchdogLauncher.archiveOptions(this.sharedArchive));
+		}
+		return options.toArray(new String[options.size()]);
+	}
 
 	/**
-	 * Whether this thread is done reading.
+	 * Times the first few predefined tests, each in a JVM of its own, with
+	 * each candidate JVM profile, and chooses the fastest profile. Profiles are
+	 * taken in turn for each test, so that anything else slowing the machine
+	 * down slows them all alike. A profile is rejected if a test fails to run
+	 * with it, or covers other code than with the JVM's defaults.
+	 * <p>
+	 * Each test is first run once, untimed, with the defaults, which also
+	 * warms up the disk cache. A test which does not finish then is left out of
+	 * the calibration. A test which covers other code when run again with the
+	 * defaults does not always cover the same code, and its coverage is not
+	 * compared.
 	 */
-	private AtomicBoolean isDone;
+	private void tuneJvm() {
+		List<Object[]> tests = new ArrayList<Object[]>();
+		for (Test test : this.predefinedTests) {
+			if (tests.size() < CALIBRATION_TESTS) {
+				tests.add(test.getParameters().toArray());
+			}
+		}
+		if (tests.isEmpty()) {
+			tests.add(new Object[0]);
+		}
+
+		List<JvmProfile> profiles = JvmProfile.candidates(this.persistentWorkers);
+		JvmProfile defaults = profiles.get(0);
+		List<ExecutionDataStore> expected = new ArrayList<ExecutionDataStore>();
+		for (Iterator<Object[]> i = tests.iterator(); i.hasNext();) {
+			ExecutionDataStore coverage;
+			try {
+				coverage = calibrationRun(defaults, i.next());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			// a test which hangs would only time every profile out
+			if (coverage == null) {
+				i.remove();
+			} else {
+				expected.add(coverage);
+			}
+		}
+		if (tests.isEmpty()) {
+			if (!this.quiet) {
+				System.out.println("JVM profile chosen: default, no calibration test finished");
+			}
+			return;
+		}
+		boolean[] stable = new boolean[tests.size()];
+		Arrays.fill(stable, true);
+
+		for (int round = 0; round < CALIBRATION_ROUNDS; round++) {
+			for (int t = 0; t < tests.size(); t++) {
+				for (JvmProfile profile : profiles) {
+					if (profile.isRejected()) {
+						continue;
+					}
+					long start = System.nanoTime();
+					ExecutionDataStore coverage;
+					try {
+						coverage = calibrationRun(profile, tests.get(t));
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+					long millis = (System.nanoTime() - start) / 1_000_000;
+
+					if (coverage == null) {
+						profile.reject("test did not finish");
+					} else if (!stable[t] || sameCoverage(expected.get(t), coverage)) {
+						profile.record(millis);
+					} else if (profile == defaults) {
+						// the defaults come first, so no profile was compared yet
+						stable[t] = false;
+						profile.record(millis);
+					} else {
+						profile.reject("coverage changed");
+					}
+				}
+			}
+		}
+
+		JvmProfile fastest = null;
+		for (JvmProfile profile : profiles) {
+			if (!profile.isRejected() && (fastest == null || profile.getMeanMillis() < fastest.getMeanMillis())) {
+				fastest = profile;
+			}
+		}
+		this.jvmProfiles = profiles;
+		this.jvmProfile = fastest;
+		if (!this.quiet) {
+			for (JvmProfile profile : profiles) {
+				System.out.println("JVM profile " + profile);
+			}
+			System.out.println("JVM profile chosen: " + (fastest == null ? "default" : fastest.getName()));
+		}
+	}
 
 	/**
-	 * List of lines read from the process.
+	 * Runs a calibration test in a JVM of its own, started with a JVM profile,
+	 * and collects its coverage.
+	 * 
+	 * @param profile
+	 *            - JVM profile to start the test's JVM with
+	 * @param parameters
+	 *            - parameters of the test
+	 * @return the coverage of the test, or null if it did not finish
+	 * @throws InterruptedException
+	 *             - if interrupted while waiting for the coverage
 	 */
-	private List<String> lines;
+	private ExecutionDataStore calibrationRun(JvmProfile profile, Object[] parameters) throws InterruptedException {
+		String sessionId = newCoverageSession(0);
+		List<String> command = new ArrayList<String>();
+		Collections.addAll(command,
+				WatchdogLauncher.withOptions(withCoverage(testCommand(0), 0, sessionId), profile.getOptions()));
+		for (Object o : parameters) {
+			command.add(o.toString());
+		}
+
+		this.coverageServers[0].expect(sessionId);
+		Integer status = WatchdogLauncher.run(command.toArray(new String[command.size()]), new byte[0],
+				this.deadline.getMaxMillis());
+		ExecutionDataStore coverage = this.coverageServers[0].take(sessionId, COVERAGE_WAIT);
+		return status == null ? null : coverage;
+	}
 
 	/**
-	 * Constructs a process stream reader with the given input stream.
+	 * Returns whether two runs of a test hit the same probes.
 	 * 
-	 * @param iStream
-	 *            - input stream to read from
+	 * @param first
+	 *            - execution data of one run
+	 * @param second
+	 *            - execution data of the other run
+	 * @return true if the runs hit the same probes, or false if not
 	 */
-	public ProcessStreamReader(InputStream iStream) {
-		this.iStream = iStream;
-		this.timeUp = new AtomicBoolean(false);
-		this.isDone = new AtomicBoolean(false);
-		this.lines = Collections.synchronizedList(new LinkedList<String>());
+	private static boolean sameCoverage(ExecutionDataStore first, ExecutionDataStore second) {
+		if (first.getContents().size() != second.getContents().size()) {
+			return false;
+		}
+		for (ExecutionData data : first.getContents()) {
+			ExecutionData other = second.get(data.getId());
+			if (other == null || !Arrays.equals(data.getProbes(), other.getProbes())) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	/**
-	 * Reads from the given input stream.
+	 * Returns the JVM options which collect the coverage of a test and send
+	 * it to the coverage server of its slot, with the given extra jacoco agent
+	 * options.
 	 * <p>
-	 * Stops reading once the stream ends or time is up.
+	 * With the agent, the options are passed to it. With offline instrumented
+	 * classes, each option is passed to the jacoco runtime as a system
+	 * property, and the watchdog is told which class starts the runtime, so it
+	 * can start it before monitoring permissions.
+	 * 
+	 * @param slot
+	 *            - slot of the worker running the test
+	 * @param agentOptions
+	 *            - extra jacoco agent options, each as name=value
+	 * @return the JVM options
 	 */
-	@Override
-	public void run() {
-		InputStreamReader iReader = new InputStreamReader(this.iStream);
-		BufferedReader bReader = new BufferedReader(iReader);
-		String line;
-		try {
-			while ((line = bReader.readLine()) != null && !this.timeUp.get()) {
-				lines.add(line);
+	private String[] coverageOptions(int slot, String... agentOptions) {
+		List<String> options = new ArrayList<String>();
+		Collections.addAll(options, this.coverageServers[slot].getAgentOptions());
+		Collections.addAll(options, agentOptions);
+
+		if (this.offlineInstrumentation) {
+			List<String> jvmOptions = new ArrayList<String>();
+			for (String option : options) {
+				jvmOptions.add("-Djacoco-agent." + option);
 			}
-		} catch (Exception e) {
+			jvmOptions.add("-D" + SecurityWatchdog.OFFLINE_RUNTIME + "=" + OfflineJar.RUNTIME_CLASS);
+			return jvmOptions.toArray(new String[jvmOptions.size()]);
+		}
+
+		StringBuffer agent = new StringBuffer("-javaagent:" + this.jacocoAgentJarPath + "=");
+		for (int i = 0; i < options.size(); i++) {
+			agent.append((i > 0 ? "," : "") + options.get(i));
 		}
-		this.isDone.set(true);
+		return new String[] { "" + agent };
 	}
 
 	/**
-	 * Notifies the process stream reader that time is up.
+	 * Returns a command which starts a test's JVM, with the options which
+	 * send the test's coverage to its slot's coverage server under the given
+	 * session.
+	 * 
+	 * @param command
+	 *            - command without the coverage options
+	 * @param slot
+	 *            - slot of the worker running the test
+	 * @param sessionId
+	 *            - jacoco session id of the test
+	 * @return the command with the coverage options
 	 */
-	public void endProcess() {
-		this.timeUp.set(true);
+	private String[] withCoverage(String[] command, int slot, String sessionId) {
+		return WatchdogLauncher.withOptions(command, coverageOptions(slot, "sessionid=" + sessionId));
 	}
 
 	/**
-	 * Returns and removes the next line from the process stream reader.
+	 * Returns a new jacoco session id, under which one test of the given slot
+	 * sends its coverage.
 	 * 
-	 * @return the next line from the process stream reader
+	 * @param slot
+	 *            - slot of the worker running the test
+	 * @return the session id, of the slot and the test's number
 	 */
-	public String pollLine() {
-		if (lines.isEmpty()) {
-			return null;
-		} else {
-			return lines.remove(0);
+	private String newCoverageSession(int slot) {
+		return "slot" + slot + "-test" + this.coverageSessions.incrementAndGet();
+	}
+
+	/**
+	 * Returns the path of the edge map tests of the given slot count edges in.
+	 * 
+	 * @param slot
+	 *            - slot of the worker running the tests
+	 * @return the path of the edge map, or an empty string without edge
+	 *         coverage
+	 */
+	private String edgeMap(int slot) {
+		if (this.edgeTracker == null) {
+			return "";
 		}
+		return this.edgeTracker.getPath(slot);
 	}
 
 	/**
-	 * Returns whether this process stream reader is done.
+	 * Prepares a slot for its next test's coverage, under a session of the
+	 * test's own, dropping any coverage left over from the slot's earlier
+	 * tests.
 	 * 
-	 * @return true if this process stream reader is done, or false if not.
+	 * @param slot
+	 *            - slot of the worker about to run a test
+	 * @return the jacoco session id of the test
 	 */
-	public boolean isDone() {
-		return this.isDone.get();
+	private String expectCoverage(int slot) {
+		String sessionId = newCoverageSession(slot);
+		this.coverageServers[slot].expect(sessionId);
+		if (this.edgeTracker != null) {
+			this.edgeTracker.reset(slot);
+		}
+		return sessionId;
 	}
-}
 
-/**
- * This class represents an exception thrown by the security watch dog, and not
- * the jar under test.
- * 
- * @author ICT-2
- */
-@SuppressWarnings("serial")
-class WatchdogException extends Exception {
-	public WatchdogException(String error) {
-		super(error);
+	/**
+	 * Returns the given class path, with the jacoco runtime added to it when
+	 * running offline instrumented classes, and the edge coverage runtime
+	 * when counting edges.
+	 * 
+	 * @param classPath
+	 *            - class path of a test
+	 * @return the class path, with the runtimes which are needed
+	 */
+	private String withRuntime(String classPath) {
+		if (this.edgeTracker != null && !classPath.equals(this.watchdogJarPath)) {
+			classPath += File.pathSeparator + this.watchdogJarPath;
+		}
+		if (this.offlineInstrumentation) {
+			return classPath + File.pathSeparator + this.jacocoAgentJarPath;
+		}
+		return classPath;
+	}
+
+	/**
+	 * Takes the jacoco execution data of the last test run in the given slot
+	 * from the coverage server. A test which finished has sent its data, but
+	 * it may still be on its way.
+	 * 
+	 * @param slot
+	 *            - slot of the worker which ran the test
+	 * @param sessionId
+	 *            - jacoco session id of the test
+	 * @return the test's execution data
+	 * @throws IOException
+	 *             - the data did not arrive, or the thread was interrupted
+	 *             while waiting for it
+	 */
+	private ExecutionDataStore readCoverage(int slot, String sessionId) throws IOException {
+		ExecutionDataStore coverage;
+		try {
+			coverage = this.coverageServers[slot].take(sessionId, COVERAGE_WAIT);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for coverage.");
+		}
+		if (coverage == null) {
+			throw new IOException("No coverage arrived from " + sessionId + ".");
+		}
+		return coverage;
+	}
+
+	/**
+	 * Loads the coverage of the last test run in the given slot into the
+	 * output, and merges it into the coverage of all tests.
+	 * 
+	 * @param output
+	 *            - output of the last test run in the slot
+	 * @param slot
+	 *            - slot of the worker which ran the test
+	 * @param sessionId
+	 *            - jacoco session id of the test
+	 */
+	private void loadCoverage(Output output, int slot, String sessionId) {
+		try {
+			addCoverage(output, readCoverage(slot, sessionId), slot);
+		} catch (IOException e) {
+			// if this happens, try lengthening the test timeout
+			if (!this.quiet) {
+				System.out.println("ERROR: Unable to load Jacoco output.");
+			}
+			e.printStackTrace();
+			output.setCoverage(null);
+		}
+	}
+
+	/**
+	 * Loads the coverage so far of a test which ran out of time, before it is
+	 * killed. A killed test never sends its coverage on exit, so its jacoco
+	 * runtime is asked to dump it first. The edges the test hit are in its
+	 * slot's map already.
+	 *
+	 * @param output
+	 *            - output of the test which ran out of time
+	 * @param slot
+	 *            - slot of the worker running the test
+	 * @param sessionId
+	 *            - jacoco session id of the test
+	 */
+	private void recoverCoverage(Output output, int slot, String sessionId) {
+		ExecutionDataStore coverage = null;
+		try {
+			coverage = this.coverageServers[slot].requestDump(sessionId, PARTIAL_COVERAGE_WAIT);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (coverage != null) {
+			addCoverage(output, coverage, slot);
+		} else if (this.edgeTracker != null) {
+			output.setNewEdges(this.edgeTracker.collect(slot));
+		}
+	}
+
+	/**
+	 * Sets the coverage of the last test run in the given slot on its output,
+	 * and merges it into the coverage of all tests.
+	 *
+	 * @param output
+	 *            - output of the last test run in the slot
+	 * @param coverage
+	 *            - execution data of the test
+	 * @param slot
+	 *            - slot of the worker which ran the test
+	 */
+	private void addCoverage(Output output, ExecutionDataStore coverage, int slot) {
+		this.coverageTracker.add(coverage);
+		output.setCoverage(this.probeMap.getTestCoverage(coverage));
+		if (this.edgeTracker != null) {
+			output.setNewEdges(this.edgeTracker.collect(slot));
+		}
 	}
 }
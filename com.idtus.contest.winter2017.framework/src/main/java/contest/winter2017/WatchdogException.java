@@ -0,0 +1,14 @@
+package contest.winter2017;
+
+/**
+ * This class represents an exception thrown by the security watch dog, and not
+ * the jar under test.
+ * 
+ * @author ICT-2
+ */
+@SuppressWarnings("serial")
+class WatchdogException extends Exception {
+	public WatchdogException(String error) {
+		super(error);
+	}
+}
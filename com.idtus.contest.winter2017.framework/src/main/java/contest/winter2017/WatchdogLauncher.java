@@ -0,0 +1,349 @@
+package contest.winter2017;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Class to make the JVMs which run tests start quickly.
+ * <p>
+ * The security watchdog needs only a few classes of the framework, so rather
+ * than the framework's whole class path, watchdogs are given a thin jar of just
+ * those classes. The jar is only rewritten if its classes change, so it keeps
+ * the same modification time from run to run.
+ * <p>
+ * Every test's JVM loads the same classes: the watchdog's, the jacoco
+ * runtime's and the jar under test's. A training run can archive those classes
+ * with class data sharing, and later JVMs map the archive in rather than load
+ * and verify each class again. Dynamic archives need Java 13 or later, so on
+ * older JVMs, or if the archive cannot be used, tests start without one.
+ * <p>
+ * Every test's JVM is started from an argument vector, so each argument of a
+ * test reaches the jar under test exactly as it was generated, spaces and
+ * quotes included. Environment variables which add JVM options are left out,
+ * as the JVM reports picking them up on standard err.
+ *
+ * @author ICT-2
+ */
+class WatchdogLauncher {
+	/**
+	 * Classes the security watchdog needs to run, besides their anonymous
+	 * classes.
+	 */
+	private static final Class<?>[] WATCHDOG_CLASSES = { SecurityWatchdog.class, SecurityReporter.class,
+			ExitTrappedException.class, PermissionEvent.class, ReportChannel.class, EdgeMap.class };
+
+	/**
+	 * Name of the thin watchdog jar.
+	 */
+	private static final String JAR_NAME = "watchdog.jar";
+
+	/**
+	 * Environment variables which add options to every JVM started.
+	 */
+	private static final String[] JVM_OPTION_VARIABLES = { "JAVA_TOOL_OPTIONS", "_JAVA_OPTIONS",
+			"JDK_JAVA_OPTIONS" };
+
+	/**
+	 * Returns a thin jar of the classes the security watchdog needs, writing it
+	 * if it does not exist or holds other classes.
+	 *
+	 * @param dir
+	 *            - directory to write the jar to
+	 * @return the thin watchdog jar
+	 * @throws IOException
+	 *             - an exception encountered while reading the classes or
+	 *             writing the jar
+	 */
+	public static File writeJar(File dir) throws IOException {
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, SecurityWatchdog.class.getName());
+		ByteArrayOutputStream manifestBytes = new ByteArrayOutputStream();
+		manifest.write(manifestBytes);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		JarOutputStream jar = new JarOutputStream(bytes);
+		addEntry(jar, JarFile.MANIFEST_NAME, new ByteArrayInputStream(manifestBytes.toByteArray()));
+		for (Class<?> watchdogClass : WATCHDOG_CLASSES) {
+			String name = watchdogClass.getName().replace('.', '/');
+			InputStream in = WatchdogLauncher.class.getResourceAsStream("/" + name + ".class");
+			if (in == null) {
+				jar.close();
+				throw new IOException("Could not find " + name + ".class.");
+			}
+			// the class is followed by its anonymous classes, numbered from 1
+			String entryName = name;
+			for (int i = 1; in != null; i++) {
+				try {
+					addEntry(jar, entryName + ".class", in);
+				} finally {
+					in.close();
+				}
+				entryName = name + "$" + i;
+				in = WatchdogLauncher.class.getResourceAsStream("/" + entryName + ".class");
+			}
+		}
+		jar.close();
+
+		File file = new File(dir, JAR_NAME);
+		byte[] content = bytes.toByteArray();
+		if (file.exists() && Arrays.equals(content, Files.readAllBytes(file.toPath()))) {
+			return file;
+		}
+
+		// write to a temporary file first, so the jar is always complete
+		File part = new File(file.getPath() + ".part");
+		OutputStream out = new FileOutputStream(part);
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+		Files.move(part.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		return file;
+	}
+
+	/**
+	 * Adds an entry to a jar.
+	 *
+	 * @param jar
+	 *            - jar to add the entry to
+	 * @param name
+	 *            - name of the entry
+	 * @param in
+	 *            - stream to read the entry from
+	 * @throws IOException
+	 *             - an exception encountered while copying the entry
+	 */
+	private static void addEntry(JarOutputStream jar, String name, InputStream in) throws IOException {
+		JarEntry entry = new JarEntry(name);
+		// a fixed time keeps the jar the same from run to run
+		entry.setTime(0);
+		jar.putNextEntry(entry);
+		copy(in, jar);
+		jar.closeEntry();
+	}
+
+	/**
+	 * Builds a class data sharing archive by running the given command once,
+	 * and checks that JVMs can start with it.
+	 *
+	 * @param command
+	 *            - command which starts a test's JVM, beginning with java
+	 * @param input
+	 *            - bytes to send to the JVM's standard in, which is then
+	 *            closed
+	 * @param archive
+	 *            - file to write the archive to
+	 * @param maxMillis
+	 *            - time the training run may take
+	 * @return true if the archive was built and can be used, or false if tests
+	 *         should start without it
+	 */
+	public static boolean trainArchive(String[] command, byte[] input, File archive, long maxMillis) {
+		// the exit status of the training run is the jar under test's, so
+		// only the archive is checked
+		archive.delete();
+		if (run(withOptions(command, "-XX:ArchiveClassesAtExit=" + archive.getPath()), input, maxMillis) == null
+				|| !archive.exists()) {
+			archive.delete();
+			return false;
+		}
+
+		// -Xshare:on fails outright, rather than quietly, if the archive
+		// cannot be used with the command's options and class path
+		List<String> check = jvmOptions(command);
+		check.add(1, "-XX:SharedArchiveFile=" + archive.getPath());
+		check.add(2, "-Xshare:on");
+		check.add("-version");
+		Integer status = run(check.toArray(new String[check.size()]), new byte[0], maxMillis);
+		if (status == null || status != 0) {
+			archive.delete();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the java executable and JVM options of a command, without its
+	 * main class and arguments. A jar to run becomes the class path.
+	 *
+	 * @param command
+	 *            - command beginning with java
+	 * @return the java executable and JVM options
+	 */
+	private static List<String> jvmOptions(String[] command) {
+		List<String> options = new ArrayList<String>();
+		options.add(command[0]);
+		for (int i = 1; i < command.length; i++) {
+			if (command[i].equals("-jar") && i + 1 < command.length) {
+				options.add("-cp");
+				options.add(command[i + 1]);
+				break;
+			} else if (command[i].equals("-cp") && i + 1 < command.length) {
+				options.add(command[i]);
+				options.add(command[++i]);
+			} else if (command[i].startsWith("-")) {
+				options.add(command[i]);
+			} else {
+				break;
+			}
+		}
+		return options;
+	}
+
+	/**
+	 * Returns the JVM options which start a JVM with a class data sharing
+	 * archive. JVM warnings about the archive are turned off, as they would be
+	 * mistaken for output of the jar under test.
+	 *
+	 * @param archive
+	 *            - archive to start with
+	 * @return the JVM options
+	 */
+	public static String[] archiveOptions(File archive) {
+		return new String[] { "-XX:SharedArchiveFile=" + archive.getPath(), "-Xlog:cds=off",
+				"-Xlog:cds+dynamic=off" };
+	}
+
+	/**
+	 * Returns a command with JVM options added after the java executable.
+	 *
+	 * @param command
+	 *            - command beginning with java
+	 * @param options
+	 *            - JVM options to add
+	 * @return the command with the options
+	 */
+	static String[] withOptions(String[] command, String... options) {
+		List<String> withOptions = new ArrayList<String>(Arrays.asList(command));
+		withOptions.addAll(1, Arrays.asList(options));
+		return withOptions.toArray(new String[withOptions.size()]);
+	}
+
+	/**
+	 * Starts a test's JVM.
+	 *
+	 * @param command
+	 *            - command starting the JVM, one argument per element
+	 * @param control
+	 *            - whether the tester writes to the JVM's standard in; if not,
+	 *            standard in is the null device, so a jar under test which
+	 *            reads input sees its end at once rather than waiting until it
+	 *            times out
+	 * @param directory
+	 *            - working directory of the JVM, or null for the tester's
+	 * @return the process of the JVM
+	 * @throws IOException
+	 *             - an exception encountered while starting the process
+	 */
+	static Process start(String[] command, boolean control, File directory) throws IOException {
+		ProcessBuilder builder = processBuilder(command);
+		builder.directory(directory);
+		if (!control) {
+			builder.redirectInput(new File(nullDevice()));
+		}
+		return builder.start();
+	}
+
+	/**
+	 * Returns a process builder for a command, in an environment without the
+	 * variables which add JVM options.
+	 *
+	 * @param command
+	 *            - command to run, one argument per element
+	 * @return the process builder
+	 */
+	private static ProcessBuilder processBuilder(String[] command) {
+		ProcessBuilder builder = new ProcessBuilder(command);
+		for (String variable : JVM_OPTION_VARIABLES) {
+			builder.environment().remove(variable);
+		}
+		return builder;
+	}
+
+	/**
+	 * Runs a command, discarding its output.
+	 *
+	 * @param command
+	 *            - command to run
+	 * @param input
+	 *            - bytes to send to standard in, which is then closed
+	 * @param maxMillis
+	 *            - time the command may take
+	 * @return the exit status of the command, or null if it could not be run
+	 *         or ran out of time
+	 */
+	static Integer run(String[] command, byte[] input, long maxMillis) {
+		Process process = null;
+		try {
+			ProcessBuilder builder = processBuilder(command);
+			builder.redirectErrorStream(true);
+			builder.redirectOutput(ProcessBuilder.Redirect.appendTo(new File(nullDevice())));
+			process = builder.start();
+			OutputStream in = process.getOutputStream();
+			try {
+				in.write(input);
+			} finally {
+				in.close();
+			}
+			if (!process.waitFor(maxMillis, TimeUnit.MILLISECONDS)) {
+				Tester.destroyProcessTree(process);
+				return null;
+			}
+			return process.exitValue();
+		} catch (IOException e) {
+			if (process != null) {
+				Tester.destroyProcessTree(process);
+			}
+			return null;
+		} catch (InterruptedException e) {
+			Tester.destroyProcessTree(process);
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the path of the null device.
+	 *
+	 * @return the null device of this platform
+	 */
+	private static String nullDevice() {
+		return System.getProperty("os.name").startsWith("Windows") ? "NUL" : "/dev/null";
+	}
+
+	/**
+	 * Copies an input stream to an output stream.
+	 *
+	 * @param in
+	 *            - stream to copy from
+	 * @param out
+	 *            - stream to copy to
+	 * @throws IOException
+	 *             - an exception encountered while copying
+	 */
+	private static void copy(InputStream in, OutputStream out) throws IOException {
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+	}
+}
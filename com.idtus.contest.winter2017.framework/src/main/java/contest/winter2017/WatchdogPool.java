@@ -0,0 +1,162 @@
+package contest.winter2017;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+
+/**
+ * Class to keep security watchdogs started ahead of the tests they will run.
+ * <p>
+ * A JVM takes longer to boot than most tests of the jar under test take to
+ * run. A pool keeps watchdogs booted and waiting on their standard in, and the
+ * tester keeps a pool of one for each worker slot. Taking a watchdog from the pool sends it its test, and starts the
+ * watchdog which replaces it at once, so the replacement boots while the test
+ * runs and while its output is analyzed. Every test still runs in a process of
+ * its own.
+ *
+ * @author ICT-2
+ */
+class WatchdogPool {
+	/**
+	 * Command which starts a watchdog in pooled mode.
+	 */
+	private String[] command;
+
+	/**
+	 * Working directory of the watchdogs, or null for the tester's.
+	 */
+	private File directory;
+
+	/**
+	 * Watchdogs started and waiting for a test, oldest first.
+	 */
+	private LinkedList<Process> ready = new LinkedList<Process>();
+
+	/**
+	 * Whether the pool has been closed.
+	 */
+	private boolean closed = false;
+
+	/**
+	 * Constructs a pool, starting the given number of watchdogs.
+	 *
+	 * @param command
+	 *            - command which starts the security watchdog in pooled mode
+	 * @param size
+	 *            - number of watchdogs to keep ready
+	 * @param directory
+	 *            - working directory of the watchdogs, or null for the
+	 *            tester's
+	 * @throws IOException
+	 *             - an exception encountered while starting a watchdog
+	 */
+	public WatchdogPool(String[] command, int size, File directory) throws IOException {
+		this.command = command;
+		this.directory = directory;
+		try {
+			for (int i = 0; i < size; i++) {
+				this.ready.add(WatchdogLauncher.start(command, true, directory));
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Takes a watchdog from the pool and sends it a test, starting another
+	 * watchdog in its place.
+	 *
+	 * @param parameters
+	 *            - parameters to pass to the jar under test
+	 * @param sessionId
+	 *            - jacoco session id the test's execution data is sent under
+	 * @param edgeMap
+	 *            - path of the map the test counts edges in, or an empty
+	 *            string for none
+	 * @param reportToken
+	 *            - token the watchdog reports under
+	 * @return the process running the test
+	 * @throws IOException
+	 *             - an exception encountered while starting a watchdog or
+	 *             sending the test
+	 */
+	public Process runTest(Object[] parameters, String sessionId, String edgeMap, long reportToken)
+			throws IOException {
+		Process process;
+		synchronized (this) {
+			if (this.closed) {
+				throw new IOException("Watchdog pool is closed.");
+			}
+			// the pool is only short of a watchdog if starting one failed
+			process = this.ready.poll();
+			if (process == null) {
+				process = WatchdogLauncher.start(this.command, true, this.directory);
+			}
+			try {
+				this.ready.add(WatchdogLauncher.start(this.command, true, this.directory));
+			} catch (IOException e) {
+				Tester.destroyProcessTree(process);
+				throw e;
+			}
+		}
+
+		try {
+			OutputStream control = process.getOutputStream();
+			control.write(testMessage(parameters, sessionId, edgeMap, reportToken));
+			control.close();
+		} catch (IOException e) {
+			Tester.destroyProcessTree(process);
+			throw e;
+		}
+		return process;
+	}
+
+	/**
+	 * Returns the message which sends a test to a pooled watchdog: the jacoco
+	 * session id of the test, the path of its edge map and the token the
+	 * watchdog reports under, then the count of its arguments followed by the
+	 * arguments.
+	 *
+	 * @param parameters
+	 *            - parameters to pass to the jar under test
+	 * @param sessionId
+	 *            - jacoco session id the test's execution data is sent under
+	 * @param edgeMap
+	 *            - path of the map the test counts edges in, or an empty
+	 *            string for none
+	 * @param reportToken
+	 *            - token the watchdog reports under, or 0 for no reports
+	 * @return the message
+	 * @throws IOException
+	 *             - an exception encountered while encoding the message
+	 */
+	static byte[] testMessage(Object[] parameters, String sessionId, String edgeMap, long reportToken)
+			throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream message = new DataOutputStream(bytes);
+		SecurityWatchdog.writeString(message, sessionId);
+		SecurityWatchdog.writeString(message, edgeMap);
+		message.writeLong(reportToken);
+		message.writeInt(parameters.length);
+		for (Object o : parameters) {
+			SecurityWatchdog.writeString(message, o.toString());
+		}
+		message.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Closes the pool, killing every watchdog still waiting for a test.
+	 */
+	public synchronized void close() {
+		this.closed = true;
+		for (Process process : this.ready) {
+			Tester.destroyProcessTree(process);
+		}
+		this.ready.clear();
+	}
+}
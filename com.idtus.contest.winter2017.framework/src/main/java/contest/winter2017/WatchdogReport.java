@@ -0,0 +1,150 @@
+package contest.winter2017;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class to hold what a security watchdog reported about one test over its
+ * report channel: the permissions the test used and any stacks sampled from
+ * them, the exceptions no code caught, any error of the watchdog itself, and
+ * the end of the test.
+ * <p>
+ * A report is complete once the watchdog ends its test. A test whose JVM
+ * halted or was killed first leaves a report with whatever was sent before.
+ *
+ * @author ICT-2
+ */
+class WatchdogReport {
+	/**
+	 * How many times each permission was used, by the tester's permission id,
+	 * or null if the watchdog sent no permissions.
+	 */
+	private int[] permissionCounts = null;
+
+	/**
+	 * Stacks permissions were requested from, each after the permission's
+	 * name.
+	 */
+	private List<String> permissionStacks = new ArrayList<String>();
+
+	/**
+	 * Exceptions no code caught, in the order they were reported.
+	 */
+	private List<ExceptionRecord> exceptions = new ArrayList<ExceptionRecord>();
+
+	/**
+	 * Error of the watchdog itself, or null if there was none.
+	 */
+	private String error = null;
+
+	/**
+	 * Whether the watchdog ended the test.
+	 */
+	private boolean complete = false;
+
+	/**
+	 * Exit status the jar under test asked for.
+	 */
+	private int exitStatus;
+
+	/**
+	 * Nanoseconds the jar under test ran.
+	 */
+	private long runNanos;
+
+	/**
+	 * Sets the permissions the test used so far, replacing any sent before.
+	 *
+	 * @param permissionCounts
+	 *            - use counts by the tester's permission id
+	 */
+	void setPermissionCounts(int[] permissionCounts) {
+		this.permissionCounts = permissionCounts;
+	}
+
+	/**
+	 * Adds the stack a permission was requested from.
+	 *
+	 * @param stack
+	 *            - the permission's name, followed by a line per frame
+	 */
+	void addPermissionStack(String stack) {
+		this.permissionStacks.add(stack);
+	}
+
+	/**
+	 * Adds an exception no code caught.
+	 *
+	 * @param exception
+	 *            - the exception
+	 */
+	void addException(ExceptionRecord exception) {
+		this.exceptions.add(exception);
+	}
+
+	/**
+	 * Sets the error of the watchdog itself.
+	 *
+	 * @param error
+	 *            - text of the error
+	 */
+	void setError(String error) {
+		this.error = error;
+	}
+
+	/**
+	 * Marks the end of the test.
+	 *
+	 * @param exitStatus
+	 *            - exit status the jar under test asked for
+	 * @param runNanos
+	 *            - nanoseconds the jar under test ran
+	 */
+	void end(int exitStatus, long runNanos) {
+		this.exitStatus = exitStatus;
+		this.runNanos = runNanos;
+		this.complete = true;
+	}
+
+	/**
+	 * Returns whether the watchdog ended the test.
+	 *
+	 * @return true if the report is complete, or false if the watchdog's JVM
+	 *         ended first
+	 */
+	public boolean isComplete() {
+		return this.complete;
+	}
+
+	/**
+	 * Saves the report to a test's output.
+	 *
+	 * @param output
+	 *            - output of the test
+	 * @throws WatchdogException
+	 *             - the watchdog reported an error of its own
+	 */
+	public void saveTo(Output output) throws WatchdogException {
+		if (this.error != null) {
+			throw new WatchdogException(this.error);
+		}
+		if (this.permissionCounts != null) {
+			output.resetPermissionLog();
+			for (int id = 0; id < this.permissionCounts.length; id++) {
+				if (this.permissionCounts[id] > 0) {
+					output.logPermission(id, this.permissionCounts[id]);
+				}
+			}
+		}
+		for (String stack : this.permissionStacks) {
+			output.addPermissionStack(stack);
+		}
+		for (ExceptionRecord exception : this.exceptions) {
+			output.addReportedException(exception);
+		}
+		if (this.complete) {
+			output.setExitStatus(this.exitStatus);
+			output.setRunNanos(this.runNanos);
+		}
+	}
+}
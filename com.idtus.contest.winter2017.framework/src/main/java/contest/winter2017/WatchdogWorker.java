@@ -0,0 +1,301 @@
+package contest.winter2017;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Class to run many tests in one long-lived security watchdog.
+ * <p>
+ * Starting a JVM with the jacoco agent costs more than most tests of the jar
+ * under test. A worker starts the watchdog once, sends it each test over its
+ * standard in, and reads each test's output up to the watchdog's end of test
+ * marker, and the test's report from the report server. A worker whose
+ * watchdog dies or runs out of time must be destroyed and replaced.
+ *
+ * @author ICT-2
+ */
+class WatchdogWorker {
+
+	/**
+	 * Process running the watchdog.
+	 */
+	private Process process;
+
+	/**
+	 * Control channel used to send tests to the watchdog.
+	 */
+	private DataOutputStream control;
+
+	/**
+	 * Signal shared by both readers, notified when either reads a line.
+	 */
+	private Object signal = new Object();
+
+	/**
+	 * Reader for the watchdog's standard out.
+	 */
+	private ProcessStreamReader stdOutReader;
+
+	/**
+	 * Reader for the watchdog's standard err.
+	 */
+	private ProcessStreamReader stdErrReader;
+
+	/**
+	 * Pause of testing, with which the watchdog is registered.
+	 */
+	private TestPause pause;
+
+	/**
+	 * Capture of the standard out of the current test.
+	 */
+	private OutputCapture stdOut;
+
+	/**
+	 * Capture of the standard err of the current test.
+	 */
+	private OutputCapture stdErr;
+
+	/**
+	 * Parser of the exceptions in the standard err of the current test.
+	 */
+	private StackTraceParser stdErrTraces;
+
+	/**
+	 * Number of tests sent to the watchdog.
+	 */
+	private int testsRun = 0;
+
+	/**
+	 * Server the watchdog reports to.
+	 */
+	private ReportServer reportServer;
+
+	/**
+	 * Token the watchdog reports under.
+	 */
+	private long reportToken;
+
+	/**
+	 * Line the watchdog ends each test's standard out and err with.
+	 */
+	private String testEnd;
+
+	/**
+	 * Starts a watchdog worker with the given command.
+	 *
+	 * @param command
+	 *            - command which starts the security watchdog in worker mode
+	 * @param maxOutput
+	 *            - number of characters of each output stream kept per test
+	 * @param pause
+	 *            - pause of testing, which stops the watchdog while testing is
+	 *            paused
+	 * @param directory
+	 *            - working directory of the watchdog, or null for the tester's
+	 * @param reportServer
+	 *            - server the watchdog reports to
+	 * @throws IOException
+	 *             - an exception encountered while starting the process
+	 */
+	public WatchdogWorker(String[] command, int maxOutput, TestPause pause, File directory,
+			ReportServer reportServer) throws IOException {
+		this.stdOut = new OutputCapture(maxOutput);
+		this.stdErr = new OutputCapture(maxOutput);
+		this.pause = pause;
+		this.reportServer = reportServer;
+		this.reportToken = reportServer.expect();
+		this.testEnd = SecurityWatchdog.TEST_END + this.reportToken;
+		try {
+			this.process = WatchdogLauncher.start(
+					WatchdogLauncher.withOptions(command, reportServer.getPortOption()), true, directory);
+		} catch (IOException e) {
+			reportServer.forget(this.reportToken);
+			throw e;
+		}
+		pause.register(this.process);
+		this.control = new DataOutputStream(new BufferedOutputStream(this.process.getOutputStream()));
+		// the token goes first on the control channel, where the jar under
+		// test cannot read it
+		this.control.writeLong(this.reportToken);
+		this.stdOutReader = new ProcessStreamReader(this.process.getInputStream(), this.signal);
+		this.stdErrReader = new ProcessStreamReader(this.process.getErrorStream(), this.signal);
+		this.stdOutReader.start();
+		this.stdErrReader.start();
+	}
+
+	/**
+	 * Runs one test in the watchdog, saving standard out, standard err and
+	 * permissions used to the given output.
+	 *
+	 * @param parameters
+	 *            - parameters to pass to the jar under test
+	 * @param sessionId
+	 *            - jacoco session id the test's execution data is sent under
+	 * @param output
+	 *            - output to save the results of the test to
+	 * @param maxMillis
+	 *            - maximum time the test may take, not counting time paused
+	 * @return true if the test finished, or false if it ran out of time or the
+	 *         watchdog died. Tests which run out of time are marked as timed
+	 *         out on the output.
+	 * @throws IOException
+	 *             - an exception encountered while sending the test
+	 * @throws WatchdogException
+	 *             - an error reported by the watchdog
+	 * @throws InterruptedException
+	 *             - the thread was interrupted while waiting for the test
+	 */
+	public boolean runTest(Object[] parameters, String sessionId, Output output, long maxMillis)
+			throws IOException, WatchdogException, InterruptedException {
+		this.testsRun++;
+		this.control.write(testMessage(parameters, sessionId));
+		this.control.flush();
+
+		this.stdOut.reset();
+		this.stdErr.reset();
+		this.stdErrTraces = new StackTraceParser();
+		boolean outEnded = false;
+		boolean errEnded = false;
+
+		long start = System.currentTimeMillis();
+		long pausedAtStart = this.pause.getPausedMillis();
+		while (!(outEnded && errEnded)) {
+			String outLine = outEnded ? null : this.stdOutReader.pollLine();
+			if (outLine != null) {
+				if (outLine.endsWith(this.testEnd)) {
+					this.stdOut.append(outLine.substring(0, outLine.length() - this.testEnd.length()));
+					outEnded = true;
+				} else {
+					this.stdOut.append(outLine);
+				}
+			}
+
+			String errLine = errEnded ? null : this.stdErrReader.pollLine();
+			if (errLine != null) {
+				if (errLine.endsWith(this.testEnd)) {
+					String rest = errLine.substring(0, errLine.length() - this.testEnd.length());
+					if (!rest.isEmpty()) {
+						this.stdErr.appendLine(rest);
+						this.stdErrTraces.addLine(rest);
+					}
+					errEnded = true;
+				} else {
+					this.stdErr.appendLine(errLine);
+					this.stdErrTraces.addLine(errLine);
+				}
+			}
+
+			if (outLine == null && errLine == null) {
+				// the watchdog died and everything it printed has been read
+				if (this.stdOutReader.isDone() && this.stdErrReader.isDone() && !this.stdOutReader.hasLine()
+						&& !this.stdErrReader.hasLine()) {
+					break;
+				}
+				// sleep until a stream not yet ended has more, or time is up
+				ProcessStreamReader[] waitingOn;
+				if (outEnded) {
+					waitingOn = new ProcessStreamReader[] { this.stdErrReader };
+				} else if (errEnded) {
+					waitingOn = new ProcessStreamReader[] { this.stdOutReader };
+				} else {
+					waitingOn = new ProcessStreamReader[] { this.stdOutReader, this.stdErrReader };
+				}
+				long deadline = this.pause.getDeadline(start, pausedAtStart, maxMillis);
+				if (!ProcessStreamReader.await(this.signal, deadline, waitingOn)
+						&& System.currentTimeMillis() >= this.pause.getDeadline(start, pausedAtStart, maxMillis)) {
+					break;
+				}
+			}
+		}
+
+		output.setStdOut(this.stdOut);
+		output.setStdErr(this.stdErr, this.stdErrTraces);
+
+		boolean finished = outEnded && errEnded;
+		if (!finished && isAlive()) {
+			output.setTimedOut(true);
+		}
+		if (finished) {
+			// the report was sent before the end of test markers
+			WatchdogReport report = this.reportServer.take(this.reportToken, Tester.COVERAGE_WAIT);
+			if (report == null || !report.isComplete()) {
+				throw new WatchdogException("No report arrived from the watchdog.");
+			}
+			report.saveTo(output);
+		}
+		return finished;
+	}
+
+	/**
+	 * Returns the message which sends a test to a long-lived watchdog: the
+	 * count of its arguments followed by the arguments, then the jacoco
+	 * session id of the test.
+	 *
+	 * @param parameters
+	 *            - parameters to pass to the jar under test
+	 * @param sessionId
+	 *            - jacoco session id the test's execution data is sent under
+	 * @return the message
+	 * @throws IOException
+	 *             - an exception encountered while encoding the message
+	 */
+	static byte[] testMessage(Object[] parameters, String sessionId) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream message = new DataOutputStream(bytes);
+		message.writeInt(parameters.length);
+		for (Object o : parameters) {
+			SecurityWatchdog.writeString(message, o.toString());
+		}
+		SecurityWatchdog.writeString(message, sessionId);
+		message.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Returns the number of tests sent to the watchdog, including any still
+	 * running.
+	 *
+	 * @return the number of tests run
+	 */
+	public int getTestsRun() {
+		return this.testsRun;
+	}
+
+	/**
+	 * Returns whether the watchdog of this worker is still running.
+	 *
+	 * @return true if the watchdog is running, or false if not
+	 */
+	public boolean isAlive() {
+		return this.process.isAlive();
+	}
+
+	/**
+	 * Asks the watchdog to exit once its current test ends.
+	 */
+	public void stop() {
+		this.pause.unregister(this.process);
+		this.reportServer.forget(this.reportToken);
+		try {
+			this.control.writeInt(-1);
+			this.control.close();
+		} catch (IOException e) {
+			// the watchdog has already exited
+		}
+	}
+
+	/**
+	 * Kills the watchdog of this worker, and any processes it started.
+	 */
+	public void destroy() {
+		this.stdOutReader.endProcess();
+		this.stdErrReader.endProcess();
+		this.pause.unregister(this.process);
+		this.reportServer.forget(this.reportToken);
+		Tester.destroyProcessTree(this.process);
+	}
+}
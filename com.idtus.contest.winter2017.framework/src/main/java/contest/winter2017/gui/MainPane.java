@@ -133,7 +133,11 @@ public class MainPane extends TabPane {
 	public void addOutput(Output output) {
 		this.testsAdded++;
 		String prefix = "Test " + this.testsAdded + ":\n";
-		this.inputText.appendText(prefix + output.getCommand().replace('\n', ' ') + "\n\n");
+		String covered = "";
+		if (output.getCoverage() != null) {
+			covered = "\n(" + output.getCoverage().getCoveredLineCount() + " lines covered)";
+		}
+		this.inputText.appendText(prefix + output.getCommand().replace('\n', ' ') + covered + "\n\n");
 		this.stdErrText.appendText(prefix + output.getStdErrString().replace('\n', ' ') + "\n\n");
 		this.stdOutText.appendText(prefix + output.getStdOutString().replace('\n', ' ') + "\n\n");
 		this.permissionsPane.addPermission(output.getPermissionMap());
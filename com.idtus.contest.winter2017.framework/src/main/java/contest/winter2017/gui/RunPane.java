@@ -35,6 +35,7 @@ import javafx.stage.Window;
  * <li>Jacoco agent path - path of jacoco code coverage agent jar</li>
  * <li>time goal - goal in minutes to finish tests in</li>
  * <li>number of tests to run</li>
+ * <li>number of tests to run at once</li>
  * <li>name of the test</li>
  * </ul>
  * 
@@ -74,6 +75,11 @@ class RunPane extends BorderPane {
 	 */
 	private TextField timeGoal = new TextField();
 
+	/**
+	 * Text field for setting the number of tests to run at once.
+	 */
+	private TextField workers = new TextField();
+
 	/**
 	 * CHeckbox for whether to watch for security permissions.
 	 */
@@ -99,6 +105,11 @@ class RunPane extends BorderPane {
 	 */
 	private boolean validTestNumber = true;
 
+	/**
+	 * Whether the number of workers is valid.
+	 */
+	private boolean validWorkers = true;
+
 	/**
 	 * Whether the jacoco output path.
 	 */
@@ -158,6 +169,11 @@ class RunPane extends BorderPane {
 		timeGoal.setText("" + Tester.DEFAULT_TIME_GOAL);
 		LabeledNode timeGoalInput = new LabeledNode("Time Goal", timeGoal);
 
+		// number of workers setting
+		workers.setPrefColumnCount(5);
+		workers.setText("" + Tester.DEFAULT_WORKERS);
+		LabeledNode workersInput = new LabeledNode("Workers", workers);
+
 		// checkbox default
 		((CheckBox) this.permissionCheckbox.getNode()).setSelected(true);
 
@@ -169,6 +185,7 @@ class RunPane extends BorderPane {
 		name.setStyle("-fx-border-color: green;");
 		toRun.setStyle("-fx-border-color: green;");
 		timeGoal.setStyle("-fx-border-color: green;");
+		workers.setStyle("-fx-border-color: green;");
 
 		// default path for jacoco output
 		File defaultFile = new File(".");
@@ -190,7 +207,8 @@ class RunPane extends BorderPane {
 
 		addHandlers(outputPath, agentPath);
 
-		box.getChildren().addAll(jarNameSpacer, percentageTextSpacer, nameInput, testsToRunInput, timeGoalInput);
+		box.getChildren().addAll(jarNameSpacer, percentageTextSpacer, nameInput, testsToRunInput, timeGoalInput,
+				workersInput);
 		box.getChildren().addAll(permissionCheckbox, outputPathButton, agentPathButton, runButtonSpacer);
 		setCenter(box);
 	}
@@ -207,18 +225,13 @@ class RunPane extends BorderPane {
 	 */
 	public void addHandlers(Button outputPath, Button agentPath) {
 		this.test.getTester().getPercentDone().addListener(new ChangeListener<Number>() {
-			private long changes = 0;
-
 			@Override
 			public void changed(ObservableValue<? extends Number> observable, Number oldValue, Number newValue) {
-				changes++;
-				if (changes % 3 == 0) {
-					String percent = "" + RunPane.this.test.getTester().generateSummaryCodeCoverageResults();
-					if (percent.length() > 4) {
-						percent = percent.substring(0, 4);
-					}
-					RunPane.this.percentageText.setText(percent + "% Covered");
+				String percent = "" + RunPane.this.test.getTester().generateSummaryCodeCoverageResults();
+				if (percent.length() > 4) {
+					percent = percent.substring(0, 4);
 				}
+				RunPane.this.percentageText.setText(percent + "% Covered");
 			}
 		});
 
@@ -280,6 +293,26 @@ class RunPane extends BorderPane {
 			}
 		});
 
+		workers.textProperty().addListener(new ChangeListener<String>() {
+			@Override
+			public void changed(ObservableValue<? extends String> arg0, String oldVal, String newVal) {
+				RunPane.this.validWorkers = false;
+				try {
+					if (Integer.parseInt(newVal.trim()) >= Tester.MIN_WORKERS) {
+						RunPane.this.validWorkers = true;
+					}
+				} catch (NumberFormatException e) {
+					// prevent exception from bubbling up
+				}
+
+				if (RunPane.this.validWorkers) {
+					workers.setStyle("-fx-border-color: green;");
+				} else {
+					workers.setStyle("-fx-border-color: red;");
+				}
+			}
+		});
+
 		// get a directory for the jacoco output path
 		outputPath.setOnAction(new EventHandler<ActionEvent>() {
 			@Override
@@ -338,6 +371,8 @@ class RunPane extends BorderPane {
 						alert.setContentText("Invalid number of tests.");
 					} else if (!RunPane.this.validTimeGoal) {
 						alert.setContentText("Invalid time goal.");
+					} else if (!RunPane.this.validWorkers) {
+						alert.setContentText("Invalid number of workers.");
 					} else if (RunPane.this.test.hasUserTestBounds()) {
 						if (!RunPane.this.test.hasValidUserTestBounds()) {
 							alert.setContentText("Invalid user defined parameter bounds.");
@@ -357,13 +392,14 @@ class RunPane extends BorderPane {
 					String agentPath = RunPane.this.jacocoPathFile.getAbsolutePath();
 					String bbTests = RunPane.this.toRun.getText();
 					String timeGoal = RunPane.this.timeGoal.getText();
+					String workers = RunPane.this.workers.getText().trim();
 					boolean quiet = true;
 					CheckBox cb = (CheckBox) RunPane.this.permissionCheckbox.getNode();
 					boolean watchdog = cb.isSelected();
 
 					// initialize and run tester
 					if (!RunPane.this.test.getTester().init(testBounds, jarPath, outputPath, agentPath, bbTests,
-							timeGoal, GUIMain.getGuiID(), quiet, watchdog)) {
+							timeGoal, workers, GUIMain.getGuiID(), quiet, watchdog)) {
 						alert.setContentText("Unknown initialization error.");
 						alert.showAndWait();
 						RunPane.this.runButton.setDisable(false);
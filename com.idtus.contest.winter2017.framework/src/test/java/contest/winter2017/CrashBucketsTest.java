@@ -0,0 +1,113 @@
+package contest.winter2017;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests of CrashBuckets fingerprints, of exceptions parsed from standard err
+ * text as the JVM prints it.
+ *
+ * @author ICT-2
+ */
+public class CrashBucketsTest extends TestCase {
+
+	/**
+	 * Parses standard err lines and returns the fingerprint of the one
+	 * exception in them.
+	 *
+	 * @param lines
+	 *            - the lines
+	 * @return the fingerprint of the exception
+	 */
+	private static String fingerprint(String... lines) {
+		StringBuffer text = new StringBuffer();
+		for (String line : lines) {
+			text.append(line).append('\n');
+		}
+		StackTraceParser parser = StackTraceParser.parse(text.toString());
+		assertEquals(1, parser.getExceptions().size());
+		return CrashBuckets.fingerprint(parser.getExceptions().get(0));
+	}
+
+	public void testTypeAndFrames() {
+		assertEquals("java.lang.NullPointerException|com.example.Parser.parse(Parser.java)"
+				+ "|com.example.Main.main(Main.java)",
+				fingerprint("Exception in thread \"main\" java.lang.NullPointerException",
+						"\tat com.example.Parser.parse(Parser.java:17)",
+						"\tat com.example.Main.main(Main.java:5)"));
+	}
+
+	public void testMessageAndThreadLeftOut() {
+		String a = fingerprint("Exception in thread \"main\" java.lang.NumberFormatException: For input string: \"x\"",
+				"\tat com.example.Main.main(Main.java:5)");
+		String b = fingerprint("Exception in thread \"worker\" java.lang.NumberFormatException: For input string: \"y\"",
+				"\tat com.example.Main.main(Main.java:5)");
+		assertEquals(a, b);
+		assertFalse(a.contains("input"));
+	}
+
+	public void testLineNumbersLeftOut() {
+		assertEquals(
+				fingerprint("java.lang.IllegalStateException", "\tat com.example.Machine.step(Machine.java:10)"),
+				fingerprint("java.lang.IllegalStateException", "\tat com.example.Machine.step(Machine.java:99)"));
+	}
+
+	public void testNativeAndUnknownSourceFrames() {
+		assertEquals("java.lang.Error|com.example.Lib.call(Native Method)|com.example.Gen.run(Unknown Source)",
+				fingerprint("java.lang.Error", "\tat com.example.Lib.call(Native Method)",
+						"\tat com.example.Gen.run(Unknown Source)"));
+	}
+
+	public void testLambdaNumberingLeftOut() {
+		String a = fingerprint("java.lang.RuntimeException",
+				"\tat com.example.Main$$Lambda$1/1831932724.run(Unknown Source)",
+				"\tat com.example.Main.main(Main.java:5)");
+		String b = fingerprint("java.lang.RuntimeException",
+				"\tat com.example.Main$$Lambda$14/0x0000000800c02a00.run(Unknown Source)",
+				"\tat com.example.Main.main(Main.java:5)");
+		assertEquals(a, b);
+		assertEquals("java.lang.RuntimeException|com.example.Main$$Lambda.run(Unknown Source)"
+				+ "|com.example.Main.main(Main.java)", a);
+	}
+
+	public void testModulePrefixLeftOut() {
+		assertEquals(
+				fingerprint("java.lang.NumberFormatException",
+						"\tat java.lang.Integer.parseInt(Integer.java:580)"),
+				fingerprint("java.lang.NumberFormatException",
+						"\tat java.base/java.lang.Integer.parseInt(Integer.java:652)"));
+	}
+
+	public void testHarnessFramesLeftOut() {
+		assertEquals("java.lang.ArithmeticException|com.example.Calc.divide(Calc.java)",
+				fingerprint("java.lang.ArithmeticException: / by zero",
+						"\tat com.example.Calc.divide(Calc.java:8)",
+						"\tat sun.reflect.NativeMethodAccessorImpl.invoke0(Native Method)",
+						"\tat jdk.internal.reflect.DirectMethodHandleAccessor.invoke(DirectMethodHandleAccessor.java:104)",
+						"\tat java.lang.reflect.Method.invoke(Method.java:498)",
+						"\tat contest.winter2017.SecurityWatchdog.main(SecurityWatchdog.java:120)"));
+	}
+
+	public void testInnermostCauseFrames() {
+		assertEquals("java.lang.RuntimeException>java.io.IOException|com.example.Store.write(Store.java)",
+				fingerprint("Exception in thread \"main\" java.lang.RuntimeException: java.io.IOException: full",
+						"\tat com.example.Main.run(Main.java:20)",
+						"Caused by: java.io.IOException: full",
+						"\tat com.example.Store.write(Store.java:44)",
+						"\t... 1 more"));
+	}
+
+	public void testDifferentTopFramesDiffer() {
+		assertFalse(fingerprint("java.lang.NullPointerException", "\tat com.example.A.run(A.java:1)")
+				.equals(fingerprint("java.lang.NullPointerException", "\tat com.example.B.run(B.java:1)")));
+	}
+
+	public void testFramesBounded() {
+		String[] lines = new String[CrashBuckets.FINGERPRINT_FRAMES + 4];
+		lines[0] = "java.lang.StackOverflowError";
+		for (int i = 1; i < lines.length; i++) {
+			lines[i] = "\tat com.example.Deep.level" + i + "(Deep.java:" + i + ")";
+		}
+		String fingerprint = fingerprint(lines);
+		assertEquals(CrashBuckets.FINGERPRINT_FRAMES, fingerprint.split("\\|").length - 1);
+	}
+}
@@ -0,0 +1,214 @@
+package contest.winter2017;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests of StackTraceParser, fed standard err text as the JVM prints it.
+ *
+ * @author ICT-2
+ */
+public class StackTraceParserTest extends TestCase {
+
+	/**
+	 * Joins lines into standard err text.
+	 *
+	 * @param lines
+	 *            - the lines
+	 * @return the lines, each ended by a line feed
+	 */
+	private static String stdErr(String... lines) {
+		StringBuffer text = new StringBuffer();
+		for (String line : lines) {
+			text.append(line).append('\n');
+		}
+		return text.toString();
+	}
+
+	public void testUncaughtException() {
+		StackTraceParser parser = StackTraceParser.parse(stdErr(
+				"Exception in thread \"main\" java.lang.IllegalArgumentException: bad input: 42",
+				"\tat com.example.Parser.parse(Parser.java:17)",
+				"\tat com.example.Main.main(Main.java:5)"));
+
+		List<ExceptionRecord> exceptions = parser.getExceptions();
+		assertEquals(1, exceptions.size());
+		ExceptionRecord record = exceptions.get(0);
+		assertEquals("main", record.getThread());
+		assertEquals("java.lang.IllegalArgumentException", record.getType());
+		assertEquals("bad input: 42", record.getMessage());
+		assertEquals(2, record.getFrames().size());
+		assertEquals("com.example.Parser.parse(Parser.java:17)", record.getFrames().get(0));
+		assertEquals("com.example.Main.main(Main.java:5)", record.getFrames().get(1));
+		assertNull(record.getCause());
+		assertTrue(parser.getOtherErrors().isEmpty());
+	}
+
+	public void testErrorWithoutMessage() {
+		StackTraceParser parser = StackTraceParser.parse(stdErr(
+				"java.lang.StackOverflowError",
+				"\tat com.example.Deep.recurse(Deep.java:3)"));
+
+		ExceptionRecord record = parser.getExceptions().get(0);
+		assertNull(record.getThread());
+		assertEquals("java.lang.StackOverflowError", record.getType());
+		assertNull(record.getMessage());
+	}
+
+	public void testCauseAndOmittedFrames() {
+		StackTraceParser parser = StackTraceParser.parse(stdErr(
+				"Exception in thread \"main\" java.lang.RuntimeException: wrapped",
+				"\tat com.example.Main.run(Main.java:20)",
+				"\tat com.example.Main.main(Main.java:9)",
+				"Caused by: java.io.IOException: disk full",
+				"\tat com.example.Store.write(Store.java:44)",
+				"\t... 2 more"));
+
+		ExceptionRecord record = parser.getExceptions().get(0);
+		assertEquals("java.lang.RuntimeException", record.getType());
+		ExceptionRecord cause = record.getCause();
+		assertNotNull(cause);
+		assertNull(cause.getThread());
+		assertEquals("java.io.IOException", cause.getType());
+		assertEquals("disk full", cause.getMessage());
+		assertEquals(1, cause.getFrames().size());
+		assertEquals(2, cause.getOmittedFrames());
+	}
+
+	public void testSuppressed() {
+		StackTraceParser parser = StackTraceParser.parse(stdErr(
+				"java.lang.IllegalStateException: closing",
+				"\tat com.example.Resource.close(Resource.java:12)",
+				"\tSuppressed: java.io.IOException: flush failed",
+				"\t\tat com.example.Resource.flush(Resource.java:30)",
+				"\t\t... 1 more"));
+
+		ExceptionRecord record = parser.getExceptions().get(0);
+		assertEquals(1, record.getFrames().size());
+		assertEquals(1, record.getSuppressed().size());
+		ExceptionRecord suppressed = record.getSuppressed().get(0);
+		assertEquals("java.io.IOException", suppressed.getType());
+		assertEquals(1, suppressed.getFrames().size());
+		assertEquals(1, suppressed.getOmittedFrames());
+	}
+
+	public void testMultiLineMessage() {
+		StackTraceParser parser = StackTraceParser.parse(stdErr(
+				"java.lang.IllegalArgumentException: first line",
+				"second line",
+				"\tat com.example.Main.main(Main.java:5)"));
+
+		ExceptionRecord record = parser.getExceptions().get(0);
+		assertEquals("first line\nsecond line", record.getMessage());
+		assertEquals(1, record.getFrames().size());
+		assertTrue(parser.getOtherErrors().isEmpty());
+	}
+
+	public void testOtherErrors() {
+		StackTraceParser parser = StackTraceParser.parse(stdErr(
+				"warning: falling back",
+				"to defaults",
+				"java.lang.NullPointerException",
+				"\tat com.example.Main.main(Main.java:5)",
+				"Usage: example <file>"));
+
+		assertEquals(1, parser.getExceptions().size());
+		List<String> other = parser.getOtherErrors();
+		assertEquals(2, other.size());
+		assertEquals("warning: falling back to defaults", other.get(0));
+		assertEquals("Usage: example <file>", other.get(1));
+	}
+
+	public void testHeaderWithoutFrames() {
+		StackTraceParser parser = StackTraceParser.parse(stdErr("java.lang.NullPointerException"));
+
+		assertTrue(parser.getExceptions().isEmpty());
+		assertEquals(1, parser.getOtherErrors().size());
+		assertEquals("java.lang.NullPointerException", parser.getOtherErrors().get(0));
+	}
+
+	public void testRepeatedTraceKeptOnce() {
+		String trace = stdErr(
+				"java.lang.ArithmeticException: / by zero",
+				"\tat com.example.Calc.divide(Calc.java:8)");
+		StackTraceParser parser = StackTraceParser.parse(trace + trace + trace);
+
+		assertEquals(1, parser.getExceptions().size());
+	}
+
+	public void testLineByLineMatchesParse() {
+		String text = stdErr(
+				"Exception in thread \"worker-1\" java.lang.RuntimeException: wrapped",
+				"\tat com.example.Worker.run(Worker.java:20)",
+				"Caused by: java.lang.ClassCastException: x",
+				"\tat com.example.Worker.cast(Worker.java:31)",
+				"\t... 1 more");
+		StackTraceParser parser = new StackTraceParser();
+		for (String line : text.split("\n")) {
+			parser.addLine(line);
+		}
+		parser.finish();
+
+		assertEquals(StackTraceParser.parse(text).getExceptions().get(0).toString(),
+				parser.getExceptions().get(0).toString());
+	}
+
+	public void testTraceLinesBounded() {
+		StringBuffer text = new StringBuffer("java.lang.StackOverflowError\n");
+		int frames = StackTraceParser.MAX_TRACE_LINES + 100;
+		for (int i = 0; i < frames; i++) {
+			text.append("\tat com.example.Deep.recurse(Deep.java:" + i + ")\n");
+		}
+		StackTraceParser parser = StackTraceParser.parse(text.toString());
+
+		ExceptionRecord record = parser.getExceptions().get(0);
+		// the first frame starts the trace, and is not counted against it
+		assertEquals(StackTraceParser.MAX_TRACE_LINES + 1, record.getFrames().size());
+		assertEquals(frames - record.getFrames().size(), record.getOmittedFrames());
+	}
+
+	public void testLongLineCut() {
+		StringBuffer line = new StringBuffer();
+		for (int i = 0; i < StackTraceParser.MAX_CHARS * 3; i++) {
+			line.append('x');
+		}
+		StackTraceParser parser = StackTraceParser.parse(line.toString());
+
+		assertEquals(StackTraceParser.MAX_CHARS, parser.getOtherErrors().get(0).length());
+	}
+
+	/**
+	 * Parses 10000 distinct traces, as a test which prints without end would.
+	 * Only a bounded number are kept, and each line is looked at once, so the
+	 * parse ends well within a generous bound.
+	 */
+	public void testManyTraces() {
+		StringBuffer text = new StringBuffer();
+		int traces = 10_000;
+		for (int i = 0; i < traces; i++) {
+			text.append("Exception in thread \"main\" java.lang.IllegalStateException: state " + i + "\n");
+			text.append("\tat com.example.Machine.step" + i + "(Machine.java:" + i + ")\n");
+			text.append("\tat com.example.Machine.run(Machine.java:12)\n");
+			text.append("Caused by: java.lang.NumberFormatException: For input string: \"" + i + "\"\n");
+			text.append("\tat java.lang.Integer.parseInt(Integer.java:580)\n");
+			text.append("\t... 2 more\n");
+		}
+
+		long start = System.nanoTime();
+		StackTraceParser parser = StackTraceParser.parse(text.toString());
+		long millis = (System.nanoTime() - start) / 1_000_000;
+
+		List<ExceptionRecord> exceptions = parser.getExceptions();
+		assertEquals(StackTraceParser.MAX_EXCEPTIONS, exceptions.size());
+		for (int i = 0; i < exceptions.size(); i++) {
+			ExceptionRecord record = exceptions.get(i);
+			assertEquals("state " + i, record.getMessage());
+			assertEquals(2, record.getFrames().size());
+			assertEquals("java.lang.NumberFormatException", record.getCause().getType());
+			assertEquals(2, record.getCause().getOmittedFrames());
+		}
+		assertTrue(parser.getOtherErrors().isEmpty());
+		assertTrue("parse took " + millis + " ms", millis < 10_000);
+	}
+}